@@ -0,0 +1,125 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing a received pong from the subscriber thread over to the results thread. The ResultsRing against the
+ * ArrayBlockingQueue of new messages that it replaced.
+ *
+ * The grouped benchmarks run a producer and a consumer thread together, as in the real thing. Neither side ever waits
+ * for long, so a full or empty ring just shows as a quick operation rather than hanging the run at the end of an iteration.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HandOffBenchmark {
+
+	private static final int CAPACITY = 1024;
+	private static final long POLL_TIMEOUT_NS = 1000000;
+
+	/**
+	 * Shared by the producer and consumer threads of each group.
+	 */
+	@State(Scope.Group)
+	public static class Shared {
+
+		private ResultsRing ring;
+		private BlockingQueue<PingPongMessage> queue;
+
+		@Setup
+		public void setup() {
+
+			ring = new ResultsRing(CAPACITY, WaitStrategy.SPIN, "pinger", "London");
+			queue = new ArrayBlockingQueue<PingPongMessage>(CAPACITY);
+		}
+	}
+
+	@Benchmark
+	@Group("ring")
+	public boolean ringProducer(Shared state) {
+
+		PingPongMessage slot = state.ring.claim();
+		if (slot == null) {
+			state.ring.drop();
+			return false;
+		}
+		state.ring.publish();
+		return true;
+	}
+
+	@Benchmark
+	@Group("ring")
+	public PingPongMessage ringConsumer(Shared state) {
+
+		PingPongMessage slot = state.ring.poll(System.nanoTime() + POLL_TIMEOUT_NS);
+		if (slot != null) {
+			state.ring.release();
+		}
+		return slot;
+	}
+
+	@Benchmark
+	@Group("queue")
+	public boolean queueProducer(Shared state) {
+		return state.queue.offer(new PingPongMessage("pinger", "London"));
+	}
+
+	@Benchmark
+	@Group("queue")
+	public PingPongMessage queueConsumer(Shared state) throws InterruptedException {
+		return state.queue.poll(POLL_TIMEOUT_NS, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Both ends on the one thread, so just the cost of the operations themselves without any cache lines moving between cores.
+	 */
+	@State(Scope.Thread)
+	public static class SingleThread {
+
+		private ResultsRing ring;
+		private BlockingQueue<PingPongMessage> queue;
+
+		@Setup
+		public void setup() {
+
+			ring = new ResultsRing(CAPACITY, WaitStrategy.SPIN, "pinger", "London");
+			queue = new ArrayBlockingQueue<PingPongMessage>(CAPACITY);
+		}
+	}
+
+	@Benchmark
+	public PingPongMessage ringRoundTrip(SingleThread state) {
+
+		state.ring.claim();
+		state.ring.publish();
+		PingPongMessage slot = state.ring.take();
+		state.ring.release();
+		return slot;
+	}
+
+	@Benchmark
+	public PingPongMessage queueRoundTrip(SingleThread state) {
+
+		state.queue.offer(new PingPongMessage("pinger", "London"));
+		return state.queue.poll();
+	}
+}
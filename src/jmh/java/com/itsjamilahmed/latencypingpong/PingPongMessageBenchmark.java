@@ -0,0 +1,135 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-message work of the pinger, the ponger and the results thread, in both wire formats.
+ *
+ * Run with the gc profiler (as the jmh task does) to see the bytes allocated per operation next to the timings.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PingPongMessageBenchmark {
+
+	private static final String PINGER_NAME = "pinger";
+	private static final String PINGER_GROUP = "London";
+	private static final String PONGER_NAME = "ponger";
+	private static final String PONGER_GROUP = "NewYork";
+
+	private final BinaryPingPongCodec binaryCodec = new BinaryPingPongCodec();
+
+	private PingPongMessage pingSender;			// What the PingPublisher sends from
+	private PingPongMessage pingReceiver;		// A ponger's receive slot
+	private PingPongMessage pongReceiver;		// A results slot back at the pinger
+
+	private String jsonPing;
+	private String jsonPong;
+	private byte[] binaryPing;
+	private int binaryPingLength;
+	private byte[] binaryPong;
+	private int binaryPongLength;
+	private byte[] encodeBuffer;
+	private byte[] trailer;
+
+	@Setup
+	public void setup() {
+
+		pingSender = new PingPongMessage(PINGER_NAME, PINGER_GROUP);
+		pingReceiver = new PingPongMessage(PONGER_NAME, PONGER_GROUP);
+		pongReceiver = new PingPongMessage(PINGER_NAME, PINGER_GROUP);
+		trailer = BinaryPingPongCodec.createTrailer(PONGER_NAME, PONGER_GROUP);
+		encodeBuffer = new byte[BinaryPingPongCodec.BODY_LENGTH + BinaryPingPongCodec.TRAILER_LENGTH];
+
+		// A ping as it would arrive at the ponger, and its pong as it would arrive back at the pinger
+		jsonPing = pingSender.getPingMessage();
+		PingPongMessage ponger = new PingPongMessage(PONGER_NAME, PONGER_GROUP, jsonPing);
+		jsonPong = ponger.getPongMessage();
+
+		PingPongMessage binarySender = new PingPongMessage(PINGER_NAME, PINGER_GROUP);
+		binarySender.preparePing();
+		binaryPing = new byte[BinaryPingPongCodec.BODY_LENGTH];
+		binaryPingLength = binaryCodec.encode(binarySender, binaryPing);
+		binaryCodec.read(binaryPing, binaryPingLength, ponger);
+		binaryPong = new byte[BinaryPingPongCodec.BODY_LENGTH + BinaryPingPongCodec.TRAILER_LENGTH];
+		binaryPongLength = binaryCodec.encode(ponger, binaryPong);
+	}
+
+	@Benchmark
+	public PingPongMessage construct() {
+		return new PingPongMessage(PINGER_NAME, PINGER_GROUP);
+	}
+
+	@Benchmark
+	public String jsonGetPingMessage() {
+		return pingSender.getPingMessage();
+	}
+
+	@Benchmark
+	public int binaryEncodePing() {
+
+		pingSender.preparePing();
+		return binaryCodec.encode(pingSender, encodeBuffer);
+	}
+
+	@Benchmark
+	public boolean jsonReceivePing() {
+
+		pingReceiver.reset();
+		return pingReceiver.receiveMessage(jsonPing);
+	}
+
+	@Benchmark
+	public boolean binaryReceivePing() {
+
+		pingReceiver.reset();
+		return binaryCodec.read(binaryPing, binaryPingLength, pingReceiver);
+	}
+
+	@Benchmark
+	public byte[] binaryFastReflect() {
+		return binaryCodec.fastReflect(binaryPing, binaryPingLength, trailer, WallClock.nowNs());
+	}
+
+	@Benchmark
+	public boolean jsonReceivePong() {
+
+		pongReceiver.reset();
+		return pongReceiver.receiveMessage(jsonPong);
+	}
+
+	@Benchmark
+	public boolean binaryReceivePong() {
+
+		pongReceiver.reset();
+		return binaryCodec.read(binaryPong, binaryPongLength, pongReceiver);
+	}
+
+	/**
+	 * Includes receiving the pong, since the results message is only built once per message. Take binaryReceivePong off to get its own cost.
+	 */
+	@Benchmark
+	public String getLatencyResultsMessage() {
+
+		pongReceiver.reset();
+		binaryCodec.read(binaryPong, binaryPongLength, pongReceiver);
+		return pongReceiver.getLatencyResultsMessage();
+	}
+}
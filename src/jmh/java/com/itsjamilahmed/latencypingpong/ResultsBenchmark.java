@@ -0,0 +1,63 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ranking the nodes of a group for the summary message as their pongs arrive, as the group grows. One operation is a whole ping's worth.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ResultsBenchmark {
+
+	@Param({"10", "100", "1000"})
+	private int groupSize;
+
+	private final GroupRanking ranking = new GroupRanking();
+	private int[] nodeIds;
+	private String[] nodeNames;
+	private long[] rttsNs;
+
+	@Setup
+	public void setup() {
+
+		Random random = new Random(42);		// Same latencies every run, so the results are comparable
+		nodeIds = new int[groupSize];
+		nodeNames = new String[groupSize];
+		rttsNs = new long[groupSize];
+		for (int i = 0; i < groupSize; i++) {
+			nodeNames[i] = "node-" + i;
+			nodeIds[i] = NodeNameInterner.onlyInstance().intern(nodeNames[i]);
+			rttsNs[i] = 100000 + (long) (random.nextFloat() * 10000000);
+		}
+	}
+
+	@Benchmark
+	public GroupRanking rankGroup() {
+
+		ranking.reset(0, "group");
+		for (int i = 0; i < groupSize; i++) {
+			ranking.add(nodeIds[i], nodeNames[i], rttsNs[i]);
+		}
+		return ranking;
+	}
+}
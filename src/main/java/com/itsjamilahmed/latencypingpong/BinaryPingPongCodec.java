@@ -0,0 +1,290 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * A compact fixed-layout wire format carried as bytes.
+ *
+ * All multi-byte fields are big-endian. A ping is just the body, a pong is the body with the reflector trailer appended.
+ *
+ * <pre>
+ *  Offset  Length  Field
+ *   0       1      Magic byte
+ *   1       1      Format version, VERSION. Anything else is rejected, as the layout may differ.
+ *   2       1      Flags (see FLAG_*)
+ *   3       1      Reserved
+ *   4       4      Body length, i.e. offset of the reflector trailer
+ *   8       8      Sequence number
+ *  16       8      Send time, System.nanoTime() at the pinger
+ *  24       8      Send time, System.currentTimeMillis() at the pinger
+ *  32       8      Intended send time, System.nanoTime() the ping was scheduled for
+ *  40      32      Sender node name slot
+ *  72      32      Sender node group slot
+ * 104       n      Padding, when the ping was sent at a payload size. The body length is then that size.
+ *  ---- reflector trailer, present when FLAG_REFLECTED is set ----
+ *   0      32      Reflector node name slot
+ *  32      32      Reflector node group slot
+ *  64       8      Ping receive time at the reflector, wall clock nanos by its clock. (Not sent by earlier versions, which end the trailer here.)
+ *  72       8      Pong send time at the reflector, wall clock nanos by its clock
+ * </pre>
+ *
+ * Name slots are as per NodeNameInterner, which is what lets the names be decoded without allocating.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class BinaryPingPongCodec implements PingPongCodec {
+
+	public static final String NAME = "binary";
+
+	static final byte MAGIC = (byte) 0xA7;
+	static final byte VERSION = 2;						// 2 added the intended send time, moving the name slots along
+
+	static final int FLAG_REFLECTED = 0x01;
+
+	static final int OFFSET_MAGIC = 0;
+	static final int OFFSET_VERSION = 1;
+	static final int OFFSET_FLAGS = 2;
+	static final int OFFSET_BODY_LENGTH = 4;
+	static final int OFFSET_SEQUENCE = 8;
+	static final int OFFSET_NS = 16;
+	static final int OFFSET_MS = 24;
+	static final int OFFSET_INTENDED_NS = 32;
+	static final int OFFSET_NODE = 40;
+	static final int OFFSET_GROUP = OFFSET_NODE + NodeNameInterner.SLOT_LENGTH;
+	static final int BODY_LENGTH = OFFSET_GROUP + NodeNameInterner.SLOT_LENGTH;
+
+	static final int TRAILER_OFFSET_NODE = 0;
+	static final int TRAILER_OFFSET_GROUP = TRAILER_OFFSET_NODE + NodeNameInterner.SLOT_LENGTH;
+	static final int TRAILER_OFFSET_RECEIVE_NS = TRAILER_OFFSET_GROUP + NodeNameInterner.SLOT_LENGTH;
+	static final int TRAILER_OFFSET_SEND_NS = TRAILER_OFFSET_RECEIVE_NS + 8;
+	static final int TRAILER_LENGTH = TRAILER_OFFSET_SEND_NS + 8;
+	static final int MIN_TRAILER_LENGTH = TRAILER_OFFSET_RECEIVE_NS;			// Without the timestamps
+
+	private final NodeNameInterner interner = NodeNameInterner.onlyInstance();
+
+	private final PayloadPadding buffers = new PayloadPadding(16);				// Right-sized, so can be sent as-is without any copying. One per recently used size.
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void sendPing(PingPongMessage pingMessage, TransportSender sender, TransportTopic topic) throws TransportException {
+
+		pingMessage.preparePing();					// The timestamps are refreshed on each call to this method.
+		byte[] pingBuffer = buffers.getBuffer(encodedLength(pingMessage));
+		sender.sendBytes(topic, pingBuffer, encode(pingMessage, pingBuffer));
+	}
+
+	@Override
+	public void sendPong(PingPongMessage pongMessage, TransportSender sender, TransportTopic topic) throws TransportException {
+
+		pongMessage.stampReflectSend();
+		byte[] pongBuffer = buffers.getBuffer(encodedLength(pongMessage));
+		sender.sendBytes(topic, pongBuffer, encode(pongMessage, pongBuffer));
+	}
+
+	/**
+	 * Read a received bytes message into the given PingPongMessage.
+	 *
+	 * @return true if the message is to be reflected back, as per PingPongMessage.receiveMessage()
+	 */
+	public boolean read(byte[] data, int length, PingPongMessage receivedMessage) {
+		return decode(data, length, receivedMessage);
+	}
+
+	/**
+	 * Whether a received bytes message looks like a binary ping (not yet reflected), from its header alone.
+	 * If so, the sender's name is in its slot at OFFSET_NODE.
+	 */
+	static boolean isPing(byte[] data, int length) {
+
+		return length >= BODY_LENGTH && data[OFFSET_MAGIC] == MAGIC && data[OFFSET_VERSION] == VERSION
+				&& (data[OFFSET_FLAGS] & FLAG_REFLECTED) == 0;
+	}
+
+	/**
+	 * A printable version of a received bytes message for debug output.
+	 */
+	public String toDebugString(byte[] buffer, int length) {
+
+		PingPongMessage debugMessage = new PingPongMessage("", "");
+
+		if (length > OFFSET_VERSION && buffer[OFFSET_MAGIC] == MAGIC && buffer[OFFSET_VERSION] != VERSION) {
+			return "Binary message of " + length + " bytes, in format version " + buffer[OFFSET_VERSION] + " rather than " + VERSION + ".";
+		}
+		if (!isValid(buffer, length)) {
+			return "Binary message of " + length + " bytes, not in the expected format.";
+		}
+		decode(buffer, length, debugMessage);
+		return "Binary message of " + length + " bytes: seq=" + getLong(buffer, OFFSET_SEQUENCE)
+				+ " from=" + debugMessage.getSenderNodeGroupName() + ":" + debugMessage.getSenderNodeName()
+				+ ((buffer[OFFSET_FLAGS] & FLAG_REFLECTED) != 0 ?
+						" reflector=" + debugMessage.getReflectNodeGroup() + ":" + debugMessage.getReflectNodeName() : "");
+	}
+
+	/**
+	 * Build the trailer a reflector appends to every ping it reflects. Fixed apart from the timestamps, which fastReflect() fills in.
+	 */
+	static byte[] createTrailer(String nodeName, String nodeGroupName) {
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		byte[] trailer = new byte[TRAILER_LENGTH];
+		System.arraycopy(interner.getSlot(interner.intern(nodeName)), 0, trailer, TRAILER_OFFSET_NODE, NodeNameInterner.SLOT_LENGTH);
+		System.arraycopy(interner.getSlot(interner.intern(nodeGroupName)), 0, trailer, TRAILER_OFFSET_GROUP, NodeNameInterner.SLOT_LENGTH);
+		return trailer;
+	}
+
+	/**
+	 * Turn a received binary ping into its pong without decoding it.
+	 * 
+	 * Only the header is checked, then the received bytes are copied as-is into a buffer that has room for the trailer,
+	 * the flags byte is patched and the trailer copied in. Whatever else the ping carries goes back untouched.
+	 * The pong send time is stamped last of all, so send it straight away.
+	 *
+	 * @param receiveNs When the ping arrived, by WallClock
+	 * @return the pong, ready to send, or null if the message is not a binary ping (so needs the normal read() path)
+	 */
+	byte[] fastReflect(byte[] data, int length, byte[] trailer, long receiveNs) {
+
+		if (length < BODY_LENGTH || data[OFFSET_MAGIC] != MAGIC || data[OFFSET_VERSION] != VERSION
+				|| (data[OFFSET_FLAGS] & FLAG_REFLECTED) != 0 || getInt(data, OFFSET_BODY_LENGTH) != length) {
+			// Not a ping, or one that was sent with something already after the body. Most likely a pong on its way back to this node.
+			return null;
+		}
+
+		// This one copy of the ping, padding and all, is needed to put the trailer after it
+		byte[] buffer = buffers.getBuffer(length + TRAILER_LENGTH);
+		System.arraycopy(data, 0, buffer, 0, length);
+		buffer[OFFSET_FLAGS] |= FLAG_REFLECTED;
+		System.arraycopy(trailer, 0, buffer, length, MIN_TRAILER_LENGTH);
+		putLong(buffer, length + TRAILER_OFFSET_RECEIVE_NS, receiveNs);
+		putLong(buffer, length + TRAILER_OFFSET_SEND_NS, WallClock.nowNs());
+		return buffer;
+	}
+
+	/**
+	 * How long the encoded message will be: the body, padded to the payload size if there is one, and the trailer if reflected.
+	 */
+	static int encodedLength(PingPongMessage message) {
+		return Math.max(BODY_LENGTH, message.getPayloadSize()) + (message.isReflected() ? TRAILER_LENGTH : 0);
+	}
+
+	/**
+	 * Write the message into the buffer, which must be at least encodedLength() long.
+	 * Any padding is left as whatever is already in the buffer.
+	 *
+	 * @return the number of bytes written
+	 */
+	int encode(PingPongMessage message, byte[] buffer) {
+
+		boolean reflected = message.isReflected();
+		int bodyLength = Math.max(BODY_LENGTH, message.getPayloadSize());
+
+		buffer[OFFSET_MAGIC] = MAGIC;
+		buffer[OFFSET_VERSION] = VERSION;
+		buffer[OFFSET_FLAGS] = (byte) (reflected ? FLAG_REFLECTED : 0);
+		buffer[3] = 0;
+		putInt(buffer, OFFSET_BODY_LENGTH, bodyLength);
+		putLong(buffer, OFFSET_SEQUENCE, message.getSequence());
+		putLong(buffer, OFFSET_NS, message.getSendNs());
+		putLong(buffer, OFFSET_MS, message.getSendMs());
+		putLong(buffer, OFFSET_INTENDED_NS, message.getIntendedSendNs());
+		System.arraycopy(interner.getSlot(message.getSenderNodeId()), 0, buffer, OFFSET_NODE, NodeNameInterner.SLOT_LENGTH);
+		System.arraycopy(interner.getSlot(message.getSenderNodeGroupId()), 0, buffer, OFFSET_GROUP, NodeNameInterner.SLOT_LENGTH);
+
+		if (!reflected) {
+			return bodyLength;
+		}
+
+		System.arraycopy(interner.getSlot(message.getReflectNodeId()), 0, buffer, bodyLength + TRAILER_OFFSET_NODE, NodeNameInterner.SLOT_LENGTH);
+		System.arraycopy(interner.getSlot(message.getReflectNodeGroupId()), 0, buffer, bodyLength + TRAILER_OFFSET_GROUP, NodeNameInterner.SLOT_LENGTH);
+		putLong(buffer, bodyLength + TRAILER_OFFSET_RECEIVE_NS, message.getReflectReceiveNs());
+		putLong(buffer, bodyLength + TRAILER_OFFSET_SEND_NS, message.getReflectSendNs());
+		return bodyLength + TRAILER_LENGTH;
+	}
+
+	/**
+	 * Read the first length bytes of the buffer into the given message.
+	 *
+	 * @return true if the message is to be reflected back, as per PingPongMessage.receiveMessage()
+	 */
+	boolean decode(byte[] buffer, int length, PingPongMessage message) {
+
+		if (!isValid(buffer, length)) {
+			return message.receiveCorrupt();
+		}
+
+		int bodyLength = getInt(buffer, OFFSET_BODY_LENGTH);
+		boolean reflected = (buffer[OFFSET_FLAGS] & FLAG_REFLECTED) != 0;
+
+		int senderNodeId = interner.intern(buffer, OFFSET_NODE);
+		int senderNodeGroupId = interner.intern(buffer, OFFSET_GROUP);
+		int reflectNodeId = -1;
+		int reflectNodeGroupId = -1;
+		if (reflected) {
+			reflectNodeId = interner.intern(buffer, bodyLength + TRAILER_OFFSET_NODE);
+			reflectNodeGroupId = interner.intern(buffer, bodyLength + TRAILER_OFFSET_GROUP);
+			if (reflectNodeId < 0 || reflectNodeGroupId < 0) {
+				return message.receiveCorrupt();
+			}
+		}
+		if (senderNodeId < 0 || senderNodeGroupId < 0) {
+			return message.receiveCorrupt();
+		}
+
+		boolean reflectRequired = message.receiveDecoded(reflected,
+				getLong(buffer, OFFSET_SEQUENCE), getLong(buffer, OFFSET_NS), getLong(buffer, OFFSET_MS), getLong(buffer, OFFSET_INTENDED_NS),
+				senderNodeId, senderNodeGroupId, reflectNodeId, reflectNodeGroupId,
+				bodyLength > BODY_LENGTH ? bodyLength : 0);
+		if (reflected && length - bodyLength >= TRAILER_LENGTH) {
+			message.setReflectTimes(getLong(buffer, bodyLength + TRAILER_OFFSET_RECEIVE_NS), getLong(buffer, bodyLength + TRAILER_OFFSET_SEND_NS));
+		}
+		return reflectRequired;
+	}
+
+	/**
+	 * Check the header, including that it is this version of the format, and that the lengths it declares fit inside what was received.
+	 */
+	static boolean isValid(byte[] buffer, int length) {
+
+		if (length < BODY_LENGTH || buffer[OFFSET_MAGIC] != MAGIC || buffer[OFFSET_VERSION] != VERSION) {
+			return false;
+		}
+
+		int bodyLength = getInt(buffer, OFFSET_BODY_LENGTH);
+		if (bodyLength < BODY_LENGTH || bodyLength > length) {
+			return false;
+		}
+
+		boolean reflected = (buffer[OFFSET_FLAGS] & FLAG_REFLECTED) != 0;
+		return !reflected || length - bodyLength >= MIN_TRAILER_LENGTH;
+	}
+
+	static void putInt(byte[] buffer, int offset, int value) {
+
+		buffer[offset]     = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	static int getInt(byte[] buffer, int offset) {
+
+		return ((buffer[offset] & 0xFF) << 24)
+				| ((buffer[offset + 1] & 0xFF) << 16)
+				| ((buffer[offset + 2] & 0xFF) << 8)
+				| (buffer[offset + 3] & 0xFF);
+	}
+
+	static void putLong(byte[] buffer, int offset, long value) {
+
+		putInt(buffer, offset, (int) (value >>> 32));
+		putInt(buffer, offset + 4, (int) value);
+	}
+
+	static long getLong(byte[] buffer, int offset) {
+
+		return ((long) getInt(buffer, offset) << 32) | (getInt(buffer, offset + 4) & 0xFFFFFFFFL);
+	}
+}
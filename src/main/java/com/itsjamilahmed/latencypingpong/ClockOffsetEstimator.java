@@ -0,0 +1,149 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Estimates how far a ponger's clock is from this node's, to split round trips into their forward and reverse legs.
+ *
+ * Each pong gives the four times of an NTP exchange: T1 ping sent and T4 pong received by this node, T2 ping received
+ * and T3 pong sent by the ponger. From those the offset of the ponger's clock is ((T2 - T1) + (T3 - T4)) / 2 and the
+ * network delay is (T4 - T1) - (T3 - T2). The offset is exact if the two legs took the same time, and otherwise wrong
+ * by at most half the delay. So, as NTP does, only the exchange with the least delay in each interval is kept, being the
+ * one that queueing distorted least. A straight line is fitted through the recent ones, for the offset now and the rate
+ * the two clocks drift apart (the skew).
+ *
+ * Memory is fixed when created, nothing is allocated per sample.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class ClockOffsetEstimator {
+
+	private static final long intervalNs = 1000000000L;			// One best exchange kept per second
+	private static final int intervalsKept = 60;					// and the line fitted through the last minute of them (or the last 60 pings at slower rates)
+
+	// The best exchange of the interval in progress
+	private long intervalStartNs = Long.MIN_VALUE;
+	private long bestDelayNs = Long.MAX_VALUE;
+	private long bestOffsetNs;
+	private long bestAtNs;
+
+	// The best exchanges of previous intervals, as a ring
+	private final long[] keptAtNs = new long[intervalsKept];
+	private final long[] keptOffsetNs = new long[intervalsKept];
+	private final long[] keptDelayNs = new long[intervalsKept];
+	private int keptCount = 0;
+	private int nextKept = 0;
+
+	// The current fit, recalculated when an interval ends
+	private long fitAtNs;
+	private double fitOffsetNs;
+	private double fitSkew;										// Nanoseconds gained by the ponger's clock per nanosecond
+	private long fitErrorNs;
+
+	/**
+	 * Add an exchange. All four times are wall clock nanoseconds, T1 and T4 by this node's clock and T2 and T3 by the ponger's.
+	 */
+	public void sample(long t1, long t2, long t3, long t4) {
+
+		long delayNs = (t4 - t1) - (t3 - t2);
+		if (delayNs < 0)
+		{
+			return;				// Can't happen with sane timestamps
+		}
+		long offsetNs = ((t2 - t1) + (t3 - t4)) / 2;
+		long atNs = t1 + (t4 - t1) / 2;
+
+		if (t4 - intervalStartNs >= intervalNs || intervalStartNs == Long.MIN_VALUE)
+		{
+			this.endInterval();
+			intervalStartNs = t4;
+		}
+		if (delayNs < bestDelayNs)
+		{
+			bestDelayNs = delayNs;
+			bestOffsetNs = offsetNs;
+			bestAtNs = atNs;
+			if (keptCount == 0)
+			{
+				this.fit();		// Nothing better to go on yet
+			}
+		}
+	}
+
+	private void endInterval() {
+
+		if (bestDelayNs == Long.MAX_VALUE)
+		{
+			return;
+		}
+		keptAtNs[nextKept] = bestAtNs;
+		keptOffsetNs[nextKept] = bestOffsetNs;
+		keptDelayNs[nextKept] = bestDelayNs;
+		nextKept = (nextKept + 1) % intervalsKept;
+		if (keptCount < intervalsKept)
+		{
+			keptCount++;
+		}
+		bestDelayNs = Long.MAX_VALUE;
+		this.fit();
+	}
+
+	/**
+	 * Least squares line through the kept exchanges, or the best one so far if there is only that.
+	 */
+	private void fit() {
+
+		if (keptCount < 2)
+		{
+			boolean useBest = keptCount == 0 || (bestDelayNs != Long.MAX_VALUE && bestDelayNs < keptDelayNs[0]);
+			fitAtNs = useBest ? bestAtNs : keptAtNs[0];
+			fitOffsetNs = useBest ? bestOffsetNs : keptOffsetNs[0];
+			fitErrorNs = (useBest ? bestDelayNs : keptDelayNs[0]) / 2;
+			fitSkew = 0;
+			return;
+		}
+
+		// Relative to the latest, so the sums stay small enough to be exact in a double
+		fitAtNs = keptAtNs[(nextKept + intervalsKept - 1) % intervalsKept];
+		double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+		long minDelayNs = Long.MAX_VALUE;
+		for (int i = 0; i < keptCount; i++)
+		{
+			double x = keptAtNs[i] - fitAtNs;
+			double y = keptOffsetNs[i];
+			sumX += x;
+			sumY += y;
+			sumXX += x * x;
+			sumXY += x * y;
+			minDelayNs = Math.min(minDelayNs, keptDelayNs[i]);
+		}
+		double denominator = keptCount * sumXX - sumX * sumX;
+		fitSkew = denominator != 0 ? (keptCount * sumXY - sumX * sumY) / denominator : 0;
+		fitOffsetNs = (sumY - fitSkew * sumX) / keptCount;
+		fitErrorNs = minDelayNs / 2;
+	}
+
+	public boolean hasEstimate() {
+		return keptCount > 0 || bestDelayNs != Long.MAX_VALUE;
+	}
+
+	/**
+	 * How far ahead the ponger's clock is at the given time by this node's clock. Negative if behind.
+	 */
+	public long getOffsetNs(long atNs) {
+		return Math.round(fitOffsetNs + fitSkew * (atNs - fitAtNs));
+	}
+
+	/**
+	 * Rate the ponger's clock gains on this node's, in parts per million.
+	 */
+	public double getSkewPpm() {
+		return fitSkew * 1000000;
+	}
+
+	/**
+	 * Most the offset can be wrong by: half the network delay of the best exchange, if its legs were as uneven as they could be.
+	 */
+	public long getErrorNs() {
+		return fitErrorNs;
+	}
+}
@@ -0,0 +1,122 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+/**
+ * The nodes of one group that have answered a ping, kept in order of their round-trip time as each answer arrives.
+ *
+ * Each answer is put straight into its place in a pair of arrays (found by binary search, then the slower ones shifted
+ * along one), so the ranking is ready for the summary as soon as the ping closes, without sorting or copying maps then.
+ * Answers with the same time keep the order they arrived in. Times are kept to the microsecond, as the summary shows them.
+ *
+ * Reused from one ping to the next, so nothing is allocated once the arrays are big enough for the group. Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class GroupRanking {
+
+	private int nodeGroupId;
+	private String nodeGroupName;
+	private int size = 0;
+	private int[] nodeIds = new int[8];
+	private String[] nodeNames = new String[8];
+	private long[] rttsUs = new long[8];
+
+	/**
+	 * Empty it, ready for a group's answers to another ping.
+	 */
+	void reset(int nodeGroupId, String nodeGroupName) {
+
+		this.nodeGroupId = nodeGroupId;
+		this.nodeGroupName = nodeGroupName;
+		Arrays.fill(nodeNames, 0, size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * Put a node into the ranking by its round-trip time.
+	 *
+	 * @return false if the node is already in it, which is left as it was
+	 */
+	public boolean add(int nodeId, String nodeName, long rttNs) {
+
+		if (this.contains(nodeId))
+		{
+			return false;
+		}
+		if (size == nodeIds.length)
+		{
+			nodeIds = Arrays.copyOf(nodeIds, size * 2);
+			nodeNames = Arrays.copyOf(nodeNames, size * 2);
+			rttsUs = Arrays.copyOf(rttsUs, size * 2);
+		}
+
+		long rttUs = (rttNs + 500) / 1000;
+
+		// After any with the same time, so ties stay in the order they arrived
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (rttsUs[middle] <= rttUs)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		System.arraycopy(nodeIds, low, nodeIds, low + 1, size - low);
+		System.arraycopy(nodeNames, low, nodeNames, low + 1, size - low);
+		System.arraycopy(rttsUs, low, rttsUs, low + 1, size - low);
+		nodeIds[low] = nodeId;
+		nodeNames[low] = nodeName;
+		rttsUs[low] = rttUs;
+		size++;
+		return true;
+	}
+
+	public boolean contains(int nodeId) {
+
+		for (int i = 0; i < size; i++)
+		{
+			if (nodeIds[i] == nodeId)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getNodeGroupId() {
+		return nodeGroupId;
+	}
+
+	public String getNodeGroupName() {
+		return nodeGroupName;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param rank From 0 for the fastest
+	 */
+	public String getNodeName(int rank) {
+		return nodeNames[rank];
+	}
+
+	/**
+	 * Round-trip time in milliseconds, to the three decimal places of the individual results.
+	 *
+	 * @param rank From 0 for the fastest
+	 */
+	public Float getRttMs(int rank) {
+		return Float.valueOf(rttsUs[rank] / 1000f);
+	}
+}
@@ -0,0 +1,388 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Logging for the events on the hot paths (the subscriber's callback thread, the results thread and the pinger) that neither
+ * allocates nor waits on an appender's I/O.
+ *
+ * Each event is written as a fixed record into a single-producer, single-consumer ring in the manner of the ResultsRing:
+ * which Event it is, when, up to two numbers, up to four node ids and a String that already exists (such as a message that
+ * has just been sent). Nothing is turned into text on the producer's thread. That is done by the one log writer thread,
+ * which drains every HotPathLog in turn and hands the lines to log4j with the time they happened, so a slow disk or
+ * console only ever holds up that thread. If a ring is full the event is dropped and counted rather than wait for room.
+ *
+ * Which events are enabled is looked up from log4j by the log writer thread once a second, so an event at a level that
+ * is turned off costs its producer a single read. (A change of level at runtime takes up to a second to be noticed.)
+ *
+ * The lines are logged under the Logger of the class that owns the HotPathLog, but carry the log writer thread's name.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class HotPathLog {
+
+	/**
+	 * The events that can be logged, each with its level and how to put it into words.
+	 */
+	public enum Event {
+
+		MESSAGE_RECEIVED(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Message received: ").append(text);
+			}
+		},
+
+		// a: length, b: sequence, ids: sender group, sender, reflector group, reflector
+		BINARY_MESSAGE_RECEIVED(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Message received: Binary message of ").append(a).append(" bytes");
+				if (ids[idsOffset + 1] == -1) {
+					line.append(", not in the expected format.");
+					return;
+				}
+				line.append(": seq=").append(b).append(" from=");
+				appendNode(line, ids[idsOffset], ids[idsOffset + 1]);
+				if (ids[idsOffset + 3] != -1) {
+					line.append(" reflector=");
+					appendNode(line, ids[idsOffset + 2], ids[idsOffset + 3]);
+				}
+			}
+		},
+
+		REFLECT_LANE_FULL(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Dropped a ping as its reflect lane is full.");
+			}
+		},
+
+		// a: sequence, ids: pinger group, pinger
+		REFLECT_SENT(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Successfully sent reflect message for ping ").append(a).append(" from ");
+				appendNode(line, ids[idsOffset], ids[idsOffset + 1]);
+			}
+		},
+
+		// a: queue depth
+		RESULT_QUEUED(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("A received message has been added to the latency processing queue. Current queue depth: ").append(a);
+			}
+		},
+
+		// a: sequence, ids: ponger group, ponger
+		DUPLICATE_PONG(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Ignoring duplicate pong for ping ").append(a).append(" from ");
+				appendNode(line, ids[idsOffset], ids[idsOffset + 1]);
+			}
+		},
+
+		// a: sequence, ids: ponger group, ponger
+		TIMED_OUT_PONG(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Pong for ping ").append(a).append(" from ");
+				appendNode(line, ids[idsOffset], ids[idsOffset + 1]);
+				line.append(" arrived after the ping timed out.");
+			}
+		},
+
+		RESULT(Level.INFO) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append(text);
+			}
+		},
+
+		BASELINE_RESULT(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Raw baseline result: ").append(text);
+			}
+		},
+
+		// a: sequence, b: groups
+		PING_CLOSED(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Ping ").append(a).append(" closed. Summarising rankings and latency of its responses from ").append(b).append(" groups detected.");
+			}
+		},
+
+		SUMMARY(Level.INFO) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Published summary message: ").append(text);
+			}
+		},
+
+		ROLLUP(Level.INFO) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Published rollup message: ").append(text);
+			}
+		},
+
+		ALERT(Level.WARN) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Published alert message: ").append(text);
+			}
+		},
+
+		ROUTE_CHANGE(Level.INFO) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Published route change message: ").append(text);
+			}
+		},
+
+		BASELINE_SUMMARY(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Raw baseline summary: ").append(text);
+			}
+		},
+
+		// a: sequence, b: payload size
+		PING_SENT(Level.DEBUG) {
+			@Override
+			void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text) {
+				line.append("Successfully sent ping message ").append(a).append(" of ").append(b).append(" bytes.");
+			}
+		};
+
+		private final Level level;
+
+		private Event(Level level) {
+			this.level = level;
+		}
+
+		/**
+		 * Put the event into words. Only ever called on the log writer thread.
+		 */
+		abstract void format(StringBuilder line, long a, long b, int[] ids, int idsOffset, String text);
+
+		private static void appendNode(StringBuilder line, int nodeGroupId, int nodeId) {
+
+			NodeNameInterner interner = NodeNameInterner.onlyInstance();
+			line.append(interner.getName(nodeGroupId)).append(':').append(interner.getName(nodeId));
+		}
+	}
+
+	private static final int capacity = 4096;						// Events waiting per log. A power of two
+	private static final int mask = capacity - 1;
+	private static final int idsPerEvent = 4;
+	private static final Event[] events = Event.values();
+
+	private static final long refreshLevelsIntervalNs = 1000000000L;
+	private static final long idleParkNs = 1000000L;				// How long the log writer parks for when every log is empty
+	private static final long reportDropsIntervalNs = 10000000000L;
+
+	private static final CopyOnWriteArrayList<HotPathLog> logs = new CopyOnWriteArrayList<HotPathLog>();
+	private static Thread writerThread = null;
+
+	private final Logger logger;									// The owner's, which the lines are logged under
+
+	// The slots
+	private final Event[] slotEvents = new Event[capacity];
+	private final long[] timesMs = new long[capacity];
+	private final long[] as = new long[capacity];
+	private final long[] bs = new long[capacity];
+	private final int[] ids = new int[capacity * idsPerEvent];
+	private final String[] texts = new String[capacity];
+
+	private volatile long enabledEvents;							// Bit per Event ordinal, kept up to date by the log writer
+
+	// Written by the producer only
+	private final AtomicLong tail = new AtomicLong(0);
+	private long producerIndex = 0;
+	private long cachedHead = 0;
+	private final AtomicLong drops = new AtomicLong(0);
+
+	// Written by the consumer only (the log writer thread, or the shutdown hook, one at a time)
+	private final AtomicLong head = new AtomicLong(0);
+	private long consumerIndex = 0;
+	private final StringBuilder line = new StringBuilder(256);
+	private long dropsReported = 0;
+
+	/**
+	 * @param logger The Logger of the class that owns this, to log its lines under. Only one thread may log to each HotPathLog.
+	 */
+	public HotPathLog(Logger logger) {
+
+		this.logger = logger;
+		this.refreshLevels();
+		logs.add(this);
+		startWriter();
+	}
+
+	/**
+	 * Whether the event's level is enabled, for when it is worth skipping some work to get what would be logged.
+	 */
+	public boolean isEnabled(Event event) {
+		return (enabledEvents & (1L << event.ordinal())) != 0;
+	}
+
+	public void log(Event event) {
+		this.log(event, 0, 0, -1, -1, -1, -1, null);
+	}
+
+	public void log(Event event, String text) {
+		this.log(event, 0, 0, -1, -1, -1, -1, text);
+	}
+
+	public void log(Event event, long a, long b) {
+		this.log(event, a, b, -1, -1, -1, -1, null);
+	}
+
+	public void log(Event event, long a, int nodeGroupId, int nodeId) {
+		this.log(event, a, 0, nodeGroupId, nodeId, -1, -1, null);
+	}
+
+	/**
+	 * Producer: log an event, if its level is enabled and there is room. See each Event for what its arguments are.
+	 */
+	public void log(Event event, long a, long b, int id0, int id1, int id2, int id3, String text) {
+
+		if (!this.isEnabled(event)) {
+			return;
+		}
+
+		if (producerIndex - cachedHead >= capacity) {
+			cachedHead = head.get();
+			if (producerIndex - cachedHead >= capacity) {
+				drops.lazySet(drops.get() + 1);
+				return;
+			}
+		}
+
+		int index = (int) producerIndex & mask;
+		slotEvents[index] = event;
+		timesMs[index] = System.currentTimeMillis();
+		as[index] = a;
+		bs[index] = b;
+		ids[index * idsPerEvent] = id0;
+		ids[index * idsPerEvent + 1] = id1;
+		ids[index * idsPerEvent + 2] = id2;
+		ids[index * idsPerEvent + 3] = id3;
+		texts[index] = text;
+		producerIndex++;
+		tail.lazySet(producerIndex);
+	}
+
+	public long getDrops() {
+		return drops.get();
+	}
+
+	private void refreshLevels() {
+
+		long enabled = 0;
+		for (Event event : events) {
+			if (logger.isEnabledFor(event.level)) {
+				enabled |= 1L << event.ordinal();
+			}
+		}
+		enabledEvents = enabled;
+	}
+
+	/**
+	 * Consumer: format and log everything waiting.
+	 *
+	 * @return how many events were logged
+	 */
+	private synchronized int drain() {
+
+		long available = tail.get();
+		int drained = 0;
+		for (; consumerIndex < available; consumerIndex++, drained++) {
+
+			int index = (int) consumerIndex & mask;
+			Event event = slotEvents[index];
+			line.setLength(0);
+			event.format(line, as[index], bs[index], ids, index * idsPerEvent, texts[index]);
+			texts[index] = null;
+
+			logger.callAppenders(new LoggingEvent(HotPathLog.class.getName(), logger, timesMs[index], event.level, line.toString(), null));
+			head.lazySet(consumerIndex + 1);
+		}
+		return drained;
+	}
+
+	private synchronized void reportDrops() {
+
+		long dropped = drops.get();
+		if (dropped != dropsReported) {
+			logger.warn((dropped - dropsReported) + " log events were dropped as the log writer could not keep up.");
+			dropsReported = dropped;
+		}
+	}
+
+	private static synchronized void startWriter() {
+
+		if (writerThread != null) {
+			return;
+		}
+
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+
+				long nextRefreshNs = System.nanoTime() + refreshLevelsIntervalNs;
+				long nextDropsReportNs = System.nanoTime() + reportDropsIntervalNs;
+				while (true) {
+
+					int drained = 0;
+					for (HotPathLog log : logs) {
+						drained += log.drain();
+					}
+
+					long now = System.nanoTime();
+					if (now - nextRefreshNs >= 0) {
+						for (HotPathLog log : logs) {
+							log.refreshLevels();
+						}
+						nextRefreshNs = now + refreshLevelsIntervalNs;
+					}
+					if (now - nextDropsReportNs >= 0) {
+						for (HotPathLog log : logs) {
+							log.reportDrops();
+						}
+						nextDropsReportNs = now + reportDropsIntervalNs;
+					}
+
+					if (drained == 0) {
+						LockSupport.parkNanos(idleParkNs);
+					}
+				}
+			}
+		}, "HotPathLog-Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		// Get out whatever is still waiting when the program exits
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (HotPathLog log : logs) {
+					log.drain();
+					log.reportDrops();
+				}
+			}
+		}, "HotPathLog-Flush"));
+	}
+}
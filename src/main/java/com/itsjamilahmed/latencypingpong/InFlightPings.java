@@ -0,0 +1,213 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The pings this node has sent that are still collecting their pongs, keyed by sequence number.
+ *
+ * A ping is opened as it is sent (or by its first pong, if the sender couldn't hand it over) and closed once its
+ * deadline passes, whether anyone answered it or not. So pongs of overlapping pings each go to their own ping however
+ * they interleave, and a ping nobody answered is still summarised. The deadlines are kept in a min-heap so the next one
+ * to close is always known without scanning the table. The number open at once is bounded; when full, the oldest is closed early.
+ *
+ * Closed pings are recycled so their rankings are reused. Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class InFlightPings {
+
+	/**
+	 * The results collected so far for one ping.
+	 */
+	public static class InFlightPing {
+
+		private long sequence;
+		private long deadlineNs;
+		private long sendMs;
+		private GroupRanking[] rankings = new GroupRanking[4];		// The first rankingCount in use, the rest kept for reuse
+		private int rankingCount = 0;
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getDeadlineNs() {
+			return deadlineNs;
+		}
+
+		/**
+		 * When the ping was sent, System.currentTimeMillis() at this node, for the summary.
+		 */
+		public long getSendMs() {
+			return sendMs;
+		}
+
+		/**
+		 * The ranking of the group's answers so far, started empty if this is the group's first.
+		 */
+		public GroupRanking rankingFor(int nodeGroupId, String nodeGroupName) {
+
+			GroupRanking ranking = this.getRanking(nodeGroupId);
+			if (ranking != null) {
+				return ranking;
+			}
+			if (rankingCount == rankings.length) {
+				rankings = Arrays.copyOf(rankings, rankingCount * 2);
+			}
+			if (rankings[rankingCount] == null) {
+				rankings[rankingCount] = new GroupRanking();
+			}
+			ranking = rankings[rankingCount++];
+			ranking.reset(nodeGroupId, nodeGroupName);
+			return ranking;
+		}
+
+		/**
+		 * The ranking of the group's answers, or null if none of the group has answered.
+		 */
+		public GroupRanking getRanking(int nodeGroupId) {
+
+			for (int i = 0; i < rankingCount; i++) {
+				if (rankings[i].getNodeGroupId() == nodeGroupId) {
+					return rankings[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * How many groups have answered, for getRankingAt().
+		 */
+		public int getRankingCount() {
+			return rankingCount;
+		}
+
+		public GroupRanking getRankingAt(int index) {
+			return rankings[index];
+		}
+	}
+
+	private final int maxInFlight;
+	private final LongHashMap<InFlightPing> pings;
+	private final ArrayDeque<InFlightPing> spare = new ArrayDeque<InFlightPing>();
+
+	// Min-heap of the open pings ordered by deadline
+	private final InFlightPing[] heap;
+	private int heapSize = 0;
+
+	public InFlightPings(int maxInFlight) {
+
+		this.maxInFlight = maxInFlight;
+		this.pings = new LongHashMap<InFlightPing>(maxInFlight);
+		this.heap = new InFlightPing[maxInFlight];
+	}
+
+	public InFlightPing get(long sequence) {
+		return pings.get(sequence);
+	}
+
+	public boolean isFull() {
+		return heapSize == maxInFlight;
+	}
+
+	public int size() {
+		return heapSize;
+	}
+
+	/**
+	 * Start collecting results for a ping. There must be room: check isFull() first and close the oldest if so.
+	 */
+	public InFlightPing open(long sequence, long deadlineNs, long sendMs) {
+
+		InFlightPing ping = spare.poll();
+		if (ping == null) {
+			ping = new InFlightPing();
+		}
+		ping.sequence = sequence;
+		ping.deadlineNs = deadlineNs;
+		ping.sendMs = sendMs;
+
+		pings.put(sequence, ping);
+		heap[heapSize] = ping;
+		siftUp(heapSize++);
+		return ping;
+	}
+
+	/**
+	 * The earliest deadline of all the open pings, or Long.MAX_VALUE if there are none.
+	 */
+	public long nextDeadlineNs() {
+		return heapSize == 0 ? Long.MAX_VALUE : heap[0].deadlineNs;
+	}
+
+	/**
+	 * Close and return the open ping with the earliest deadline if that deadline has passed, otherwise null.
+	 * Hand it back with recycle() once finished with.
+	 */
+	public InFlightPing closeExpired(long nowNs) {
+
+		if (heapSize == 0 || nowNs - heap[0].deadlineNs < 0) {
+			return null;
+		}
+		return closeOldest();
+	}
+
+	/**
+	 * Close and return the open ping with the earliest deadline, whether it has passed or not. Null if there are none.
+	 */
+	public InFlightPing closeOldest() {
+
+		if (heapSize == 0) {
+			return null;
+		}
+		InFlightPing oldest = heap[0];
+		heap[0] = heap[--heapSize];
+		heap[heapSize] = null;
+		if (heapSize > 0) {
+			siftDown(0);
+		}
+		pings.remove(oldest.sequence);
+		return oldest;
+	}
+
+	public void recycle(InFlightPing ping) {
+
+		ping.rankingCount = 0;
+		spare.push(ping);
+	}
+
+	private void siftUp(int index) {
+
+		InFlightPing ping = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap[parent].deadlineNs - ping.deadlineNs <= 0) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = ping;
+	}
+
+	private void siftDown(int index) {
+
+		InFlightPing ping = heap[index];
+		int half = heapSize >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			int right = child + 1;
+			if (right < heapSize && heap[right].deadlineNs - heap[child].deadlineNs < 0) {
+				child = right;
+			}
+			if (ping.deadlineNs - heap[child].deadlineNs <= 0) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = ping;
+	}
+}
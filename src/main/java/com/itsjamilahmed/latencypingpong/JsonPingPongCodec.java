@@ -0,0 +1,59 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * The original wire format. A JSON object carried as text.
+ * Keep using this if there are consumers reading the ping and pong topics directly.
+ * 
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class JsonPingPongCodec implements PingPongCodec {
+
+	public static final String NAME = "json";
+	
+	// How the fields needed to route a ping look in the text, as written by JSONObject with no whitespace.
+	// (The padding is only ever letters and digits, so can't contain either.)
+	private static final String PING_FIELD = "\"r\":false";
+	private static final String SENDER_NAME_FIELD = "\"n\":\"";
+	
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void sendPing(PingPongMessage pingMessage, TransportSender sender, TransportTopic topic) throws TransportException {
+		sender.sendText(topic, pingMessage.getPingMessage());	// The timestamps are refreshed on each call to this method.
+	}
+
+	@Override
+	public void sendPong(PingPongMessage pongMessage, TransportSender sender, TransportTopic topic) throws TransportException {
+
+		pongMessage.stampReflectSend();
+		sender.sendText(topic, pongMessage.getPongMessage());
+	}
+
+	/**
+	 * Read a received text message into the given PingPongMessage.
+	 * 
+	 * @return true if the message is to be reflected back, as per PingPongMessage.receiveMessage()
+	 */
+	public boolean read(String text, PingPongMessage receivedMessage) {
+		return receivedMessage.receiveMessage(text);
+	}
+	
+	/**
+	 * Find the sender's name in a ping without parsing the whole message, for deciding which reflect lane it goes to.
+	 * 
+	 * @return the index in the text of the first character of the name, which runs up to the next '"', or -1 if the message isn't a ping
+	 */
+	static int findPingSenderName(String text) {
+		
+		if (!text.contains(PING_FIELD))
+		{
+			return -1;
+		}
+		int field = text.indexOf(SENDER_NAME_FIELD);
+		return field < 0 ? -1 : field + SENDER_NAME_FIELD.length();
+	}
+}
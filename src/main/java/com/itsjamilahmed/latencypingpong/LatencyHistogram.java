@@ -0,0 +1,199 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-memory latency histogram in the style of HdrHistogram.
+ *
+ * Values are bucketed log-linearly: each power-of-two range is split into the same number of linear sub-buckets,
+ * so the relative error is constant (under 1% with the default precision) whatever the magnitude of the value.
+ * All the memory is allocated up front and recording is a couple of shifts and an array increment.
+ *
+ * Not thread-safe. Use a LatencyRecorder to record from one thread and read from another.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class LatencyHistogram {
+
+	public static final long DEFAULT_HIGHEST_TRACKABLE_NS = 60L * 1000 * 1000 * 1000;	// One minute, anything slower is clamped to this
+	public static final int DEFAULT_SUB_BUCKET_BITS = 7;								// 128 sub-buckets per power of two
+
+	private final long highestTrackableValue;
+	private final int subBucketHalfCountMagnitude;
+	private final int subBucketHalfCount;
+	private final long subBucketMask;
+	private final int leadingZeroCountBase;
+	private final long[] counts;
+
+	private long totalCount = 0;
+	private long minValue = Long.MAX_VALUE;
+	private long maxValue = 0;
+
+	public LatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_NS, DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	public LatencyHistogram(long highestTrackableValue, int subBucketBits) {
+
+		this.highestTrackableValue = highestTrackableValue;
+		this.subBucketHalfCountMagnitude = subBucketBits - 1;
+		this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+		this.subBucketMask = (1L << subBucketBits) - 1;
+		this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+		// How many powers of two are needed to reach the highest value?
+		long smallestUntrackableValue = 1L << subBucketBits;
+		int bucketsNeeded = 1;
+		while (smallestUntrackableValue <= highestTrackableValue) {
+			if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+				bucketsNeeded++;
+				break;
+			}
+			smallestUntrackableValue <<= 1;
+			bucketsNeeded++;
+		}
+		this.counts = new long[(bucketsNeeded + 1) * subBucketHalfCount];
+	}
+
+	/**
+	 * Record a single value. Negative values are ignored and anything above the highest trackable value is clamped to it.
+	 */
+	public void record(long value) {
+		record(value, 1);
+	}
+
+	public void record(long value, long count) {
+
+		if (value < 0) {
+			return;
+		}
+		if (value > highestTrackableValue) {
+			value = highestTrackableValue;
+		}
+
+		counts[countsIndexFor(value)] += count;
+		totalCount += count;
+		if (value < minValue) {
+			minValue = value;
+		}
+		if (value > maxValue) {
+			maxValue = value;
+		}
+	}
+
+	/**
+	 * Add all the counts of another histogram of the same size and precision into this one.
+	 */
+	public void add(LatencyHistogram other) {
+
+		if (other.totalCount == 0) {
+			return;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		minValue = Math.min(minValue, other.minValue);
+		maxValue = Math.max(maxValue, other.maxValue);
+	}
+
+	/**
+	 * Take away the counts of another histogram that were previously added to this one.
+	 * The min and max can't be wound back so will stay as the widest seen until the next reset().
+	 */
+	public void subtract(LatencyHistogram other) {
+
+		if (other.totalCount == 0) {
+			return;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] -= other.counts[i];
+		}
+		totalCount -= other.totalCount;
+	}
+
+	public void reset() {
+
+		if (totalCount != 0) {
+			Arrays.fill(counts, 0);
+		}
+		totalCount = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMaxValue() {
+		return totalCount == 0 ? 0 : maxValue;
+	}
+
+	public long getMinValue() {
+		return totalCount == 0 ? 0 : minValue;
+	}
+
+	/**
+	 * The value at or below which the given percentage of recorded values fall, e.g. 99.9
+	 * Reported as the highest value that would be counted in the same bucket, and never more than the max seen.
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		if (totalCount == 0) {
+			return 0;
+		}
+
+		double requestedPercentile = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = (long) (((requestedPercentile / 100.0) * totalCount) + 0.5);
+		countAtPercentile = Math.max(countAtPercentile, 1);
+
+		long runningCount = 0;
+		for (int i = 0; i < counts.length; i++) {
+			runningCount += counts[i];
+			if (runningCount >= countAtPercentile) {
+				return Math.min(highestEquivalentValue(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+	/**
+	 * Number of buckets, for walking through the raw counts with getCountAt() and getValueAt().
+	 */
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	public long getCountAt(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * The lowest value that is counted at the given bucket index.
+	 */
+	public long getValueAt(int index) {
+
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if (bucketIndex < 0) {
+			subBucketIndex -= subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return ((long) subBucketIndex) << bucketIndex;
+	}
+
+	private long highestEquivalentValue(int index) {
+
+		int bucketIndex = Math.max((index >> subBucketHalfCountMagnitude) - 1, 0);
+		return getValueAt(index) + (1L << bucketIndex) - 1;
+	}
+
+	private int countsIndexFor(long value) {
+
+		int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+		int subBucketIndex = (int) (value >>> bucketIndex);
+		return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+	}
+}
@@ -4,6 +4,7 @@
 package com.itsjamilahmed.latencypingpong;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,6 +37,10 @@ public class LatencyPingPong {
 	final static String pongTopicPrefix = allTopicsPrefix + "/Pongs";
 	final static String resultsTopicPrefix = allTopicsPrefix + "/Results";
 	final static String summaryTopicPrefix = allTopicsPrefix + "/Summary";
+	final static String rollupTopicPrefix = allTopicsPrefix + "/Rollup";
+	final static String alertTopicPrefix = allTopicsPrefix + "/Alerts";
+	final static String routeTopicPrefix = allTopicsPrefix + "/Routes";
+	final static String meshTopicPrefix = allTopicsPrefix + "/Mesh";
 	
 	// A log4j logger to handle all stdout/log output 
 	static 	Logger logger = Logger.getLogger(LatencyPingPong.class);
@@ -61,14 +66,125 @@ public class LatencyPingPong {
 		setupLoggingProperties(parameters);
 		logger.debug("Program started with arguments: " + parameters.toString());
 		logger.info("LatencyPingPong Program started. This is node name: " + parameters.get("node_name").toString() + " in node group: " + parameters.get("node_group"));
+		
+		// The binary format has a fixed amount of room for names. Flag it now rather than have results show up under a truncated name.
+		if (!NodeNameInterner.fitsInSlot(parameters.get("node_name").toString()) || !NodeNameInterner.fitsInSlot(parameters.get("node_group").toString()))
+		{
+			logger.warn("Node name or node group is longer than " + NodeNameInterner.MAX_NAME_BYTES + " bytes and will be truncated in any binary format messages.");
+		}
 
+		// Serve metrics? Every node in this program adds itself to the one server, when its factory starts.
+		if ((int) parameters.get("metrics_port") != 0)
+		{
+			MetricsServer metricsServer = new MetricsServer((int) parameters.get("metrics_port"));
+			if (metricsServer.start())
+			{
+				parameters.put("metrics_server", metricsServer);
+			}
+		}
+		
 		// The factory will be responsible for creating the threads to send, reflect, process results, etc.
 		// Going to be lazy and use the same Map<String, Objects> parameters object to pass all the pertinent values around
 		
-		SolaceFactory solaceFactory = new SolaceFactory(parameters);
-		Thread solaceFactoryThread = new Thread(solaceFactory);
-		logger.debug("Solace Factory Thread created and being started.");
-		solaceFactoryThread.start();
+		if (LoopbackTransport.NAME.equals(parameters.get("transport")))
+		{
+			// Run a number of nodes in this JVM, all connected to the same in-process bus
+			LoopbackBus loopbackBus = new LoopbackBus();
+			int loopbackNodes = (int) parameters.get("loopback_nodes");
+			logger.info("Running " + loopbackNodes + " nodes over the in-process loopback transport.");
+			
+			for (int node = 1; node <= loopbackNodes; node++)
+			{
+				Map<String,Object> nodeParameters = new HashMap<String,Object>(parameters);
+				if (loopbackNodes > 1)
+				{
+					nodeParameters.put("node_name", parameters.get("node_name") + "-" + node);
+				}
+				setDefaultTopics(nodeParameters);
+				startFactory(nodeParameters, new LoopbackTransport(loopbackBus));
+			}
+		}
+		else if (SocketTransport.TCP.equals(parameters.get("transport")) || SocketTransport.UDP.equals(parameters.get("transport")))
+		{
+			setDefaultTopics(parameters);
+			startFactory(parameters, new SocketTransport(parameters.get("transport").toString(), parameters));
+		}
+		else
+		{
+			setDefaultTopics(parameters);
+			
+			if (parameters.get("baseline") != null)
+			{
+				// Run the same ping-pong again over the sockets, with the results going into its summaries rather than published
+				RawRttBaseline rawRttBaseline = new RawRttBaseline();
+				Map<String,Object> baselineParameters = new HashMap<String,Object>(parameters);
+				baselineParameters.put("raw_rtt_baseline", rawRttBaseline);
+				baselineParameters.put("records_raw_rtt_baseline", true);
+				parameters.put("raw_rtt_baseline", rawRttBaseline);
+				logger.info("Also running over " + parameters.get("baseline") + " sockets as a baseline, with peers: " + parameters.get("socket_peers"));
+				startFactory(baselineParameters, new SocketTransport(parameters.get("baseline").toString(), baselineParameters));
+			}
+			
+			if ((int) parameters.get("sessions") > 1)
+			{
+				startSessions(parameters);
+			}
+			else
+			{
+				startFactory(parameters, new SolaceTransport(parameters));
+			}
+		}
+	}
+	
+	/**
+	 * Open a number of sessions to the broker, one at a time, each with its own pinger and results and optionally its own ponger.
+	 * After each has been running for the ramp interval, report the latency across all of them so far, then start the next.
+	 */
+	private static void startSessions(Map<String,Object> parameters) {
+		
+		int sessions = (int) parameters.get("sessions");
+		long rampMs = (int) parameters.get("session_ramp") * 1000L;
+		boolean sessionPongers = (boolean) parameters.get("session_pongers");
+		
+		String[] sessionNames = new String[sessions];
+		for (int session = 0; session < sessions; session++)
+		{
+			sessionNames[session] = parameters.get("node_name") + "-" + (session + 1);
+		}
+		SessionScaling sessionScaling = new SessionScaling(sessionNames);
+		logger.info("Opening " + sessions + " sessions, one every " + parameters.get("session_ramp") + " seconds, "
+				+ (sessionPongers ? "each with its own ponger." : "with only the first one answering pings."));
+		
+		for (int session = 0; session < sessions; session++)
+		{
+			Map<String,Object> sessionParameters = new HashMap<String,Object>(parameters);
+			sessionParameters.put("node_name", sessionNames[session]);
+			sessionParameters.put("session_scaling", sessionScaling);
+			sessionParameters.put("session_index", session);
+			if (session > 0 && !sessionPongers && parameters.get("subscribe_topic") == null)
+			{
+				// Pongs only. The first session still answers pings, so the process answers them as it would with only the one.
+				sessionParameters.put("subscribe_topic", pongTopicPrefix + "/>,");
+			}
+			setDefaultTopics(sessionParameters);
+			startFactory(sessionParameters, new SolaceTransport(sessionParameters));
+			
+			try {
+				Thread.sleep(rampMs);
+			} catch (InterruptedException e) {
+				return;
+			}
+			sessionScaling.stepComplete(session + 1);
+		}
+		sessionScaling.logReport();
+	}
+	
+	private static void startFactory(Map<String,Object> parameters, Transport transport) {
+		
+		PingPongFactory factory = new PingPongFactory(parameters, transport);
+		Thread factoryThread = new Thread(factory);
+		logger.debug("Factory Thread created and being started for node: " + parameters.get("node_name"));
+		factoryThread.start();
 	}
 	
 	private static void setupLoggingProperties(Map<String,Object> parameters) {
@@ -130,6 +246,8 @@ public class LatencyPingPong {
 		System.err.println("***                                           ***");
 		System.err.println("***  Products/Protocols Supported:            ***");
 		System.err.println("***   - Solace Messaging [JCSMP API: 10.6.3]  ***");
+		System.err.println("***   - In-process loopback (no network)      ***");
+		System.err.println("***   - Raw TCP/UDP sockets (no broker)       ***");
 		System.err.println("***                                           ***");
 		System.err.println("***  Contact: Jamil.Ahmed@Solace.com          ***");
 		System.err.println("***                                           ***");
@@ -173,7 +291,132 @@ public class LatencyPingPong {
 			System.exit(0);
 		}
 		
+		// Only the Solace transport needs somewhere to connect to
+		if (SolaceTransport.NAME.equals(parsedArgs.get("transport")) && parsedArgs.get("connection_url") == null)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument -c/--connection-url is required with the " + SolaceTransport.NAME + " transport.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		// The sockets need the addresses of the other nodes, as there's nothing in between to find them through
+		boolean socketTransport = SocketTransport.TCP.equals(parsedArgs.get("transport")) || SocketTransport.UDP.equals(parsedArgs.get("transport"));
+		if (parsedArgs.get("baseline") != null && !SolaceTransport.NAME.equals(parsedArgs.get("transport")))
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --baseline is only for use with the " + SolaceTransport.NAME + " transport.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		if ((int)parsedArgs.get("sessions") > 1 && (!SolaceTransport.NAME.equals(parsedArgs.get("transport")) || parsedArgs.get("baseline") != null))
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --sessions is only for use with the " + SolaceTransport.NAME + " transport, without --baseline.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		if (socketTransport || parsedArgs.get("baseline") != null)
+		{
+			String badAddress = null;
+			if (parsedArgs.get("socket_peers") == null)
+			{
+				System.out.println("ERROR: Arguments Processing Exception. -> argument --socket-peers is required with the " + SocketTransport.TCP + " and " + SocketTransport.UDP + " transports and --baseline.\n");
+				myArgParser.printHelp();
+				System.exit(0);
+			}
+			for (String address : (parsedArgs.get("socket_listen") + "," + parsedArgs.get("socket_peers")).split(","))
+			{
+				InetSocketAddress socketAddress = SocketTransport.parseAddress(address.trim());
+				if (!address.trim().isEmpty() && (socketAddress == null || socketAddress.isUnresolved()))
+				{
+					badAddress = address.trim();
+				}
+			}
+			if (badAddress != null)
+			{
+				System.out.println("ERROR: Arguments Processing Exception. -> '" + badAddress + "' is not a Host:Port that could be found.\n");
+				myArgParser.printHelp();
+				System.exit(0);
+			}
+		}
+		
+		if ((int)parsedArgs.get("loopback_nodes") < 1)
+		{
+			parsedArgs.put("loopback_nodes", 1);
+		}
+		
+		if ((int)parsedArgs.get("journal_segment_size") < 1 || (int)parsedArgs.get("journal_segment_size") > 2047)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --journal-segment-size must be from 1 to 2047 MB.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if ((int)parsedArgs.get("journal_segments") < 0)
+		{
+			parsedArgs.put("journal_segments", 0);
+		}
+		
+		if ((int)parsedArgs.get("metrics_port") < 0 || (int)parsedArgs.get("metrics_port") > 65535)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --metrics-port must be from 1 to 65535, or 0 for none.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if ((int)parsedArgs.get("alert_rtt_threshold") < 1)
+		{
+			parsedArgs.put("alert_rtt_threshold", 1);
+		}
+		
+		if ((int)parsedArgs.get("alert_loss_percent") < 1 || (int)parsedArgs.get("alert_loss_percent") > 100)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --alert-loss-percent must be from 1 to 100.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if ((int)parsedArgs.get("route_percentile") < 1 || (int)parsedArgs.get("route_percentile") > 100)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --route-percentile must be from 1 to 100.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if ((int)parsedArgs.get("route_margin") < 0 || (int)parsedArgs.get("route_margin") > 99)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --route-margin must be from 0 to 99 percent.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if (Boolean.TRUE.equals(parsedArgs.get("mesh")) && (int)parsedArgs.get("ping_interval") == 0 && (int)parsedArgs.get("ping_interval_us") == 0)
+		{
+			System.out.println("ERROR: Arguments Processing Exception. -> argument --mesh needs every node to ping, so can't be used with a --ping-interval of 0.\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		
+		if ((int)parsedArgs.get("mesh_delta_percent") < 0)
+		{
+			parsedArgs.put("mesh_delta_percent", 0);
+		}
+		
+		if ((int)parsedArgs.get("route_min_dwell") < 0)
+		{
+			parsedArgs.put("route_min_dwell", 0);
+		}
+		
+		if ((int)parsedArgs.get("reflect_lanes") < 1)
+		{
+			parsedArgs.put("reflect_lanes", 1);
+		}
+		
+		if ((int)parsedArgs.get("session_ramp") < 1)
+		{
+			parsedArgs.put("session_ramp", 1);
+		}
+		
 		// Check if the interval value is too small. Enforce a floor value on it.
+		// (Shorter intervals are for the high-rate mode, which doesn't rely on a Timer.)
 		int pingInterval = (int)parsedArgs.get("ping_interval");
 		final int pingIntervalFloor = 50;
 		if (pingInterval != 0 && pingInterval < 50)
@@ -181,8 +424,81 @@ public class LatencyPingPong {
 			parsedArgs.put("ping_interval", pingIntervalFloor);
 		}
 		
+		if ((int)parsedArgs.get("ping_interval_us") < 0)
+		{
+			parsedArgs.put("ping_interval_us", 0);
+		}
+		
+		// High-rate mode closes a ping every few microseconds, far too often for a summary of each one
+		if ((int)parsedArgs.get("summary_interval") < 0)
+		{
+			parsedArgs.put("summary_interval", 0);
+		}
+		if ((int)parsedArgs.get("ping_interval_us") != 0 && (int)parsedArgs.get("summary_interval") == 0)
+		{
+			parsedArgs.put("summary_interval", 1000);
+		}
+		
+		if ((int)parsedArgs.get("ping_timeout") < 1)
+		{
+			parsedArgs.put("ping_timeout", 1);
+		}
+		
+		if ((int)parsedArgs.get("max_in_flight_pings") < 1)
+		{
+			parsedArgs.put("max_in_flight_pings", 1);
+		}
+		
+		if ((int)parsedArgs.get("ponger_ttl") < 0)
+		{
+			parsedArgs.put("ponger_ttl", 0);
+		}
+		
+		// Sizes to pad pings to, one from --payload-size, or a list to step through from --payload-sweep
+		int[] payloadSizes = new int[0];
+		if (parsedArgs.get("payload_sweep") != null)
+		{
+			String[] sweep = parsedArgs.get("payload_sweep").toString().split(",");
+			payloadSizes = new int[sweep.length];
+			for (int i = 0; i < sweep.length; i++)
+			{
+				try {
+					payloadSizes[i] = Integer.parseInt(sweep[i].trim());
+				} catch (NumberFormatException e) {
+					payloadSizes[i] = -1;
+				}
+				if (payloadSizes[i] < 1)
+				{
+					System.out.println("ERROR: Arguments Processing Exception. -> '" + sweep[i].trim() + "' in --payload-sweep is not a size in bytes.\n");
+					myArgParser.printHelp();
+					System.exit(0);
+				}
+			}
+		}
+		else if ((int)parsedArgs.get("payload_size") > 0)
+		{
+			payloadSizes = new int[] { (int)parsedArgs.get("payload_size") };
+		}
+		parsedArgs.put("payload_sizes", payloadSizes);
+		
+		if ((int)parsedArgs.get("payload_sweep_pings") < 1)
+		{
+			parsedArgs.put("payload_sweep_pings", 1);
+		}
+		
+		if ((int)parsedArgs.get("results_queue_size") < 2)
+		{
+			parsedArgs.put("results_queue_size", 2);
+		}
+		
+		return parsedArgs;
+	}
+	
+	/**
+	 * If the arguments did not provide explicit ping/pong topic names, setup default ones now with the node-name that is now sure to be present.
+	 */
+	private static void setDefaultTopics(Map<String,Object> parsedArgs) {
 		
-		// If the arguments did not provide explicit ping/pong topic names, setup default ones now with the node-name that is now sure to be present.
 		if (parsedArgs.get("publish_topic") == null) {
 			parsedArgs.put("publish_topic", pingTopicPrefix + "/" + parsedArgs.get("node_group") + "/" + parsedArgs.get("node_name"));
 		}
@@ -202,7 +518,22 @@ public class LatencyPingPong {
 		if (parsedArgs.get("summary_topic") == null) {
 			parsedArgs.put("summary_topic", summaryTopicPrefix + "/" + parsedArgs.get("node_group") + "/" + parsedArgs.get("node_name"));
 		}
-		return parsedArgs;
+		
+		if (parsedArgs.get("rollup_topic") == null) {
+			parsedArgs.put("rollup_topic", rollupTopicPrefix + "/" + parsedArgs.get("node_group") + "/" + parsedArgs.get("node_name"));
+		}
+		
+		if (parsedArgs.get("alert_topic") == null) {
+			parsedArgs.put("alert_topic", alertTopicPrefix + "/" + parsedArgs.get("node_group") + "/" + parsedArgs.get("node_name"));
+		}
+		
+		if (parsedArgs.get("route_topic") == null) {
+			parsedArgs.put("route_topic", routeTopicPrefix + "/" + parsedArgs.get("node_group") + "/" + parsedArgs.get("node_name"));
+		}
+		
+		if (parsedArgs.get("mesh_topic") == null) {
+			parsedArgs.put("mesh_topic", meshTopicPrefix);
+		}
 	}
 	
 	/**
@@ -246,6 +577,14 @@ public class LatencyPingPong {
 				.help("Topic destination to publish results to.	[Default: " + resultsTopicPrefix + "/<node-group>/<node-name> ]");
 		topicsArgGroup.addArgument("-m", "--summary-topic")
 				.help("Topic destination to publish summaries to.	[Default: " + summaryTopicPrefix + "/<node-group>/<node-name> ]");
+		topicsArgGroup.addArgument("--rollup-topic")
+				.help("Topic destination to publish --rollups to, followed by /1m, /5m or /1h for each window.	[Default: " + rollupTopicPrefix + "/<node-group>/<node-name> ]");
+		topicsArgGroup.addArgument("--alert-topic")
+				.help("Topic destination to publish --alerts to.	[Default: " + alertTopicPrefix + "/<node-group>/<node-name> ]");
+		topicsArgGroup.addArgument("--route-topic")
+				.help("Topic destination to publish --routes changes to.	[Default: " + routeTopicPrefix + "/<node-group>/<node-name> ]");
+		topicsArgGroup.addArgument("--mesh-topic")
+				.help("Topic prefix shared by the whole --mesh. Rows go to <prefix>/Rows/<node-group>/<node-name>, and the --mesh-aggregator publishes to <prefix>/Snapshot and <prefix>/Delta.	[Default: " + meshTopicPrefix + " ]");
 		
 		// Create a new group for the remainder
 		ArgumentGroup commonArgGroup = argCommonParser.addArgumentGroup("Other Arguments");
@@ -253,6 +592,32 @@ public class LatencyPingPong {
 				.help("Publish ping messages every N milliseconds.	[Default: 10000 (10 seconds), None: 0]")
 				.type(Integer.class)
 				.setDefault(10000);
+		commonArgGroup.addArgument("-I", "--ping-interval-us")
+				.help("High-rate mode. Publish ping messages every N microseconds from a dedicated sender thread, instead of --ping-interval.	[Default: 0 (off)]")
+				.type(Integer.class)
+				.setDefault(0);
+		commonArgGroup.addArgument("--wait-strategy")
+				.help("How the high-rate sender waits for its next send. Spin is the most precise but uses a whole core.	[Default: " + WaitStrategy.PARK.getName() + "]")
+				.choices(WaitStrategy.names())
+				.setDefault(WaitStrategy.PARK.getName());
+		commonArgGroup.addArgument("--ping-timeout")
+				.help("Pongs must arrive within N milliseconds of their ping being sent. Later ones are counted as timeouts.	[Default: 2000]")
+				.type(Integer.class)
+				.setDefault(2000);
+		commonArgGroup.addArgument("--summary-interval")
+				.help("Publish a summary every N milliseconds, with the rankings of the latest ping closed, rather than one as each ping closes and the percentiles every ping interval. Always on in high-rate mode.	[Default: 0 (one per ping), or 1000 with --ping-interval-us]")
+				.type(Integer.class)
+				.setDefault(0);
+		commonArgGroup.addArgument("--max-in-flight-pings")
+				.help("Most pings that can be awaiting pongs at once. Beyond this the oldest is summarised before its timeout.	[Default: 4096]")
+				.type(Integer.class)
+				.setDefault(4096);
+		commonArgGroup.addArgument("--expected-pongers")
+				.help("Comma separated list of <node-group>:<node-name> that should answer every ping. Summaries report them as missing if they don't, even before their first pong. Others are learned from their first pong.");
+		commonArgGroup.addArgument("--ponger-ttl")
+				.help("Forget a learned ponger, and its results so far, after N seconds without a pong from it.	[Default: 300, Never: 0]")
+				.type(Integer.class)
+				.setDefault(300);
 		commonArgGroup.addArgument("-n", "--ping-count")
 				.help("Publish a total of N ping messages.		[Default: 6, Unlimited: 0]")
 				.type(Integer.class)
@@ -271,6 +636,98 @@ public class LatencyPingPong {
 //						.verifyNotExists().verifyCanCreate()
 //						.or()
 //						.verifyExists().verifyCanWrite());
+		commonArgGroup.addArgument("-f", "--wire-format")
+				.help("Format to send ping messages in. Pongs are reflected in the format they arrive in.	[Default: " + JsonPingPongCodec.NAME + "]")
+				.choices(JsonPingPongCodec.NAME, BinaryPingPongCodec.NAME)
+				.setDefault(JsonPingPongCodec.NAME);
+		commonArgGroup.addArgument("--fast-reflect")
+				.help("Reflect binary format pings without decoding them.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--reflect-lanes")
+				.help("Reflect pings on N threads, each with a connection of its own, rather than on the one that receives them. Each pinger's pings all go the same way, chosen by its name, so its pongs stay in order. Needs a core to spare for each.	[Default: 1]")
+				.type(Integer.class)
+				.setDefault(1);
+		commonArgGroup.addArgument("--payload-size")
+				.help("Pad pings to N bytes, to measure at the message sizes of real traffic. Pongs carry the padding back. Sizes smaller than an unpadded ping have no effect.	[Default: 0 (no padding)]")
+				.type(Integer.class)
+				.setDefault(0);
+		commonArgGroup.addArgument("--payload-sweep")
+				.help("Comma separated list of sizes in bytes to pad pings to in turn, instead of --payload-size. Summaries then have percentiles for each size.");
+		commonArgGroup.addArgument("--payload-sweep-pings")
+				.help("Number of pings to send at each size of --payload-sweep before moving on to the next.	[Default: 100]")
+				.type(Integer.class)
+				.setDefault(100);
+		commonArgGroup.addArgument("--results-queue-size")
+				.help("Number of pongs that can wait to be processed into results before any more are dropped. Rounded up to a power of two.	[Default: 1024]")
+				.type(Integer.class)
+				.setDefault(1024);
+		commonArgGroup.addArgument("--results-wait-strategy")
+				.help("How the results thread, and any --reflect-lanes, wait for more to arrive.	[Default: " + WaitStrategy.PARK.getName() + "]")
+				.choices(WaitStrategy.names())
+				.setDefault(WaitStrategy.PARK.getName());
+		commonArgGroup.addArgument("--journal")
+				.help("Directory to record every pong to, in binary. Read it back with " + SampleJournalReader.class.getName() + ".")
+				.type(Arguments.fileType()
+						.verifyNotExists().verifyCanCreate()
+						.or()
+						.verifyIsDirectory().verifyCanWrite());
+		commonArgGroup.addArgument("--journal-segment-size")
+				.help("Start a new --journal file every N MB.	[Default: 64]")
+				.type(Integer.class)
+				.setDefault(64);
+		commonArgGroup.addArgument("--journal-segments")
+				.help("Delete the oldest --journal files beyond N of them.	[Default: 0 (keep all)]")
+				.type(Integer.class)
+				.setDefault(0);
+		commonArgGroup.addArgument("--rollups")
+				.help("Also publish the percentiles of each ponger over the last minute, 5 minutes and hour, with smoothed RTT and jitter. The last minute every 10 seconds, the others as each of their minute or 5 minute slices completes. Takes around 0.25MB per ponger.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--alerts")
+				.help("Watch each ponger's RTT and loss against what it was over its first pings, and publish an alert when either gets worse for a while, and again when it recovers.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--alert-rtt-threshold")
+				.help("How far RTTs must add up to above normal, in standard deviations of the ponger's usual RTT, to raise an --alerts alert. Lower is more sensitive.	[Default: 10]")
+				.type(Integer.class)
+				.setDefault(10);
+		commonArgGroup.addArgument("--alert-loss-percent")
+				.help("How far loss must rise above the ponger's usual loss, in percent, to raise an --alerts alert.	[Default: 5]")
+				.type(Integer.class)
+				.setDefault(5);
+		commonArgGroup.addArgument("--routes")
+				.help("Recommend the best ponger of each group to route to, by its RTTs over the last minute, and publish a route change whenever that changes. Checked every 10 seconds.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--route-percentile")
+				.help("Percentile of each ponger's RTTs over the last minute to compare --routes by.	[Default: 90]")
+				.type(Integer.class)
+				.setDefault(90);
+		commonArgGroup.addArgument("--route-margin")
+				.help("How much lower, in percent, another ponger's RTT must be to take over the --routes choice.	[Default: 10]")
+				.type(Integer.class)
+				.setDefault(10);
+		commonArgGroup.addArgument("--route-min-dwell")
+				.help("Keep each --routes choice for at least N seconds before another can take over, unless it stops answering.	[Default: 60]")
+				.type(Integer.class)
+				.setDefault(60);
+		commonArgGroup.addArgument("--mesh")
+				.help("Full-mesh mode: every node pings and pongs every other, and sends its row of the RTT matrix (the p50 and p99 to each ponger) every 10 seconds. Run with --ping-count 0 to keep going.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--mesh-aggregator")
+				.help("Gather the rows of every --mesh node into the full N x N RTT matrix, and publish the cells that change every 10 seconds, and the whole matrix every minute.")
+				.type(boolean.class)
+				.setDefault(false);
+		commonArgGroup.addArgument("--mesh-delta-percent")
+				.help("How far, in percent, a cell's p50 must move to be published in a --mesh-aggregator delta.	[Default: 5]")
+				.type(Integer.class)
+				.setDefault(5);
+		commonArgGroup.addArgument("--metrics-port")
+				.help("Serve counters, gauges and RTT histograms for Prometheus to scrape on this port, at " + MetricsServer.PATH + ".	[Default: 0 (off)]")
+				.type(Integer.class)
+				.setDefault(0);
 		commonArgGroup.addArgument("-o", "--output-log")
 				.help("Log file location for all program output. (Log will roll every 30MB.)")
 				.type(Arguments.fileType()
@@ -293,11 +750,40 @@ public class LatencyPingPong {
 	private static void buildSolaceArgsParser(ArgumentParser argSolaceParser) {
 		
 
+		ArgumentGroup transportArgGroup = argSolaceParser.addArgumentGroup("Transport Arguments");
+		transportArgGroup.addArgument("--transport")
+				.help("Messaging to run the ping-pong over. Loopback runs all the nodes in this one program, " + SocketTransport.TCP + " and " + SocketTransport.UDP + " go straight to the --socket-peers.	[Default: " + SolaceTransport.NAME + "]")
+				.choices(SolaceTransport.NAME, LoopbackTransport.NAME, SocketTransport.TCP, SocketTransport.UDP)
+				.setDefault(SolaceTransport.NAME);
+		transportArgGroup.addArgument("--loopback-nodes")
+				.help("Number of nodes to run with the loopback transport, named <node-name>-1 to -N.	[Default: 2]")
+				.type(Integer.class)
+				.setDefault(2);
+		transportArgGroup.addArgument("--sessions")
+				.help("Open N sessions to the " + SolaceTransport.NAME + " broker, named <node-name>-1 to -N, each with its own pinger. They start one at a time, and the latency across all of them is reported as each is added.	[Default: 1]")
+				.type(Integer.class)
+				.setDefault(1);
+		transportArgGroup.addArgument("--session-ramp")
+				.help("Seconds to run each number of --sessions for before adding the next session.	[Default: 30]")
+				.type(Integer.class)
+				.setDefault(30);
+		transportArgGroup.addArgument("--session-pongers")
+				.help("Have every one of the --sessions answer pings, not only the first. (Unless a --subscribe-topic is given, which they all use.)")
+				.type(boolean.class)
+				.setDefault(false);
+		transportArgGroup.addArgument("--baseline")
+				.help("Also ping-pong straight over " + SocketTransport.TCP + " or " + SocketTransport.UDP + " sockets with the same peers, and show in each summary how much more the median RTT over " + SolaceTransport.NAME + " is than over the sockets.")
+				.choices(SocketTransport.TCP, SocketTransport.UDP);
+		transportArgGroup.addArgument("--socket-listen")
+				.help("Host:Port to receive on with the " + SocketTransport.TCP + " and " + SocketTransport.UDP + " transports and --baseline.	[Default: 0.0.0.0:7979]")
+				.setDefault("0.0.0.0:7979");
+		transportArgGroup.addArgument("--socket-peers")
+				.help("Comma separated list of Host:Port of every node to send to with the " + SocketTransport.TCP + " and " + SocketTransport.UDP + " transports and --baseline. Include this node's own to answer its own pings too. (Required argument with those.)");
+		
 		ArgumentGroup solaceArgGroup = argSolaceParser.addArgumentGroup("Solace Arguments");
 		//Setup the arguments to expect, types and any default values
 		solaceArgGroup.addArgument("-c", "--connection-url")
-				.required(true)
-        		.help("Hostname:Port of the Solace Message Router");
+        		.help("Hostname:Port of the Solace Message Router. (Required argument with the " + SolaceTransport.NAME + " transport.)");
 		solaceArgGroup.addArgument("-v", "--vpn")
 				.help("VPN Name on the Solace Message Router")
 				.setDefault("default");
@@ -0,0 +1,89 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records latencies into one histogram while another is being read, in the style of the HdrHistogram Recorder.
+ *
+ * The recording thread never takes a lock or waits. When the reading thread asks for the latest interval it swaps
+ * in a fresh histogram and then waits (only itself) for any record() call still using the old one to finish.
+ * This is the writer-reader phaser technique from HdrHistogram.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class LatencyRecorder {
+
+	private volatile LatencyHistogram activeHistogram;
+	private LatencyHistogram inactiveHistogram;
+
+	// Writer entry count, and exit counts for each of the two phases. The sign of the entry count says which phase is current.
+	private final AtomicLong startEpoch = new AtomicLong(0);
+	private final AtomicLong evenEndEpoch = new AtomicLong(0);
+	private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+	public LatencyRecorder() {
+		this(LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_NS, LatencyHistogram.DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	public LatencyRecorder(long highestTrackableValue, int subBucketBits) {
+
+		activeHistogram = new LatencyHistogram(highestTrackableValue, subBucketBits);
+		inactiveHistogram = new LatencyHistogram(highestTrackableValue, subBucketBits);
+	}
+
+	/**
+	 * Record a value. Safe to call from one recording thread at a time, concurrently with getIntervalHistogram().
+	 */
+	public void record(long value) {
+		record(value, 1);
+	}
+
+	public void record(long value, long count) {
+
+		long criticalValue = startEpoch.getAndIncrement();
+		try {
+			activeHistogram.record(value, count);
+		} finally {
+			if (criticalValue < 0) {
+				oddEndEpoch.getAndIncrement();
+			} else {
+				evenEndEpoch.getAndIncrement();
+			}
+		}
+	}
+
+	/**
+	 * Swap histograms and get everything recorded since the previous call.
+	 * The returned histogram stays valid (and unchanged) until the next call to this method.
+	 */
+	public synchronized LatencyHistogram getIntervalHistogram() {
+
+		inactiveHistogram.reset();
+		LatencyHistogram intervalHistogram = activeHistogram;
+		activeHistogram = inactiveHistogram;
+		flipPhase();
+		inactiveHistogram = intervalHistogram;
+		return intervalHistogram;
+	}
+
+	private void flipPhase() {
+
+		boolean nextPhaseIsEven = (startEpoch.get() < 0);
+		long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+
+		if (nextPhaseIsEven) {
+			evenEndEpoch.set(initialStartValue);
+		} else {
+			oddEndEpoch.set(initialStartValue);
+		}
+
+		long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+
+		// Wait for any writer that started before the flip to leave
+		AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+		while (previousEndEpoch.get() != startValueAtFlip) {
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive long keys to values, using open addressing with linear probing.
+ *
+ * Lookups and updates don't box the key or create entry objects, so it can be used on the hot paths.
+ * The table only grows when it becomes more than half full. Not thread-safe.
+ *
+ * Iterate with capacity(), keyAt() and valueAt(), skipping the slots where valueAt() is null.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class LongHashMap<V> {
+
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int mask;
+
+	public LongHashMap() {
+		this(16);
+	}
+
+	public LongHashMap(int expectedSize) {
+
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+
+		int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return the previous value for the key, or null if there wasn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+
+		int index = slotFor(key);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = key;
+		values[index] = value;
+		size++;
+		if (size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or null if the key wasn't present
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+
+		V previous = (V) values[index];
+		values[index] = null;
+		size--;
+
+		// Shift back any following entries that would no longer be found past the now empty slot
+		int next = (index + 1) & mask;
+		while (values[next] != null) {
+			int home = slotFor(keys[next]);
+			if (((next - home) & mask) >= ((next - index) & mask)) {
+				keys[index] = keys[next];
+				values[index] = values[next];
+				values[next] = null;
+				index = next;
+			}
+			next = (next + 1) & mask;
+		}
+		return previous;
+	}
+
+	public void clear() {
+
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+	public long keyAt(int index) {
+		return keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index) {
+		return (V) values[index];
+	}
+
+	private int indexOf(long key) {
+
+		int index = slotFor(key);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slotFor(long key) {
+
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void resize(int newCapacity) {
+
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		keys = new long[newCapacity];
+		values = new Object[newCapacity];
+		mask = newCapacity - 1;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int index = slotFor(oldKeys[i]);
+				while (values[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
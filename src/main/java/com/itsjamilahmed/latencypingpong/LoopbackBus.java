@@ -0,0 +1,120 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The in-process message bus that LoopbackTransports connect to. Routes each message to every transport with a matching subscription.
+ *
+ * Working out which transports match a topic is done once and cached on the TransportTopic, until the subscriptions next change.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class LoopbackBus {
+
+	/**
+	 * The transports that a topic is delivered to, as of a given version of the subscriptions.
+	 */
+	private static final class Route {
+
+		private final int version;
+		private final LoopbackTransport[] transports;
+
+		Route(int version, LoopbackTransport[] transports) {
+			this.version = version;
+			this.transports = transports;
+		}
+	}
+
+	private final CopyOnWriteArrayList<LoopbackTransport> transports = new CopyOnWriteArrayList<LoopbackTransport>();
+	private volatile int version = 0;			// Bumped on any change to the transports or their subscriptions
+
+	void connect(LoopbackTransport transport) {
+
+		transports.addIfAbsent(transport);
+		subscriptionsChanged();
+	}
+
+	void disconnect(LoopbackTransport transport) {
+
+		transports.remove(transport);
+		subscriptionsChanged();
+	}
+
+	synchronized void subscriptionsChanged() {
+		version++;
+	}
+
+	/**
+	 * Deliver to every matching transport on the calling thread. Exactly one of text or data is set.
+	 */
+	void publish(TransportTopic topic, String text, byte[] data, int length) {
+
+		for (LoopbackTransport transport : route(topic)) {
+			transport.deliver(text, data, length);
+		}
+	}
+
+	private LoopbackTransport[] route(TransportTopic topic) {
+
+		int currentVersion = version;
+		Object handle = topic.getHandle();
+		if (handle instanceof Route && ((Route) handle).version == currentVersion) {
+			return ((Route) handle).transports;
+		}
+
+		List<LoopbackTransport> matched = new ArrayList<LoopbackTransport>();
+		for (LoopbackTransport transport : transports) {
+			if (transport.isSubscribed(topic.getName())) {
+				matched.add(transport);
+			}
+		}
+		Route route = new Route(currentVersion, matched.toArray(new LoopbackTransport[matched.size()]));
+		topic.setHandle(route);
+		return route.transports;
+	}
+
+	/**
+	 * Does the topic match the subscription? Levels are separated by '/'. As per Solace, a '*' on its own matches any one level,
+	 * a '*' at the end of a level matches any level starting with what comes before it, and a '>' as the last level matches one or more remaining levels.
+	 */
+	static boolean matches(String subscription, String topic) {
+
+		int s = 0;
+		int t = 0;
+		while (s < subscription.length()) {
+
+			int subscriptionLevelEnd = subscription.indexOf('/', s);
+			if (subscriptionLevelEnd < 0) {
+				subscriptionLevelEnd = subscription.length();
+			}
+			if (t > topic.length()) {
+				return false;									// Topic has run out of levels
+			}
+			int topicLevelEnd = topic.indexOf('/', t);
+			if (topicLevelEnd < 0) {
+				topicLevelEnd = topic.length();
+			}
+
+			int subscriptionLevelLength = subscriptionLevelEnd - s;
+			if (subscriptionLevelLength == 1 && subscription.charAt(s) == '>' && subscriptionLevelEnd == subscription.length()) {
+				return true;									// Matches everything left, as long as there is something
+			}
+			if (subscriptionLevelLength > 0 && subscription.charAt(subscriptionLevelEnd - 1) == '*') {
+				int prefixLength = subscriptionLevelLength - 1;
+				if (topicLevelEnd - t < prefixLength || !topic.regionMatches(t, subscription, s, prefixLength)) {
+					return false;
+				}
+			}
+			else if (subscriptionLevelLength != topicLevelEnd - t || !topic.regionMatches(t, subscription, s, subscriptionLevelLength)) {
+				return false;
+			}
+
+			s = subscriptionLevelEnd + 1;
+			t = topicLevelEnd + 1;
+		}
+		return t > topic.length();								// Both ran out of levels at the same time
+	}
+}
@@ -0,0 +1,165 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-process transport, for running pingers and pongers in one JVM with no broker or network at all.
+ * Shows the tool's own overhead: a round trip over this is everything except the messaging.
+ *
+ * Messages are handed straight to the listener of each subscribed transport on the sending thread, without copying.
+ * The listener still has to see one message at a time, so if it is already busy with another (on another thread,
+ * or further up the same thread's stack as it reflects a ping) the message is copied into an inbox instead, and
+ * whichever thread has the listener delivers it as soon as the current one returns. Nothing ever blocks waiting.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class LoopbackTransport implements Transport {
+
+	public static final String NAME = "loopback";
+
+	/**
+	 * A message that had to wait for the listener. Exactly one of text or data is set.
+	 */
+	private static final class Pending {
+
+		private final String text;
+		private final byte[] data;
+
+		Pending(String text, byte[] data) {
+			this.text = text;
+			this.data = data;
+		}
+	}
+
+	private final LoopbackBus bus;
+	private final CopyOnWriteArrayList<String> subscriptions = new CopyOnWriteArrayList<String>();
+	private final ReentrantLock listenerLock = new ReentrantLock();
+	private final ConcurrentLinkedQueue<Pending> inbox = new ConcurrentLinkedQueue<Pending>();
+	private volatile TransportListener listener;
+
+	public LoopbackTransport(LoopbackBus bus) {
+		this.bus = bus;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean connect() {
+
+		bus.connect(this);
+		return true;
+	}
+
+	@Override
+	public Transport createConnection() {
+		return new LoopbackTransport(bus);
+	}
+
+	@Override
+	public TransportTopic createTopic(String name) {
+		return new TransportTopic(name, null);
+	}
+
+	@Override
+	public TransportSender createSender() {
+
+		return new TransportSender() {
+			@Override
+			public void sendText(TransportTopic topic, String text) {
+				bus.publish(topic, text, null, 0);
+			}
+
+			@Override
+			public void sendBytes(TransportTopic topic, byte[] data, int length) {
+				bus.publish(topic, null, data, length);
+			}
+		};
+	}
+
+	@Override
+	public void subscribe(String topic) {
+
+		subscriptions.addIfAbsent(topic);
+		bus.subscriptionsChanged();
+	}
+
+	@Override
+	public void start(TransportListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void close() {
+
+		listener = null;
+		bus.disconnect(this);
+	}
+
+	boolean isSubscribed(String topic) {
+
+		for (String subscription : subscriptions) {
+			if (LoopbackBus.matches(subscription, topic)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called by the bus on the sending thread.
+	 */
+	void deliver(String text, byte[] data, int length) {
+
+		TransportListener currentListener = listener;
+		if (currentListener == null) {
+			return;													// Not started yet, so nothing is received
+		}
+
+		if (!listenerLock.isHeldByCurrentThread() && listenerLock.tryLock()) {
+			try {
+				dispatch(currentListener, text, data, length);		// Without any copying
+				drainInbox(currentListener);
+			} finally {
+				listenerLock.unlock();
+			}
+		}
+		else {
+			inbox.add(new Pending(text, text == null ? Arrays.copyOf(data, length) : null));
+		}
+
+		// Whoever has the listener might have finished just before the message above went in the inbox, so check it isn't left there.
+		// If the listener is still busy then it's for that thread to do.
+		while (!inbox.isEmpty() && !listenerLock.isHeldByCurrentThread() && listenerLock.tryLock()) {
+			try {
+				drainInbox(currentListener);
+			} finally {
+				listenerLock.unlock();
+			}
+		}
+	}
+
+	private void drainInbox(TransportListener currentListener) {
+
+		Pending pending;
+		while ((pending = inbox.poll()) != null) {
+			dispatch(currentListener, pending.text, pending.data, pending.data != null ? pending.data.length : 0);
+		}
+	}
+
+	private static void dispatch(TransportListener currentListener, String text, byte[] data, int length) {
+
+		if (text != null) {
+			currentListener.onText(text);
+		}
+		else {
+			currentListener.onBytes(data, length);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Gathers the rows that every node of a full mesh sends (see --mesh) into the N x N matrix of round-trip times, and
+ * publishes it: the cells that have changed every step, and the whole matrix every minute (see --mesh-aggregator).
+ *
+ * Runs on a connection of its own, so the row messages never queue behind pings and pongs. They are put into the
+ * MeshMatrix on that connection's callback thread, and published from this one's, taking turns on the matrix.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class MeshAggregator implements Runnable, TransportListener {
+
+	private Logger logger = Logger.getLogger(MeshAggregator.class);	// A log4j logger to handle all output
+
+	private static final int stepsPerSnapshot = 6;						// The whole matrix every minute, with the changes every step between
+	private static final long rowTtlNs = 3 * PairRollups.STEP_NS;		// A row missing for this long is emptied
+
+	private final Map<String,Object> parameters;
+	private final Transport transport;
+	private final MeshMatrix matrix;
+	private final StringBuilder json = new StringBuilder(4096);
+	private final DateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z");
+	private long rowsReceived = 0;
+	private long rowsDiscarded = 0;
+
+	public MeshAggregator(Map<String,Object> parameters, Transport transport) {
+
+		this.parameters = parameters;
+		this.transport = transport;
+		this.matrix = new MeshMatrix((int) parameters.get("mesh_delta_percent"));
+	}
+
+	@Override
+	public void onText(String text) {
+
+		synchronized (matrix) {
+			rowsDiscarded++;			// Rows are only ever sent as bytes
+		}
+	}
+
+	@Override
+	public void onBytes(byte[] data, int length) {
+
+		synchronized (matrix) {
+			if (matrix.updateRow(data, length, System.nanoTime()))
+			{
+				rowsReceived++;
+			}
+			else
+			{
+				rowsDiscarded++;
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+
+		String meshTopicPrefix = parameters.get("mesh_topic").toString();
+		TransportTopic snapshotTopic = transport.createTopic(meshTopicPrefix + "/Snapshot");
+		TransportTopic deltaTopic = transport.createTopic(meshTopicPrefix + "/Delta");
+		TransportSender sender;
+		try
+		{
+			sender = transport.createSender();
+			transport.subscribe(meshTopicPrefix + "/Rows/>");
+			transport.start(this);
+		}
+		catch (TransportException e)
+		{
+			logger.error("Could not start the mesh aggregator. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+			return;
+		}
+		logger.info("Aggregating the mesh from rows on topic: " + meshTopicPrefix + "/Rows/>, publishing snapshots on topic: "
+				+ snapshotTopic.getName() + " and deltas on topic: " + deltaTopic.getName());
+
+		long step = 0;
+		long nextStepNs = System.nanoTime() + PairRollups.STEP_NS;
+		while (true)
+		{
+			long waitNs = nextStepNs - System.nanoTime();
+			if (waitNs > 0)
+			{
+				LockSupport.parkNanos(waitNs);
+				continue;
+			}
+			nextStepNs += PairRollups.STEP_NS;
+			step++;
+
+			String message;
+			boolean snapshot = step % stepsPerSnapshot == 1;		// Starting with the first step, for anyone who has just subscribed
+			long received;
+			long discarded;
+			int nodes;
+			synchronized (matrix) {
+				matrix.expireRows(System.nanoTime(), rowTtlNs);
+				json.setLength(0);
+				if (snapshot)
+				{
+					if (matrix.size() > 0)
+					{
+						matrix.appendSnapshot(json);
+					}
+				}
+				else if (matrix.appendDelta(json) == 0)
+				{
+					json.setLength(0);
+				}
+				nodes = matrix.size();
+				received = rowsReceived;
+				discarded = rowsDiscarded;
+				rowsReceived = 0;
+				rowsDiscarded = 0;
+			}
+			if (json.length() == 0)
+			{
+				continue;				// Nothing has changed
+			}
+
+			// Put the time it was taken into the object, before its closing brace
+			json.setLength(json.length() - 1);
+			json.append(",\"timestamp\":\"").append(timestampFormat.format(new Date())).append("\"}");
+			message = json.toString();
+
+			try
+			{
+				sender.sendText(snapshot ? snapshotTopic : deltaTopic, message);
+			}
+			catch (TransportException e)
+			{
+				logger.error("A TransportException occurred. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+			}
+			logger.info("Published mesh " + (snapshot ? "snapshot" : "delta") + " of " + nodes + " nodes, from " + received + " rows"
+					+ (discarded > 0 ? " (" + discarded + " discarded)" : "") + " since the last.");
+			logger.debug("Mesh " + (snapshot ? "snapshot" : "delta") + ": " + message);
+		}
+	}
+}
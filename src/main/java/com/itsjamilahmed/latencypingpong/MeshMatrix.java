@@ -0,0 +1,330 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+import org.json.simple.JSONValue;
+
+/**
+ * The round-trip times between every pair of nodes in a full mesh (see --mesh), as an N x N matrix, one row per pinger.
+ *
+ * Each mesh node sends its own row every step as a binary row message: its node group and name slots, then a cell per
+ * ponger with the ponger's slots and the p50, p99 and count of the round-trip times to it over the step. The aggregator
+ * puts each row into place. Every cell lives in flat primitive arrays, row-major, indexed by the order each node was first
+ * seen in, so there is no object per cell, and nothing is allocated for a row unless it brings a node never seen before.
+ * The arrays double in size when the nodes outgrow them.
+ *
+ * A row replaces what was there, so a ponger missing from it is unknown until it is heard from again.
+ * A row not sent again within the TTL is emptied the same way, so a node that goes away drops out of the matrix.
+ *
+ * Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class MeshMatrix {
+
+	static final byte ROW_MAGIC = (byte) 0xA8;
+	static final byte ROW_VERSION = 1;
+
+	static final int ROW_OFFSET_MAGIC = 0;
+	static final int ROW_OFFSET_VERSION = 1;
+	static final int ROW_OFFSET_CELLS = 4;
+	static final int ROW_OFFSET_GROUP = 8;
+	static final int ROW_OFFSET_NODE = ROW_OFFSET_GROUP + NodeNameInterner.SLOT_LENGTH;
+	static final int ROW_HEADER_LENGTH = ROW_OFFSET_NODE + NodeNameInterner.SLOT_LENGTH;
+
+	static final int CELL_OFFSET_GROUP = 0;
+	static final int CELL_OFFSET_NODE = CELL_OFFSET_GROUP + NodeNameInterner.SLOT_LENGTH;
+	static final int CELL_OFFSET_P50_NS = CELL_OFFSET_NODE + NodeNameInterner.SLOT_LENGTH;
+	static final int CELL_OFFSET_P99_NS = CELL_OFFSET_P50_NS + 8;
+	static final int CELL_OFFSET_COUNT = CELL_OFFSET_P99_NS + 8;
+	static final int CELL_LENGTH = CELL_OFFSET_COUNT + 8;
+
+	private final double deltaFraction;									// How far a cell's p50 must move to be in a delta
+
+	private int size = 0;												// Nodes so far
+	private int capacity = 0;
+	private final LongHashMap<Integer> indexes = new LongHashMap<Integer>();	// Of each node, keyed by its group and name ids
+	private int[] nodeGroupIds = new int[0];
+	private int[] nodeIds = new int[0];
+	private long[] rowUpdatedNs = new long[0];							// When each row was last sent, or -1 if never (or expired)
+
+	// The cells, row-major. -1 where unknown
+	private long[] p50Ns = new long[0];
+	private long[] p99Ns = new long[0];
+	private long[] counts = new long[0];
+	private long[] publishedP50Ns = new long[0];						// As of the last delta or snapshot
+
+	/**
+	 * @param deltaPercent How far a cell's p50 must move, in percent of what was last published, to be in the next delta
+	 */
+	public MeshMatrix(int deltaPercent) {
+		this.deltaFraction = deltaPercent / 100.0;
+	}
+
+	/**
+	 * The length of a row message with the given number of cells, for sizing the buffer to encode it into.
+	 */
+	static int rowLength(int cells) {
+		return ROW_HEADER_LENGTH + cells * CELL_LENGTH;
+	}
+
+	static void putRowHeader(byte[] buffer, int nodeGroupId, int nodeId, int cells) {
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		buffer[ROW_OFFSET_MAGIC] = ROW_MAGIC;
+		buffer[ROW_OFFSET_VERSION] = ROW_VERSION;
+		BinaryPingPongCodec.putInt(buffer, ROW_OFFSET_CELLS, cells);
+		System.arraycopy(interner.getSlot(nodeGroupId), 0, buffer, ROW_OFFSET_GROUP, NodeNameInterner.SLOT_LENGTH);
+		System.arraycopy(interner.getSlot(nodeId), 0, buffer, ROW_OFFSET_NODE, NodeNameInterner.SLOT_LENGTH);
+	}
+
+	static void putCell(byte[] buffer, int cell, int nodeGroupId, int nodeId, long p50Ns, long p99Ns, long count) {
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		int offset = ROW_HEADER_LENGTH + cell * CELL_LENGTH;
+		System.arraycopy(interner.getSlot(nodeGroupId), 0, buffer, offset + CELL_OFFSET_GROUP, NodeNameInterner.SLOT_LENGTH);
+		System.arraycopy(interner.getSlot(nodeId), 0, buffer, offset + CELL_OFFSET_NODE, NodeNameInterner.SLOT_LENGTH);
+		BinaryPingPongCodec.putLong(buffer, offset + CELL_OFFSET_P50_NS, p50Ns);
+		BinaryPingPongCodec.putLong(buffer, offset + CELL_OFFSET_P99_NS, p99Ns);
+		BinaryPingPongCodec.putLong(buffer, offset + CELL_OFFSET_COUNT, count);
+	}
+
+	/**
+	 * Put a row message into place.
+	 *
+	 * @return false if it isn't a row message, or is corrupt
+	 */
+	public boolean updateRow(byte[] data, int length, long nowNs) {
+
+		if (length < ROW_HEADER_LENGTH || data[ROW_OFFSET_MAGIC] != ROW_MAGIC || data[ROW_OFFSET_VERSION] != ROW_VERSION)
+		{
+			return false;
+		}
+		int cells = BinaryPingPongCodec.getInt(data, ROW_OFFSET_CELLS);
+		if (cells < 0 || length < rowLength(cells))
+		{
+			return false;
+		}
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		int row = this.indexOf(interner.intern(data, ROW_OFFSET_GROUP), interner.intern(data, ROW_OFFSET_NODE));
+		if (row == -1)
+		{
+			return false;
+		}
+
+		int rowStart = row * capacity;
+		Arrays.fill(p50Ns, rowStart, rowStart + size, -1);
+		Arrays.fill(p99Ns, rowStart, rowStart + size, -1);
+		Arrays.fill(counts, rowStart, rowStart + size, -1);
+		for (int cell = 0; cell < cells; cell++)
+		{
+			int offset = ROW_HEADER_LENGTH + cell * CELL_LENGTH;
+			int column = this.indexOf(interner.intern(data, offset + CELL_OFFSET_GROUP), interner.intern(data, offset + CELL_OFFSET_NODE));
+			if (column == -1)
+			{
+				continue;
+			}
+			rowStart = row * capacity;				// May have grown
+			p50Ns[rowStart + column] = BinaryPingPongCodec.getLong(data, offset + CELL_OFFSET_P50_NS);
+			p99Ns[rowStart + column] = BinaryPingPongCodec.getLong(data, offset + CELL_OFFSET_P99_NS);
+			counts[rowStart + column] = BinaryPingPongCodec.getLong(data, offset + CELL_OFFSET_COUNT);
+		}
+		rowUpdatedNs[row] = nowNs;
+		return true;
+	}
+
+	/**
+	 * Empty the rows that haven't been sent for longer than the TTL.
+	 */
+	public void expireRows(long nowNs, long ttlNs) {
+
+		for (int row = 0; row < size; row++)
+		{
+			if (rowUpdatedNs[row] != -1 && nowNs - rowUpdatedNs[row] > ttlNs)
+			{
+				int rowStart = row * capacity;
+				Arrays.fill(p50Ns, rowStart, rowStart + size, -1);
+				Arrays.fill(p99Ns, rowStart, rowStart + size, -1);
+				Arrays.fill(counts, rowStart, rowStart + size, -1);
+				rowUpdatedNs[row] = -1;
+			}
+		}
+	}
+
+	private int indexOf(int nodeGroupId, int nodeId) {
+
+		if (nodeGroupId < 0 || nodeId < 0)
+		{
+			return -1;
+		}
+		long key = ((long) nodeGroupId << 32) | nodeId;
+		Integer index = indexes.get(key);
+		if (index != null)
+		{
+			return index;
+		}
+
+		if (size == capacity)
+		{
+			this.grow(Math.max(8, capacity * 2));
+		}
+		nodeGroupIds[size] = nodeGroupId;
+		nodeIds[size] = nodeId;
+		rowUpdatedNs[size] = -1;
+		indexes.put(key, size);
+		return size++;
+	}
+
+	private void grow(int newCapacity) {
+
+		p50Ns = this.grow(p50Ns, newCapacity);
+		p99Ns = this.grow(p99Ns, newCapacity);
+		counts = this.grow(counts, newCapacity);
+		publishedP50Ns = this.grow(publishedP50Ns, newCapacity);
+		nodeGroupIds = Arrays.copyOf(nodeGroupIds, newCapacity);
+		nodeIds = Arrays.copyOf(nodeIds, newCapacity);
+		rowUpdatedNs = Arrays.copyOf(rowUpdatedNs, newCapacity);
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Copy the cells into a matrix with more room, each row to its new place, and the rest unknown.
+	 */
+	private long[] grow(long[] cells, int newCapacity) {
+
+		long[] grown = new long[newCapacity * newCapacity];
+		Arrays.fill(grown, -1);
+		for (int row = 0; row < size; row++)
+		{
+			System.arraycopy(cells, row * capacity, grown, row * newCapacity, size);
+		}
+		return grown;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Write the whole matrix as JSON: the nodes as group:name, then the p50s, p99s and counts, each an array of rows
+	 * in the order of the nodes, with null where unknown. What is written counts as published for the deltas.
+	 */
+	public void appendSnapshot(StringBuilder json) {
+
+		json.append("{\"nodes\":[");
+		for (int node = 0; node < size; node++)
+		{
+			this.appendNodeName(json.append(node > 0 ? "," : ""), node);
+		}
+		json.append("],\"p50\":");
+		this.appendCells(json, p50Ns, true);
+		json.append(",\"p99\":");
+		this.appendCells(json, p99Ns, true);
+		json.append(",\"count\":");
+		this.appendCells(json, counts, false);
+		json.append('}');
+
+		for (int row = 0; row < size; row++)
+		{
+			System.arraycopy(p50Ns, row * capacity, publishedP50Ns, row * capacity, size);
+		}
+	}
+
+	/**
+	 * Write the cells that have changed since the last delta or snapshot as JSON: those that have become known or unknown,
+	 * or whose p50 has moved by more than the delta percent. Each with its from and to nodes, and its p50, p99 and count.
+	 *
+	 * @return how many cells were written
+	 */
+	public int appendDelta(StringBuilder json) {
+
+		int changed = 0;
+		json.append("{\"cells\":[");
+		for (int row = 0; row < size; row++)
+		{
+			for (int column = 0; column < size; column++)
+			{
+				int cell = row * capacity + column;
+				long published = publishedP50Ns[cell];
+				long current = p50Ns[cell];
+				if (published == current || (published != -1 && current != -1 && Math.abs(current - published) <= published * deltaFraction))
+				{
+					continue;
+				}
+
+				json.append(changed++ > 0 ? "," : "").append("{\"from\":");
+				this.appendNodeName(json, row);
+				json.append(",\"to\":");
+				this.appendNodeName(json, column);
+				json.append(",\"p50\":");
+				this.appendMillis(json, p50Ns[cell]);
+				json.append(",\"p99\":");
+				this.appendMillis(json, p99Ns[cell]);
+				json.append(",\"count\":").append(counts[cell] == -1 ? "null" : Long.toString(counts[cell])).append('}');
+				publishedP50Ns[cell] = current;
+			}
+		}
+		json.append("]}");
+		return changed;
+	}
+
+	private void appendCells(StringBuilder json, long[] cells, boolean millis) {
+
+		json.append('[');
+		for (int row = 0; row < size; row++)
+		{
+			json.append(row > 0 ? ",[" : "[");
+			for (int column = 0; column < size; column++)
+			{
+				long value = cells[row * capacity + column];
+				if (column > 0)
+				{
+					json.append(',');
+				}
+				if (millis)
+				{
+					this.appendMillis(json, value);
+				}
+				else
+				{
+					json.append(value == -1 ? "null" : Long.toString(value));
+				}
+			}
+			json.append(']');
+		}
+		json.append(']');
+	}
+
+	private void appendNodeName(StringBuilder json, int node) {
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		json.append('"').append(JSONValue.escape(interner.getName(nodeGroupIds[node]))).append(':')
+				.append(JSONValue.escape(interner.getName(nodeIds[node]))).append('"');
+	}
+
+	/**
+	 * To the same 3 decimal places as the individual rtt results, without making a String of it.
+	 */
+	private void appendMillis(StringBuilder json, long nanos) {
+
+		if (nanos == -1)
+		{
+			json.append("null");
+			return;
+		}
+		long micros = (nanos + 500) / 1000;
+		json.append(micros / 1000).append('.');
+		long fraction = micros % 1000;
+		if (fraction < 100)
+		{
+			json.append('0');
+		}
+		if (fraction < 10)
+		{
+			json.append('0');
+		}
+		json.append(fraction);
+	}
+}
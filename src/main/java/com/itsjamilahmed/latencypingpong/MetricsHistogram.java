@@ -0,0 +1,65 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies counted into a fixed set of buckets since the start of the run, for a Prometheus histogram (see --metrics-port).
+ *
+ * Unlike a LatencyHistogram, which is swapped out every summary, this only ever counts up, and another thread can read
+ * it at any time without a lock: each count is written with a lazySet by the one recording thread, and read as it is.
+ * A scrape can land part-way through a record(), so may see the bucket count without the sum. The next scrape catches up.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class MetricsHistogram {
+
+	// Upper bounds of the buckets in nanoseconds, from 50us to 5s. Anything slower only goes in the +Inf bucket.
+	static final long[] BUCKET_BOUNDS_NS = {
+			50L * 1000, 100L * 1000, 250L * 1000, 500L * 1000,
+			1L * 1000 * 1000, 2500L * 1000, 5L * 1000 * 1000, 10L * 1000 * 1000, 25L * 1000 * 1000, 50L * 1000 * 1000,
+			100L * 1000 * 1000, 250L * 1000 * 1000, 500L * 1000 * 1000,
+			1000L * 1000 * 1000, 2500L * 1000 * 1000, 5000L * 1000 * 1000 };
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_NS.length + 1);	// Per bucket, not cumulative. The last is +Inf
+	private final AtomicLong sumNs = new AtomicLong(0);
+
+	/**
+	 * Count a value. Only ever from the one recording thread.
+	 */
+	public void record(long valueNs) {
+
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_NS.length && valueNs > BUCKET_BOUNDS_NS[bucket]) {
+			bucket++;
+		}
+		counts.lazySet(bucket, counts.get(bucket) + 1);
+		sumNs.lazySet(sumNs.get() + valueNs);
+	}
+
+	/**
+	 * Copy out the counts, cumulative as Prometheus has them, so the last is the total count.
+	 *
+	 * @param cumulativeCounts At least getBucketCount() long
+	 */
+	public void snapshot(long[] cumulativeCounts) {
+
+		long total = 0;
+		for (int bucket = 0; bucket < counts.length(); bucket++) {
+			total += counts.get(bucket);
+			cumulativeCounts[bucket] = total;
+		}
+	}
+
+	/**
+	 * Including the +Inf bucket.
+	 */
+	public static int getBucketCount() {
+		return BUCKET_BOUNDS_NS.length + 1;
+	}
+
+	public long getSumNs() {
+		return sumNs.get();
+	}
+}
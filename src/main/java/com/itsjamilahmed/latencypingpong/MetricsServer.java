@@ -0,0 +1,206 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the counters, gauges and histograms of everything running in this program over HTTP, in the Prometheus text format (see --metrics-port).
+ *
+ * Each MetricsSource added is asked for its metrics on every scrape, from the server's own thread. Sources only read values
+ * their threads keep in atomics or volatiles for the purpose, so a scrape never takes a lock that the ping, reflect or
+ * results threads could be waiting on, and costs them nothing when nobody is scraping.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class MetricsServer {
+
+	private Logger logger = Logger.getLogger(MetricsServer.class);	// A log4j logger to handle all output
+
+	static final String PATH = "/metrics";
+	static final String PREFIX = "latencypingpong_";
+
+	/**
+	 * Something with metrics to serve.
+	 */
+	public interface MetricsSource {
+
+		/**
+		 * Called on the server's thread for every scrape. Must not block, or wait on any other thread.
+		 */
+		void writeMetrics(Writer writer);
+	}
+
+	private final int port;
+	private final CopyOnWriteArrayList<MetricsSource> sources = new CopyOnWriteArrayList<MetricsSource>();
+	private HttpServer server;
+
+	public MetricsServer(int port) {
+		this.port = port;
+	}
+
+	public void addSource(MetricsSource source) {
+		sources.add(source);
+	}
+
+	/**
+	 * Start listening, on all interfaces.
+	 *
+	 * @return false if it couldn't
+	 */
+	public boolean start() {
+
+		try {
+			server = HttpServer.create(new InetSocketAddress(port), 0);
+		} catch (IOException e) {
+			logger.error("Could not serve metrics on port " + port + ". Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+			return false;
+		}
+
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+
+				byte[] body;
+				try {
+					body = scrape().getBytes(StandardCharsets.UTF_8);
+				} catch (Exception e) {
+					logger.error("An exception occurred while gathering metrics. Exception message -> " + e.getMessage());
+					logger.debug("Stack Trace: ",e);
+					exchange.sendResponseHeaders(500, -1);
+					exchange.close();
+					return;
+				}
+
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+		});
+		server.setExecutor(null);			// Scrapes are handled one at a time on the server's own thread
+		server.start();
+		logger.info("Serving metrics on http://0.0.0.0:" + port + PATH);
+		return true;
+	}
+
+	/**
+	 * Everything from every source, as the body of a scrape.
+	 */
+	String scrape() {
+
+		Writer writer = new Writer();
+		for (MetricsSource source : sources) {
+			source.writeMetrics(writer);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Builds up the text format. The samples of each metric are gathered together under its HELP and TYPE lines,
+	 * whichever sources they came from and in whatever order, as Prometheus requires.
+	 *
+	 * Labels are given as name, value, name, value...
+	 */
+	public static class Writer {
+
+		private final Map<String, StringBuilder> families = new LinkedHashMap<String, StringBuilder>();
+
+		public void counter(String name, String help, long value, String... labels) {
+			this.sample(family(name + "_total", "counter", help), name + "_total", labels, null, null, Long.toString(value));
+		}
+
+		public void gauge(String name, String help, long value, String... labels) {
+			this.sample(family(name, "gauge", help), name, labels, null, null, Long.toString(value));
+		}
+
+		/**
+		 * A histogram of latencies, in seconds as is the Prometheus convention.
+		 */
+		public void histogram(String name, String help, MetricsHistogram histogram, String... labels) {
+
+			long[] cumulativeCounts = new long[MetricsHistogram.getBucketCount()];
+			histogram.snapshot(cumulativeCounts);
+			long sumNs = histogram.getSumNs();
+
+			StringBuilder family = family(name, "histogram", help);
+			for (int bucket = 0; bucket < cumulativeCounts.length; bucket++) {
+				String upperBound = bucket < MetricsHistogram.BUCKET_BOUNDS_NS.length ?
+						Double.toString(MetricsHistogram.BUCKET_BOUNDS_NS[bucket] / 1e9) : "+Inf";
+				this.sample(family, name + "_bucket", labels, "le", upperBound, Long.toString(cumulativeCounts[bucket]));
+			}
+			this.sample(family, name + "_sum", labels, null, null, Double.toString(sumNs / 1e9));
+			this.sample(family, name + "_count", labels, null, null, Long.toString(cumulativeCounts[cumulativeCounts.length - 1]));
+		}
+
+		private StringBuilder family(String name, String type, String help) {
+
+			StringBuilder family = families.get(name);
+			if (family == null) {
+				family = new StringBuilder();
+				family.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+				family.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+				families.put(name, family);
+			}
+			return family;
+		}
+
+		private void sample(StringBuilder family, String name, String[] labels, String extraLabel, String extraValue, String value) {
+
+			family.append(PREFIX).append(name);
+			if (labels.length > 0 || extraLabel != null) {
+				family.append('{');
+				for (int i = 0; i + 1 < labels.length; i += 2) {
+					appendLabel(family.append(i > 0 ? "," : ""), labels[i], labels[i + 1]);
+				}
+				if (extraLabel != null) {
+					appendLabel(family.append(labels.length > 0 ? "," : ""), extraLabel, extraValue);
+				}
+				family.append('}');
+			}
+			family.append(' ').append(value).append('\n');
+		}
+
+		private static void appendLabel(StringBuilder family, String label, String value) {
+
+			family.append(label).append("=\"");
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' || c == '"') {
+					family.append('\\').append(c);
+				} else if (c == '\n') {
+					family.append("\\n");
+				} else {
+					family.append(c);
+				}
+			}
+			family.append('"');
+		}
+
+		@Override
+		public String toString() {
+
+			StringBuilder text = new StringBuilder();
+			for (StringBuilder family : families.values()) {
+				text.append(family);
+			}
+			return text.toString();
+		}
+	}
+}
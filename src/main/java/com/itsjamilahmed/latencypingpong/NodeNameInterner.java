@@ -0,0 +1,206 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class hands out small integer ids for node and node-group names.
+ *
+ * The binary wire format carries each name in a fixed size slot (a length byte followed by up to 31 bytes of UTF-8)
+ * so that a receiver can resolve the slot straight back to a previously seen String without allocating a new one.
+ *
+ * Lookups are lock-free. New names are rare (a node joining the mesh), so they are added under a lock
+ * by copying the table and publishing the new copy.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public final class NodeNameInterner {
+
+	public static final int SLOT_LENGTH = 32;					// Length byte plus the name bytes
+	public static final int MAX_NAME_BYTES = SLOT_LENGTH - 1;	// Anything longer than this gets truncated in the slot
+
+	private static final NodeNameInterner instance = new NodeNameInterner();
+
+	// Everything a reader needs is held in one immutable snapshot so it can be swapped atomically
+	private static final class Table {
+		final int[] index;				// Open addressing table of (id + 1), zero means empty
+		final byte[][] slots;			// Slot bytes per id
+		final String[] names;			// Name per id
+		final int size;
+
+		Table(int indexCapacity, int idCapacity, int size) {
+			this.index = new int[indexCapacity];
+			this.slots = new byte[idCapacity][];
+			this.names = new String[idCapacity];
+			this.size = size;
+		}
+	}
+
+	private volatile Table table = new Table(64, 16, 0);
+
+	private NodeNameInterner() {
+	}
+
+	public static NodeNameInterner onlyInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get the id for a name, registering it if this is the first time it has been seen.
+	 */
+	public int intern(String name) {
+
+		byte[] slot = toSlot(name);
+		return intern(slot, 0, name);
+	}
+
+	/**
+	 * Get the id for a name held in a slot at the given offset of a buffer.
+	 * Will not allocate unless the name has never been seen before. Returns -1 if the slot is corrupt.
+	 */
+	public int intern(byte[] buffer, int offset) {
+
+		if ((buffer[offset] & 0xFF) > MAX_NAME_BYTES) {
+			return -1;
+		}
+		return intern(buffer, offset, null);
+	}
+
+	public String getName(int id) {
+
+		Table current = table;
+		return (id >= 0 && id < current.size) ? current.names[id] : "";
+	}
+
+	/**
+	 * The encoded slot for the id, to be copied as-is into outgoing messages. Callers must not modify it.
+	 */
+	public byte[] getSlot(int id) {
+
+		return table.slots[id];
+	}
+
+	public int size() {
+		return table.size;
+	}
+
+	/**
+	 * Does the name fit into a slot without being truncated?
+	 */
+	public static boolean fitsInSlot(String name) {
+		return name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+	}
+
+	private int intern(byte[] buffer, int offset, String name) {
+
+		int id = find(table, buffer, offset);
+		if (id >= 0) {
+			return id;
+		}
+
+		synchronized (this) {
+
+			// Check again now holding the lock, another thread may have got here first
+			Table current = table;
+			id = find(current, buffer, offset);
+			if (id >= 0) {
+				return id;
+			}
+
+			byte[] slot = new byte[SLOT_LENGTH];
+			System.arraycopy(buffer, offset, slot, 0, SLOT_LENGTH);
+			if (name == null) {
+				name = new String(slot, 1, slot[0] & 0xFF, StandardCharsets.UTF_8);
+			}
+
+			// Grow (and rehash) if the index would become more than half full
+			int newSize = current.size + 1;
+			int indexCapacity = current.index.length;
+			while (newSize * 2 > indexCapacity) {
+				indexCapacity *= 2;
+			}
+			int idCapacity = Math.max(current.slots.length, Integer.highestOneBit(newSize) * 2);
+
+			Table updated = new Table(indexCapacity, idCapacity, newSize);
+			System.arraycopy(current.slots, 0, updated.slots, 0, current.size);
+			System.arraycopy(current.names, 0, updated.names, 0, current.size);
+			updated.slots[current.size] = slot;
+			updated.names[current.size] = name;
+			for (int i = 0; i < newSize; i++) {
+				insertIndex(updated, i);
+			}
+
+			table = updated;
+			return current.size;
+		}
+	}
+
+	private static int find(Table current, byte[] buffer, int offset) {
+
+		int mask = current.index.length - 1;
+		int position = hash(buffer, offset) & mask;
+
+		while (true) {
+			int entry = current.index[position];
+			if (entry == 0) {
+				return -1;
+			}
+			if (slotEquals(current.slots[entry - 1], buffer, offset)) {
+				return entry - 1;
+			}
+			position = (position + 1) & mask;
+		}
+	}
+
+	private static void insertIndex(Table updated, int id) {
+
+		int mask = updated.index.length - 1;
+		int position = hash(updated.slots[id], 0) & mask;
+		while (updated.index[position] != 0) {
+			position = (position + 1) & mask;
+		}
+		updated.index[position] = id + 1;
+	}
+
+	private static boolean slotEquals(byte[] slot, byte[] buffer, int offset) {
+
+		int length = (slot[0] & 0xFF) + 1;
+		for (int i = 0; i < length; i++) {
+			if (slot[i] != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] buffer, int offset) {
+
+		// FNV-1a over the length byte and the name bytes
+		int length = Math.min(buffer[offset] & 0xFF, MAX_NAME_BYTES) + 1;
+		int h = 0x811C9DC5;
+		for (int i = 0; i < length; i++) {
+			h ^= buffer[offset + i];
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	static byte[] toSlot(String name) {
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int length = nameBytes.length;
+
+		if (length > MAX_NAME_BYTES) {
+			// Truncate, but don't leave half of a multi-byte character at the end
+			length = MAX_NAME_BYTES;
+			while (length > 0 && (nameBytes[length] & 0xC0) == 0x80) {
+				length--;
+			}
+		}
+
+		byte[] slot = new byte[SLOT_LENGTH];
+		slot[0] = (byte) length;
+		System.arraycopy(nameBytes, 0, slot, 1, length);
+		return slot;
+	}
+}
@@ -0,0 +1,36 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Packs the interned ids of a (pinger, ponger group, ponger) pair into one long, so per-pair state
+ * can be kept in a LongHashMap without creating key objects.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+final class NodePair {
+
+	private static final int ID_BITS = 21;
+	private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+	private NodePair() {
+	}
+
+	static long key(int pingerNodeId, int pongerNodeGroupId, int pongerNodeId) {
+
+		return (((long) pingerNodeId & ID_MASK) << (2 * ID_BITS))
+				| (((long) pongerNodeGroupId & ID_MASK) << ID_BITS)
+				| ((long) pongerNodeId & ID_MASK);
+	}
+
+	static int pingerNodeId(long key) {
+		return (int) ((key >>> (2 * ID_BITS)) & ID_MASK);
+	}
+
+	static int pongerNodeGroupId(long key) {
+		return (int) ((key >>> ID_BITS) & ID_MASK);
+	}
+
+	static int pongerNodeId(long key) {
+		return (int) (key & ID_MASK);
+	}
+}
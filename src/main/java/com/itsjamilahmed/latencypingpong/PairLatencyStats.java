@@ -0,0 +1,254 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+/**
+ * Everything the results processing keeps about one (pinger, ponger group, ponger) pair.
+ *
+ * Memory is fixed when the pair is first seen, nothing is allocated as results are recorded. (Other than the first time each payload size is seen.)
+ *
+ * Two distributions are kept. The uncorrected one is each ping's own round-trip time.
+ * The corrected one allows for coordinated omission: it is measured from when each ping was scheduled to be sent.
+ * The senders never skip a slot of their schedule, they catch up on any they fell behind with, so a stalled sender or
+ * connection already shows in how late those pings were against when they were due. Pings with no pong are counted as
+ * lost by the SequenceTracker, not recorded as round-trip times.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PairLatencyStats {
+
+	private final long pairKey;
+	private final String pongerNodeName;
+	private final String pongerNodeGroupName;
+	private final LatencyRecorder rttRecorder = new LatencyRecorder();	// Round-trip times in nanoseconds, swapped out every summary
+	private final LatencyRecorder correctedRttRecorder = new LatencyRecorder();	// As above, corrected for coordinated omission
+	private final LatencyRecorder networkRttRecorder = new LatencyRecorder();	// As above, less the time the ponger held each ping (if it said)
+	private final LatencyRecorder dwellRecorder = new LatencyRecorder();		// The time the ponger held each ping, from arrival to its pong going back
+	private final SequenceTracker sequenceTracker = new SequenceTracker();	// Loss, reordering and duplicates, counted per summary
+	private int[] payloadSizes = new int[0];							// Each size that padded pings have been seen at, in the order first seen
+	private LatencyRecorder[] payloadSizeRttRecorders = new LatencyRecorder[0];	// Round-trip times of the pings of each of those sizes
+	private final ClockOffsetEstimator clockOffset = new ClockOffsetEstimator();	// The ponger's clock against this node's, to split round trips into their legs
+	private final MetricsHistogram rttMetrics = new MetricsHistogram();		// Round-trip times since the start, for metrics scrapes
+	private PairRollups rollups = null;								// Round-trip times over the last minute, 5 minutes and hour, if running with --rollups
+	private RegressionDetector regressionDetector = null;				// For the alerts, if running with --alerts
+	private RollingWindow routeWindow = null;							// Round-trip times over the last minute, to choose routes by if running with --routes
+	private RollingWindow meshWindow = null;							// Round-trip times over the last step, for this node's row of the matrix if running with --mesh
+
+	private static final int maxPayloadSizes = 64;						// More than any sweep should need. Sizes beyond this go only in the overall distribution
+
+	// The distributions kept, for getIntervalHistogram()
+	public static final int RTT = 0;
+	public static final int CORRECTED_RTT = 1;
+	public static final int NETWORK_RTT = 2;
+	public static final int DWELL = 3;
+
+	public PairLatencyStats(long pairKey) {
+
+		this.pairKey = pairKey;
+		this.pongerNodeName = NodeNameInterner.onlyInstance().getName(NodePair.pongerNodeId(pairKey));
+		this.pongerNodeGroupName = NodeNameInterner.onlyInstance().getName(NodePair.pongerNodeGroupId(pairKey));
+	}
+
+	public long getPairKey() {
+		return pairKey;
+	}
+
+	public String getPongerNodeName() {
+		return pongerNodeName;
+	}
+
+	public String getPongerNodeGroupName() {
+		return pongerNodeGroupName;
+	}
+
+	/**
+	 * @param payloadSize What the ping was padded to, or 0 if it wasn't. Padded pings are also recorded separately per size.
+	 */
+	public void recordRtt(long rttNs, int payloadSize) {
+
+		rttRecorder.record(rttNs);
+		rttMetrics.record(rttNs);
+		if (rollups != null)
+		{
+			rollups.recordRtt(rttNs);
+		}
+		if (routeWindow != null)
+		{
+			routeWindow.record(rttNs);
+		}
+		if (meshWindow != null)
+		{
+			meshWindow.record(rttNs);
+		}
+
+		if (payloadSize > 0)
+		{
+			LatencyRecorder payloadSizeRttRecorder = this.getPayloadSizeRttRecorder(payloadSize);
+			if (payloadSizeRttRecorder != null)
+			{
+				payloadSizeRttRecorder.record(rttNs);
+			}
+		}
+	}
+
+	private LatencyRecorder getPayloadSizeRttRecorder(int payloadSize) {
+
+		for (int i = 0; i < payloadSizes.length; i++)
+		{
+			if (payloadSizes[i] == payloadSize)
+			{
+				return payloadSizeRttRecorders[i];
+			}
+		}
+		if (payloadSizes.length == maxPayloadSizes)
+		{
+			return null;
+		}
+
+		payloadSizes = Arrays.copyOf(payloadSizes, payloadSizes.length + 1);
+		payloadSizeRttRecorders = Arrays.copyOf(payloadSizeRttRecorders, payloadSizeRttRecorders.length + 1);
+		payloadSizes[payloadSizes.length - 1] = payloadSize;
+		payloadSizeRttRecorders[payloadSizeRttRecorders.length - 1] = new LatencyRecorder();
+		return payloadSizeRttRecorders[payloadSizeRttRecorders.length - 1];
+	}
+
+	/**
+	 * Record how long the ponger held a ping, and so its round-trip time with that taken off: the time spent in the network and broker alone.
+	 */
+	public void recordDwell(long dwellNs, long rttNs) {
+
+		dwellRecorder.record(dwellNs);
+		networkRttRecorder.record(rttNs - dwellNs);
+	}
+
+	/**
+	 * Record the corrected round-trip time of a ping.
+	 *
+	 * @param intendedSendNs When the ping was scheduled to be sent
+	 * @param receiveNs When its pong arrived back
+	 */
+	public void recordCorrectedRtt(long intendedSendNs, long receiveNs) {
+		correctedRttRecorder.record(receiveNs - intendedSendNs);
+	}
+
+	/**
+	 * Note the sequence number of a pong from this pair.
+	 *
+	 * @return one of the SequenceTracker result values
+	 */
+	public int recordSequence(long sequence) {
+		return sequenceTracker.received(sequence);
+	}
+
+	public SequenceTracker getSequenceTracker() {
+		return sequenceTracker;
+	}
+
+	public ClockOffsetEstimator getClockOffset() {
+		return clockOffset;
+	}
+
+	/**
+	 * Every round-trip time since the pair was first seen, safe to read from any thread.
+	 */
+	public MetricsHistogram getRttMetrics() {
+		return rttMetrics;
+	}
+
+	/**
+	 * Start keeping the rolling windows of round-trip times. Only before any are recorded.
+	 */
+	public void enableRollups() {
+		this.rollups = new PairRollups();
+	}
+
+	/**
+	 * @return null unless enableRollups() was called
+	 */
+	public PairRollups getRollups() {
+		return rollups;
+	}
+
+	/**
+	 * Start watching for the round-trip time or loss of the pair getting worse. Only before any are recorded.
+	 *
+	 * @see RegressionDetector#RegressionDetector(double, double)
+	 */
+	public void enableRegressionDetector(double rttThreshold, double lossRisePercent) {
+		this.regressionDetector = new RegressionDetector(rttThreshold, lossRisePercent);
+	}
+
+	/**
+	 * @return null unless enableRegressionDetector() was called
+	 */
+	public RegressionDetector getRegressionDetector() {
+		return regressionDetector;
+	}
+
+	/**
+	 * Start keeping the last minute of round-trip times, in steps of PairRollups.STEP_NS, to choose routes by. Only before any are recorded.
+	 */
+	public void enableRouteWindow() {
+		this.routeWindow = new RollingWindow((int) (60L * 1000 * 1000 * 1000 / PairRollups.STEP_NS));
+	}
+
+	/**
+	 * @return null unless enableRouteWindow() was called
+	 */
+	public RollingWindow getRouteWindow() {
+		return routeWindow;
+	}
+
+	/**
+	 * Start keeping the round-trip times of each step of PairRollups.STEP_NS, for this node's row of the mesh. Only before any are recorded.
+	 */
+	public void enableMeshWindow() {
+		this.meshWindow = new RollingWindow(1);
+	}
+
+	/**
+	 * @return null unless enableMeshWindow() was called
+	 */
+	public RollingWindow getMeshWindow() {
+		return meshWindow;
+	}
+
+	/**
+	 * How many payload sizes there are round-trip times for, in getPayloadSize() and getIntervalRttForPayloadSize().
+	 */
+	public int getPayloadSizeCount() {
+		return payloadSizes.length;
+	}
+
+	public int getPayloadSize(int index) {
+		return payloadSizes[index];
+	}
+
+	/**
+	 * Round-trip times of the pings padded to the payload size at the index, recorded since the previous call for that size. Valid until the next call.
+	 */
+	public LatencyHistogram getIntervalRttForPayloadSize(int index) {
+		return payloadSizeRttRecorders[index].getIntervalHistogram();
+	}
+
+	/**
+	 * Whichever distribution is asked for, recorded since the previous call for it. Valid until the next call.
+	 *
+	 * @param distribution RTT, CORRECTED_RTT, NETWORK_RTT or DWELL
+	 */
+	public LatencyHistogram getIntervalHistogram(int distribution) {
+
+		switch (distribution)
+		{
+		case CORRECTED_RTT:
+			return correctedRttRecorder.getIntervalHistogram();
+		case NETWORK_RTT:
+			return networkRttRecorder.getIntervalHistogram();
+		case DWELL:
+			return dwellRecorder.getIntervalHistogram();
+		default:
+			return rttRecorder.getIntervalHistogram();
+		}
+	}
+}
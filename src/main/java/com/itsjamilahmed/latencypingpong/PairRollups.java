@@ -0,0 +1,94 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * The round-trip times of one pair over the last minute, 5 minutes and hour, for the rollups (see --rollups),
+ * along with smoothed averages of the round-trip time and its jitter.
+ *
+ * Each round-trip time is recorded once, into the current 10 second slice of the 1 minute window. As that slice is closed
+ * off it is also added to the current slices of the longer windows, which advance every 6th and 30th step. So the cost
+ * of a step is the same for every window, and all the memory (around a quarter of a MB) is taken when the pair is first seen.
+ *
+ * The averages are exponentially weighted, as TCP smooths its round-trip time (a weight of 1/8 for each new one) and as
+ * RTP estimates jitter (the change from the previous round-trip time, with a weight of 1/16).
+ *
+ * Only ever used from the results thread.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PairRollups {
+
+	public static final long STEP_NS = 10L * 1000 * 1000 * 1000;		// How often the windows advance
+
+	// The windows, shortest first
+	public static final String[] WINDOW_NAMES = { "1m", "5m", "1h" };
+	private static final int[] stepsPerSlice = { 1, 6, 30 };
+	private static final int[] slicesPerWindow = { 6, 5, 12 };
+
+	private final RollingWindow[] windows = new RollingWindow[WINDOW_NAMES.length];
+
+	private long smoothedRttNs = -1;
+	private long jitterNs = 0;
+	private long previousRttNs = -1;
+
+	public PairRollups() {
+
+		for (int window = 0; window < windows.length; window++) {
+			windows[window] = new RollingWindow(slicesPerWindow[window]);
+		}
+	}
+
+	public void recordRtt(long rttNs) {
+
+		windows[0].record(rttNs);
+
+		if (smoothedRttNs == -1) {
+			smoothedRttNs = rttNs;
+		} else {
+			smoothedRttNs += (rttNs - smoothedRttNs) / 8;
+		}
+		if (previousRttNs != -1) {
+			jitterNs += (Math.abs(rttNs - previousRttNs) - jitterNs) / 16;
+		}
+		previousRttNs = rttNs;
+	}
+
+	/**
+	 * Move on a step, advancing whichever windows are due.
+	 *
+	 * @param step Counted from 1, the same for every pair
+	 */
+	public void advance(long step) {
+
+		windows[0].advance();
+		LatencyHistogram finishedStep = windows[0].getLatestSlice();
+		for (int window = 1; window < windows.length; window++) {
+			windows[window].add(finishedStep);
+			if (step % stepsPerSlice[window] == 0) {
+				windows[window].advance();
+			}
+		}
+	}
+
+	/**
+	 * Whether the window advanced at this step, so has a new rollup to publish.
+	 */
+	public static boolean isDue(int window, long step) {
+		return step % stepsPerSlice[window] == 0;
+	}
+
+	public RollingWindow getWindow(int window) {
+		return windows[window];
+	}
+
+	/**
+	 * @return -1 if there hasn't been a round-trip time yet
+	 */
+	public long getSmoothedRttNs() {
+		return smoothedRttNs;
+	}
+
+	public long getJitterNs() {
+		return jitterNs;
+	}
+}
@@ -0,0 +1,77 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Random;
+
+/**
+ * Padding for pings sent at a given payload size (see --payload-size and --payload-sweep).
+ *
+ * Buffers are kept at exactly the sizes asked for, since some transports can only send a whole array. Each is filled with
+ * padding once, when first created, and then reused for every message of that size, so padding adds nothing per ping.
+ * The padding is random, so a link or broker that compresses can't make large pings cheaper than real traffic of that size.
+ *
+ * Not thread-safe. Each codec keeps its own.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PayloadPadding {
+
+	private static final byte[] fill = new byte[64 * 1024];			// Repeated as needed. Longer than the window of any common compression
+	private static final char[] textFill = new char[64 * 1024];		// The same for JSON, using only characters that need no escaping
+	private static final String textAlphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+	static {
+		Random random = new Random(0x5EED);
+		random.nextBytes(fill);
+		for (int i = 0; i < textFill.length; i++)
+		{
+			textFill[i] = textAlphabet.charAt(random.nextInt(textAlphabet.length()));
+		}
+	}
+
+	private final byte[][] buffers;
+	private int nextBuffer = 0;
+
+	/**
+	 * @param sizesKept How many different sizes of buffer to keep before the least recently created is let go
+	 */
+	public PayloadPadding(int sizesKept) {
+		this.buffers = new byte[sizesKept][];
+	}
+
+	/**
+	 * A buffer of exactly the given length, filled with padding when it was created. Whatever was last written to it is still there.
+	 */
+	public byte[] getBuffer(int length) {
+
+		for (byte[] buffer : buffers)
+		{
+			if (buffer != null && buffer.length == length)
+			{
+				return buffer;
+			}
+		}
+
+		byte[] buffer = new byte[length];
+		for (int offset = 0; offset < length; offset += fill.length)
+		{
+			System.arraycopy(fill, 0, buffer, offset, Math.min(fill.length, length - offset));
+		}
+		buffers[nextBuffer] = buffer;
+		nextBuffer = (nextBuffer + 1) % buffers.length;
+		return buffer;
+	}
+
+	/**
+	 * Padding of the given number of characters, to go in a JSON string as-is.
+	 */
+	public static String createText(int length) {
+
+		StringBuilder text = new StringBuilder(length);
+		for (int offset = 0; offset < length; offset += textFill.length)
+		{
+			text.append(textFill, 0, Math.min(textFill.length, length - offset));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,40 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * A wire format for ping and pong messages.
+ * 
+ * Each format decides whether it is carried as text or bytes on the Transport, and how a PingPongMessage is written into and read out of it.
+ * Codec instances keep reusable buffers so are not thread-safe. Create one per sending or receiving thread.
+ * 
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public interface PingPongCodec {
+
+	/**
+	 * The name of the format as given on the command line.
+	 */
+	String getName();
+	
+	/**
+	 * Refresh the ping timestamps and send the ping.
+	 */
+	void sendPing(PingPongMessage pingMessage, TransportSender sender, TransportTopic topic) throws TransportException;
+	
+	/**
+	 * Send a received message that is to be reflected back.
+	 */
+	void sendPong(PingPongMessage pongMessage, TransportSender sender, TransportTopic topic) throws TransportException;
+	
+	/**
+	 * Create a new codec instance for the named format.
+	 */
+	static PingPongCodec forName(String name) {
+		
+		if (BinaryPingPongCodec.NAME.equals(name)) {
+			return new BinaryPingPongCodec();
+		}
+		return new JsonPingPongCodec();
+	}
+
+}
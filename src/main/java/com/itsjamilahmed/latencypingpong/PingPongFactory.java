@@ -0,0 +1,122 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+public class PingPongFactory implements Runnable {
+	
+	private Logger logger = Logger.getLogger(PingPongFactory.class);	// A log4j logger to handle all output
+	private Map<String,Object> parameters;				// These control what the Factory needs to create
+	private Transport transport;						// There will be a shared transport per Factory. (e.g. 1 connection to the message router used.)
+	private ResultsRing resultsRing;					// Hands messages that have been reflected back to the original source over to the results thread
+	private SentPings sentPings;						// Hands each ping sent over to the results thread, to be closed off at its deadline
+	
+	public PingPongFactory (Map<String,Object> parameters, Transport transport) {
+		
+		this.parameters = parameters;
+		this.transport = transport;
+		// Single producer (the subscriber's callback thread) and single consumer (the results thread)
+		resultsRing = new ResultsRing((int) parameters.get("results_queue_size"),
+				WaitStrategy.forName(parameters.get("results_wait_strategy").toString()),
+				parameters.get("node_name").toString(), parameters.get("node_group").toString());
+		// Single producer (the ping sender) and single consumer (the results thread). No more are needed than can be in flight at once.
+		sentPings = new SentPings((int) parameters.get("max_in_flight_pings"));
+	}
+	
+	@Override
+	public void run() {
+		
+		// First create and connect the shared transport for all the publisher and subscribe threads
+		logger.debug("Connecting " + transport.getName() + " transport");
+		
+		// May need several attempts to connect and need to make sure all is good before doing anything else.
+		boolean connectSuccess = false;
+		int connectMaxAttempts = 10;		// How many times to try and connect
+		int connectIntervalMs = 2000;		// How long to wait between attempts
+		
+		while (!connectSuccess && connectMaxAttempts > 0)
+		{
+			connectSuccess = transport.connect();
+			connectMaxAttempts--;
+
+			if (!connectSuccess && connectMaxAttempts > 0)
+			{
+				logger.info("Failed to connect. Will wait " + connectIntervalMs + "ms and try again. " + connectMaxAttempts + " further attempts remain.");
+				try {
+					Thread.sleep(connectIntervalMs);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+		
+		if (connectSuccess)
+		{
+			// Start a ping subscriber in its own thread
+			logger.debug("Creating Ping Subscriber and starting thread");
+			PingSubscriber pingSubscriber = new PingSubscriber(parameters, transport, resultsRing);
+			Thread subscribeThread = new Thread(pingSubscriber);
+			subscribeThread.start();
+			
+			// Is a ping publisher required?
+			PingPublisher pingPublisher = null;
+			if ((int)parameters.get("ping_interval") != 0 || (int)parameters.get("ping_interval_us") != 0)
+			{
+				// Now start a ping publisher in its own thread
+				logger.debug("Creating Ping Publisher and starting thread");
+				pingPublisher = new PingPublisher(parameters, transport, sentPings);
+				Thread pingThread = new Thread(pingPublisher);
+				pingThread.start();
+			}
+			
+			// Start a results publisher in its own thread
+			logger.debug("Creating Results Publisher and starting thread");
+			ResultsPublisher resultsPublisher = new ResultsPublisher(parameters, transport, resultsRing, sentPings);
+			Thread resultsThread = new Thread(resultsPublisher);
+			resultsThread.start();
+			
+			// Gather the rows of the mesh into the full matrix here too? On a connection of its own.
+			if (Boolean.TRUE.equals(parameters.get("mesh_aggregator")) && !Boolean.TRUE.equals(parameters.get("records_raw_rtt_baseline")))
+			{
+				Transport aggregatorTransport = transport.createConnection();
+				if (aggregatorTransport == transport)
+				{
+					logger.error("The mesh aggregator needs a connection of its own, which the " + transport.getName() + " transport can't give. It will not be started.");
+				}
+				else if (!aggregatorTransport.connect())
+				{
+					logger.error("The mesh aggregator could not connect a " + transport.getName() + " transport of its own. It will not be started.");
+				}
+				else
+				{
+					logger.debug("Creating Mesh Aggregator and starting thread");
+					Thread aggregatorThread = new Thread(new MeshAggregator(parameters, aggregatorTransport), "MeshAggregator");
+					aggregatorThread.start();
+				}
+			}
+			
+			// Let the metrics server at them all, if there is one. (Not for the baseline ping-pong, which only feeds the main one's summaries.)
+			MetricsServer metricsServer = (MetricsServer) parameters.get("metrics_server");
+			if (metricsServer != null && !Boolean.TRUE.equals(parameters.get("records_raw_rtt_baseline")))
+			{
+				metricsServer.addSource(pingSubscriber);
+				if (pingPublisher != null)
+				{
+					metricsServer.addSource(pingPublisher);
+				}
+				metricsServer.addSource(resultsPublisher);
+				if (transport instanceof MetricsServer.MetricsSource)
+				{
+					metricsServer.addSource((MetricsServer.MetricsSource) transport);
+				}
+			}
+		}
+		else
+		{
+			logger.error("Failed to connect the " + transport.getName() + " transport. Aborting Factory.");
+		}
+
+	}
+		
+
+}
@@ -13,39 +13,67 @@ import org.json.simple.parser.ParseException;
 @SuppressWarnings("unchecked") 
 public class PingPongMessage {
 	
-	private JSONObject jsonMessage; 			// This will contain the fields that will get sent/received between nodes.
 	private String nodeName = "";				// This is to identify who is creating this object, regardless of being a sender or receiver.
 	private String nodeGroupName = "";			// and optionally the group name of the node too.
+	private int nodeId;							// The interned ids of the above, for quick comparisons against received binary messages
+	private int nodeGroupId;
 	private boolean discard = false;			// A flag to mark if the message is corrupt or needing to be ignored for whatever reason.
-	private boolean reflectRequired = true;		// A boolean to quickly check if a reflect is required without having to interrogate the JSONObject.
+	private boolean reflectRequired = true;		// A boolean to quickly check if a reflect is required without having to interrogate the message fields.
 	private long calculatedLatencyNs = -1;		// Save the calculated latency after the first time it is asked for
 	private long calculatedLatencyMs = -1;		// Save the calculated latency after the first time it is asked for using the alternative method
 
+	// The fields that will get sent/received between nodes. These are the same regardless of the wire format used, with the JSON key names noted.
+	private boolean valid = true;				// "v"  : Valid Message is true when created through the constructor
+	private boolean reflected = false;			// "r"  : Reflected Message is false if created through a constructor
+	private long sequence = 0;					// "sq" : Sequence number of the ping, counting up from 1
+	private long sendNs = -1;					// "ns" : Ping send time, nanos
+	private long sendMs = -1;					// "ms" : Ping send time, millis
+	private long intendedSendNs = -1;			// "ins": When the ping was scheduled to be sent, nanos. Later than this means the sender was held up.
+	private long nextIntendedSendNs = -1;		// Set by the sender ahead of preparePing()
+	private long receiveNs = -1;				// "rns": Pong receive time back at the original source, nanos
+	private long receiveMs = -1;				// "rms": Pong receive time back at the original source, millis
+	private String senderNodeName;				// "n"  : Node Name of the Ping Sender
+	private String senderNodeGroupName;			// "g"  : Node Group of the Ping Sender
+	private int senderNodeId = -1;
+	private int senderNodeGroupId = -1;
+	private String reflectNodeName;				// "rn" : Node Name of the Pong Message Reflector
+	private String reflectNodeGroupName;		// "rg" : Node Group of the Pong Message Reflector
+	private int reflectNodeId = -1;
+	private int reflectNodeGroupId = -1;
+	private long reflectReceiveNs = -1;			// "prn": Ping receive time at the reflector, wall clock nanos by its clock
+	private long reflectSendNs = -1;			// "psn": Pong send time at the reflector, wall clock nanos by its clock
+	private int payloadSize = 0;				// "ps" : Size in bytes the ping was padded to, or 0 if not padded. (Binary: the body length.)
+	private String padding;						// "pd" : The padding itself in JSON, reflected back as it arrived
+
 	private JSONObject resultsJsonMessage;		// A simplified json message of the final latency results
+	private boolean oneWayEstimated = false;	// Whether the round trip has been split into its legs, for the results message
+	private long forwardNs;
+	private long reverseNs;
+	private long oneWayErrorNs;
 	
 	private final int nanosecondsToMillisecondsDiv = 1000000;
 
-	private DateFormat dateFormatMillis = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z");
-	private DateFormat dateFormatShort = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+	private DateFormat dateFormatMillis;		// Only created if the timestamps are asked for, so the reflect path doesn't pay for them
+	private DateFormat dateFormatShort;
 
 
 
 	private PingPongMessage() {
-		jsonMessage = new JSONObject();
-		jsonMessage.put("r", false);				// Reflected Message is false if created through a constructor
-		jsonMessage.put("v", true);					// Valid Message is true when created through the constructor
 		this.setDiscard(false);
 	}
 	
 	public PingPongMessage(String nodeName) {
 		this();
 		this.nodeName = nodeName;					// At this point we don't know yet if this is a ping sender or a pong reflector
+		this.nodeId = NodeNameInterner.onlyInstance().intern(nodeName);
+		this.nodeGroupId = NodeNameInterner.onlyInstance().intern(nodeGroupName);
 	}
 
 	public PingPongMessage(String nodeName, String nodeGroupName) {
 		
 		this(nodeName);
 		this.nodeGroupName = nodeGroupName;			// At this point we don't know yet if this is a ping sender or a pong reflector
+		this.nodeGroupId = NodeNameInterner.onlyInstance().intern(nodeGroupName);
 	}
 	
 	public PingPongMessage(String nodeName, String nodeGroupName, String receivedMessage) {
@@ -56,108 +84,300 @@ public class PingPongMessage {
 	
 	public boolean receiveMessage (String receivedMessage) {
 		
+		JSONObject jsonMessage;
 		try {
 			jsonMessage = (JSONObject) new JSONParser().parse(receivedMessage);
+		} catch (ParseException | ClassCastException e) {
+			// Should the fact that the reflect message was corrupt be signalled in a field within the newly created message?
+			return this.receiveCorrupt();
+		}
 			
-			// (1) Is the parsed message a valid one? If not then do nothing, let the calling app decide what to do with it.
-			Boolean validMessage = (Boolean) jsonMessage.get("v");
-			if (validMessage != null && !validMessage.booleanValue() )
-			{
-				// Message was valid JSON but not one that this class created. Do nothing and just return.
-				this.setDiscard(true);
-				this.setReflectRequired(false);
-				return this.isReflectRequired();	// Not to be reflected back either
-			} 
-			else 
-			{
-				this.setDiscard(false);
-			}
-			
-			
-			// (2) Now to check if the message that got received needs to be reflected back or already a reflect that is returning to original source
-			if (! (boolean) jsonMessage.get("r")) 
+		// (1) Is the parsed message a valid one? If not then do nothing, let the calling app decide what to do with it.
+		Boolean validMessage = (Boolean) jsonMessage.get("v");
+		Object reflectedMessage = jsonMessage.get("r");
+		if ((validMessage != null && !validMessage.booleanValue()) || !(reflectedMessage instanceof Boolean))
+		{
+			// Message was valid JSON but not one that this class created. Do nothing and just return.
+			this.valid = (validMessage == null || validMessage.booleanValue());
+			this.setDiscard(true);
+			this.setReflectRequired(false);
+			return this.isReflectRequired();	// Not to be reflected back either
+		}
+
+		this.valid = true;
+		this.reflected = (Boolean) reflectedMessage;
+		this.sequence = jsonMessage.containsKey("sq") ? (long) jsonMessage.get("sq") : 0;
+		this.sendNs = jsonMessage.containsKey("ns") ? (long) jsonMessage.get("ns") : -1;
+		this.sendMs = jsonMessage.containsKey("ms") ? (long) jsonMessage.get("ms") : -1;
+		this.intendedSendNs = jsonMessage.containsKey("ins") ? (long) jsonMessage.get("ins") : this.sendNs;
+		this.setSenderNodeName(String.valueOf(jsonMessage.get("n")));
+		this.setSenderNodeGroupName(String.valueOf(jsonMessage.get("g")));
+		this.payloadSize = jsonMessage.containsKey("ps") ? (int) (long) jsonMessage.get("ps") : 0;
+		this.padding = jsonMessage.containsKey("pd") ? jsonMessage.get("pd").toString() : null;
+
+		if (this.reflected)
+		{
+			this.reflectNodeName = jsonMessage.containsKey("rn") ? jsonMessage.get("rn").toString() : "";
+			this.reflectNodeGroupName = jsonMessage.containsKey("rg") ? jsonMessage.get("rg").toString() : "";
+			this.reflectReceiveNs = jsonMessage.containsKey("prn") ? (long) jsonMessage.get("prn") : -1;
+			this.reflectSendNs = jsonMessage.containsKey("psn") ? (long) jsonMessage.get("psn") : -1;
+			this.reflectNodeId = NodeNameInterner.onlyInstance().intern(this.reflectNodeName);
+			this.reflectNodeGroupId = NodeNameInterner.onlyInstance().intern(this.reflectNodeGroupName);
+		}
+
+		return this.processReceivedFields();
+	}
+
+	/**
+	 * Called by a codec once it has decoded the fields of a received message.
+	 * The node ids must already be interned, which is what allows this to run without allocating.
+	 */
+	boolean receiveDecoded(boolean reflected, long sequence, long sendNs, long sendMs, long intendedSendNs,
+			int senderNodeId, int senderNodeGroupId, int reflectNodeId, int reflectNodeGroupId, int payloadSize) {
+
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+
+		this.valid = true;
+		this.reflected = reflected;
+		this.sequence = sequence;
+		this.sendNs = sendNs;
+		this.sendMs = sendMs;
+		this.intendedSendNs = intendedSendNs;
+		this.senderNodeId = senderNodeId;
+		this.senderNodeGroupId = senderNodeGroupId;
+		this.senderNodeName = interner.getName(senderNodeId);
+		this.senderNodeGroupName = interner.getName(senderNodeGroupId);
+		this.payloadSize = payloadSize;
+		if (reflected)
+		{
+			this.reflectNodeId = reflectNodeId;
+			this.reflectNodeGroupId = reflectNodeGroupId;
+			this.reflectNodeName = interner.getName(reflectNodeId);
+			this.reflectNodeGroupName = interner.getName(reflectNodeGroupId);
+		}
+
+		return this.processReceivedFields();
+	}
+
+	/**
+	 * Clear everything about the last message so the object can be received into again, keeping only who this node is.
+	 * Used by the ResultsRing so the receive path doesn't need a new object per message.
+	 */
+	void reset() {
+
+		this.discard = false;
+		this.reflectRequired = true;
+		this.calculatedLatencyNs = -1;
+		this.calculatedLatencyMs = -1;
+		this.valid = true;
+		this.reflected = false;
+		this.sequence = 0;
+		this.sendNs = -1;
+		this.sendMs = -1;
+		this.intendedSendNs = -1;
+		this.nextIntendedSendNs = -1;
+		this.receiveNs = -1;
+		this.receiveMs = -1;
+		this.senderNodeName = null;
+		this.senderNodeGroupName = null;
+		this.senderNodeId = -1;
+		this.senderNodeGroupId = -1;
+		this.reflectNodeName = null;
+		this.reflectNodeGroupName = null;
+		this.reflectNodeId = -1;
+		this.reflectNodeGroupId = -1;
+		this.reflectReceiveNs = -1;
+		this.reflectSendNs = -1;
+		this.payloadSize = 0;
+		this.padding = null;
+		this.resultsJsonMessage = null;
+		this.oneWayEstimated = false;
+	}
+
+	/**
+	 * Called by a codec when a received message could not be decoded at all.
+	 */
+	boolean receiveCorrupt() {
+
+		this.valid = false;						// Valid Message = False
+		this.setDiscard(true);
+		this.setReflectRequired(false);
+		return this.isReflectRequired();
+	}
+
+	private boolean processReceivedFields() {
+
+		this.setDiscard(false);
+
+		// (2) Now to check if the message that got received needs to be reflected back or already a reflect that is returning to original source
+		if (!this.reflected)
+		{
+			// Not a previous reflect, so flip the boolean and set details of who is reflecting the message.
+			this.setReflectRequired(true);
+			this.reflected = true;
+			this.reflectNodeName = this.nodeName;				// Node Name of the Pong Message Reflector
+			this.reflectNodeGroupName = this.nodeGroupName;		// Node group name of the Pong Message Reflector
+			this.reflectNodeId = this.nodeId;
+			this.reflectNodeGroupId = this.nodeGroupId;
+			return this.isReflectRequired();
+		}
+		else
+		{
+			// (3) Already a reflect message that needs no further reflect
+			this.setReflectRequired(false);
+
+			// Now if it is back at the original source record the time it arrived so it can be processed later to measure latency
+			if (this.senderNodeId == this.nodeId && this.senderNodeGroupId == this.nodeGroupId)
 			{
-				// Not a previous reflect, so flip the boolean and set details of who is reflecting the message.
-				this.setReflectRequired(true);
-				jsonMessage.put("r", true);
-				jsonMessage.put("rn", this.nodeName);		// Node Name of the Pong Message Reflector
-				jsonMessage.put("rg", this.nodeGroupName);	// Node group name of the Pong Message Reflector
+				// Collect the receive timestamp and then return. No need to reflect this or do anything here at this point.
+				this.receiveNs = System.nanoTime();				// Get the nanos first
+				this.receiveMs = System.currentTimeMillis();
 				return this.isReflectRequired();
 			}
 			else
 			{
-				// (3) Already a reflect message that needs no further reflect
-				this.setReflectRequired(false);
-				
-				// Now if it is back at the original source record the time it arrived so it can be processed later to measure latency
-				if (jsonMessage.get("n").toString().equals(this.nodeName) && jsonMessage.get("g").toString().equals(this.nodeGroupName))
-				{
-					// System.out.println("INFO: Found a message that came back to the original source. " + jsonMessage.toString());
-					// Collect the receive timestamp and then return. No need to reflect this or do anything here at this point.
-					jsonMessage.put("rns", System.nanoTime());				// Get the nanos first
-					jsonMessage.put("rms", System.currentTimeMillis());
-					return this.isReflectRequired();
-				} 
-				else
-				{
-					// Not at the original source so ignore the message, nothing to do.
-					this.setDiscard(true);
-					return this.isReflectRequired();
-				}
-
+				// Not at the original source so ignore the message, nothing to do.
+				this.setDiscard(true);
+				return this.isReflectRequired();
 			}
 
-		} catch (ParseException e) {
-			// Should the fact that the reflect message was corrupt be signalled in a field within the newly created message?
-			jsonMessage = new JSONObject();			// Need to create an empty one to reset if previously populated
-			jsonMessage.put("v", false);			// Valid Message = False
-			this.setDiscard(true);
-			return this.isReflectRequired();
 		}
 	}
 	
 	public void setSenderNodeName(String nodeName)
 	{
-		jsonMessage.put("n", nodeName);
+		this.senderNodeName = nodeName;
+		this.senderNodeId = NodeNameInterner.onlyInstance().intern(nodeName);
 	}
 	
 	public void setSenderNodeGroupName(String nodeGroupName)
 	{
-		jsonMessage.put("g", nodeGroupName);
+		this.senderNodeGroupName = nodeGroupName;
+		this.senderNodeGroupId = NodeNameInterner.onlyInstance().intern(nodeGroupName);
 	}
 	
 
 	
 	public String getPongMessage()
 	{
-		return this.jsonMessage.toString();			// Provide message contents as-is.
+		return this.appendPadding(this.toJsonMessage().toString());		// Provide message contents as-is, with any padding as it arrived.
 	}
 	
 	public String toString()
 	{
-		return this.getPongMessage();				// Provide message contents as-is.
+		return this.toJsonMessage().toString();		// Provide message contents as-is. (Without any padding, which is only there to make up the size.)
 	}
 	
 	public String getPingMessage()
+	{
+		this.preparePing();							// Update the timestamps before providing the contents
+		String unpaddedMessage = this.toJsonMessage().toString();
+		
+		// Make up the payload size if one is set and the message isn't that big already
+		int paddingLength = this.payloadSize - unpaddedMessage.length() - ",\"pd\":\"\"".length();
+		if (paddingLength < 0)
+		{
+			return unpaddedMessage;
+		}
+		if (this.padding == null || this.padding.length() != paddingLength)
+		{
+			this.padding = PayloadPadding.createText(paddingLength);		// Only changes when the size does, or a field gets another digit
+		}
+		return this.appendPadding(unpaddedMessage);
+	}
+	
+	/**
+	 * Add the padding to the end of a JSON message, without building it into the JSONObject to be copied and escaped again.
+	 */
+	private String appendPadding(String jsonMessage)
+	{
+		if (this.padding == null)
+		{
+			return jsonMessage;
+		}
+		
+		// Swap the closing brace for the extra field. The padding never needs escaping.
+		return new StringBuilder(jsonMessage.length() + this.padding.length() + 8)
+				.append(jsonMessage, 0, jsonMessage.length() - 1)
+				.append(",\"pd\":\"").append(this.padding).append("\"}")
+				.toString();
+	}
+
+	/**
+	 * Called ahead of every ping send, whatever the wire format.
+	 */
+	void preparePing()
 	{
 		// This call tells us that this is a Ping Sender. So set the node fields if this is first call and so not set yet...
-		if (jsonMessage.get("n") == null) {
-			jsonMessage.put("n", this.nodeName);			// Node Name of the Ping Sender
-			jsonMessage.put("g", this.nodeGroupName);		// Was the optional group name set? Stays an empty string if not set to anything. (Null not possible.)
-			
-//			if (this.nodeGroupName != null) {
-//				jsonMessage.put("g", this.nodeGroupName);
-//			}
+		if (this.senderNodeName == null) {
+			this.senderNodeName = this.nodeName;				// Node Name of the Ping Sender
+			this.senderNodeGroupName = this.nodeGroupName;		// Was the optional group name set? Stays an empty string if not set to anything. (Null not possible.)
+			this.senderNodeId = this.nodeId;
+			this.senderNodeGroupId = this.nodeGroupId;
 		}
 				
-		this.refreshMessage();						// Update the timestamps before providing the contents
-		return this.jsonMessage.toString();
+		this.sequence++;
+		this.refreshMessage();
+		
+		// If the sender didn't say when this ping should have gone, assume it went on time
+		this.intendedSendNs = (this.nextIntendedSendNs != -1) ? this.nextIntendedSendNs : this.sendNs;
+		this.nextIntendedSendNs = -1;
+	}
+	
+	/**
+	 * Tell the next preparePing() call when that ping was scheduled to be sent, as a System.nanoTime() value.
+	 */
+	void setNextIntendedSendNs(long intendedSendNs)
+	{
+		this.nextIntendedSendNs = intendedSendNs;
 	}
 	
 	private void refreshMessage()
 	{
-		jsonMessage.put("ns", System.nanoTime());			// Get the nanos first
-		jsonMessage.put("ms", System.currentTimeMillis());
+		this.sendNs = System.nanoTime();			// Get the nanos first
+		this.sendMs = System.currentTimeMillis();
+	}
+
+	private JSONObject toJsonMessage()
+	{
+		JSONObject jsonMessage = new JSONObject();
+
+		if (!this.valid)
+		{
+			jsonMessage.put("v", false);
+			return jsonMessage;
+		}
+
+		jsonMessage.put("r", this.reflected);
+		jsonMessage.put("v", this.valid);
+		if (this.senderNodeName != null) {
+			jsonMessage.put("n", this.senderNodeName);
+			jsonMessage.put("g", this.senderNodeGroupName);
+		}
+		if (this.sequence != 0) {
+			jsonMessage.put("sq", this.sequence);
+		}
+		if (this.sendNs != -1) {
+			jsonMessage.put("ns", this.sendNs);
+			jsonMessage.put("ms", this.sendMs);
+			jsonMessage.put("ins", this.intendedSendNs);
+		}
+		if (this.reflectNodeName != null) {
+			jsonMessage.put("rn", this.reflectNodeName);
+			jsonMessage.put("rg", this.reflectNodeGroupName);
+		}
+		if (this.receiveNs != -1) {
+			jsonMessage.put("rns", this.receiveNs);
+			jsonMessage.put("rms", this.receiveMs);
+		}
+		if (this.reflectReceiveNs != -1) {
+			jsonMessage.put("prn", this.reflectReceiveNs);
+			jsonMessage.put("psn", this.reflectSendNs);
+		}
+		if (this.payloadSize != 0) {
+			jsonMessage.put("ps", this.payloadSize);
+		}
+		return jsonMessage;
 	}
 
 	public boolean isDiscard() {
@@ -176,36 +396,139 @@ public class PingPongMessage {
 		this.reflectRequired = reflect;
 	}
 	
-	public String getReflectNodeGroup() {
-		
-		if (this.jsonMessage.containsKey("rg"))
-		{
-			return this.jsonMessage.get("rg").toString();
-		}
-		else
+	boolean isReflected() {
+		return reflected;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	long getSendNs() {
+		return sendNs;
+	}
+
+	long getSendMs() {
+		return sendMs;
+	}
+
+	long getIntendedSendNs() {
+		return intendedSendNs;
+	}
+
+	long getReceiveNs() {
+		return receiveNs;
+	}
+
+	long getReflectReceiveNs() {
+		return reflectReceiveNs;
+	}
+	
+	long getReflectSendNs() {
+		return reflectSendNs;
+	}
+	
+	/**
+	 * As the reflector, note when the ping arrived by the wall clock. Take this as soon as possible after it arrives.
+	 */
+	void stampReflectReceive(long wallClockNs) {
+		this.reflectReceiveNs = wallClockNs;
+	}
+	
+	/**
+	 * As the reflector, note the wall clock time the pong is going back. Take this as late as possible before it goes.
+	 */
+	void stampReflectSend() {
+		this.reflectSendNs = WallClock.nowNs();
+	}
+	
+	/**
+	 * Called by a codec that found the reflector's timestamps in the received pong.
+	 */
+	void setReflectTimes(long reflectReceiveNs, long reflectSendNs) {
+		this.reflectReceiveNs = reflectReceiveNs;
+		this.reflectSendNs = reflectSendNs;
+	}
+	
+	/**
+	 * How long the reflector held the ping, from its arrival to the pong going back. Both times are by the reflector's clock,
+	 * which (being nanoTime underneath) is fine for a difference however far it is from this node's.
+	 *
+	 * @return the dwell time in nanoseconds, or -1 if the reflector didn't say
+	 */
+	long getDwellNs() {
+
+		if (this.reflectReceiveNs == -1 || this.reflectSendNs == -1)
 		{
-			return "";
+			return -1;
 		}
+		return this.reflectSendNs - this.reflectReceiveNs;
+	}
+	
+	/**
+	 * The estimated forward (ping) and reverse (pong) legs of the round trip, to go in the results message.
+	 */
+	void setOneWayLatencies(long forwardNs, long reverseNs, long errorNs) {
+		this.oneWayEstimated = true;
+		this.forwardNs = forwardNs;
+		this.reverseNs = reverseNs;
+		this.oneWayErrorNs = errorNs;
+	}
+	
+	int getPayloadSize() {
+		return payloadSize;
+	}
+	
+	/**
+	 * Pad the pings sent from now on to this many bytes. 0 for no padding.
+	 */
+	void setPayloadSize(int payloadSize) {
+		this.payloadSize = payloadSize;
+	}
+
+	String getSenderNodeName() {
+		return senderNodeName != null ? senderNodeName : "";
+	}
+
+	String getSenderNodeGroupName() {
+		return senderNodeGroupName != null ? senderNodeGroupName : "";
+	}
+
+	int getSenderNodeId() {
+		return senderNodeId;
+	}
+
+	int getSenderNodeGroupId() {
+		return senderNodeGroupId;
+	}
+
+	int getReflectNodeId() {
+		return reflectNodeId;
+	}
+
+	int getReflectNodeGroupId() {
+		return reflectNodeGroupId;
+	}
+
+	public String getReflectNodeGroup() {
+		
+		return this.reflectNodeGroupName != null ? this.reflectNodeGroupName : "";
 	}
 	
 	public String getReflectNodeName() {
 		
-		if (this.jsonMessage.containsKey("rn"))
-		{
-			return this.jsonMessage.get("rn").toString();
-		}
-		else
-		{
-			return "";
-		}
+		return this.reflectNodeName != null ? this.reflectNodeName : "";
 	}
 	
 	public String getPingTimestamp() {
 		
-		if (this.jsonMessage.containsKey("ms"))
+		if (this.sendMs != -1)
 		{
+			if (dateFormatMillis == null) {
+				dateFormatMillis = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z");
+			}
 			return dateFormatMillis.format(
-					new Date( (long) this.jsonMessage.get("ms") ));
+					new Date(this.sendMs));
 		}
 		else
 		{
@@ -215,10 +538,13 @@ public class PingPongMessage {
 
 	public String getPingShortTimestamp() {
 		
-		if (this.jsonMessage.containsKey("ms"))
+		if (this.sendMs != -1)
 		{
+			if (dateFormatShort == null) {
+				dateFormatShort = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+			}
 			return dateFormatShort.format(
-					new Date( (long) this.jsonMessage.get("ms") ));
+					new Date(this.sendMs));
 		}
 		else
 		{
@@ -229,15 +555,37 @@ public class PingPongMessage {
 		
 		if (calculatedLatencyNs == -1)
 		{
-			if (this.jsonMessage.containsKey("rns"))
+			if (this.receiveNs != -1)
 			{
-				calculatedLatencyNs =  (long)(this.jsonMessage.get("rns")) - (long)(this.jsonMessage.get("ns"));
+				calculatedLatencyNs =  this.receiveNs - this.sendNs;
 			}	
 		}
 		return calculatedLatencyNs;		// Will stay unchanged at -1 if there was no calculation performed
 		
 	}
 	
+	/**
+	 * As per getPingLatencyNs() but without losing precision to a float.
+	 */
+	long getRttNs() {
+
+		getPingLatencyNs();
+		return calculatedLatencyNs;
+	}
+
+	/**
+	 * The round-trip time measured from when the ping should have been sent, rather than when it actually was.
+	 * This is what an application sending on that schedule would have seen, including any time the sender was held up.
+	 */
+	long getCorrectedRttNs() {
+
+		if (this.receiveNs == -1)
+		{
+			return -1;
+		}
+		return this.receiveNs - this.intendedSendNs;
+	}
+
 	public float getPingLatencyMs() {
 		
 		return getPingLatencyNs() / nanosecondsToMillisecondsDiv;
@@ -258,9 +606,9 @@ public class PingPongMessage {
 		
 		if (calculatedLatencyMs == -1)
 		{
-			if (this.jsonMessage.containsKey("rms"))
+			if (this.receiveMs != -1)
 			{
-				calculatedLatencyMs = (long)this.jsonMessage.get("rms") - (long)this.jsonMessage.get("ms");
+				calculatedLatencyMs = this.receiveMs - this.sendMs;
 			}	
 		}
 		return Long.toString(calculatedLatencyMs);		// Will stay unchanged at -1 if there was no calculation performed
@@ -282,6 +630,23 @@ public class PingPongMessage {
 				resultsJsonMessage.put("from", this.nodeGroupName + ":" + this.nodeName);
 				resultsJsonMessage.put("to", this.getReflectNodeGroup() + ":" + this.getReflectNodeName());
 				resultsJsonMessage.put("rtt", this.getPingLatencyMsString());
+				resultsJsonMessage.put("correctedRtt", String.format(java.util.Locale.US,"%.3f", this.getCorrectedRttNs() / 1000000.0));
+				long dwellNs = this.getDwellNs();
+				if (dwellNs != -1)
+				{
+					resultsJsonMessage.put("dwell", String.format(java.util.Locale.US,"%.3f", dwellNs / 1000000.0));
+					resultsJsonMessage.put("networkRtt", String.format(java.util.Locale.US,"%.3f", (this.getRttNs() - dwellNs) / 1000000.0));
+				}
+				if (this.oneWayEstimated)
+				{
+					resultsJsonMessage.put("forward", String.format(java.util.Locale.US,"%.3f", this.forwardNs / 1000000.0));
+					resultsJsonMessage.put("reverse", String.format(java.util.Locale.US,"%.3f", this.reverseNs / 1000000.0));
+					resultsJsonMessage.put("oneWayError", String.format(java.util.Locale.US,"%.3f", this.oneWayErrorNs / 1000000.0));
+				}
+				if (this.payloadSize != 0)
+				{
+					resultsJsonMessage.put("size", this.payloadSize);
+				}
 			}
 			
 			return resultsJsonMessage.toString();
@@ -0,0 +1,309 @@
+/**
+ * 
+ */
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class will create a Ping Message Publisher
+ * 
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PingPublisher implements Runnable, MetricsServer.MetricsSource {
+
+	private Logger logger = Logger.getLogger(PingPublisher.class);	// A log4j logger to handle all output
+	private final HotPathLog hotPathLog = new HotPathLog(logger);	// For the sending thread, which must not wait on the appenders
+	private Transport transport;
+	private Map<String,Object> parameters;
+	private int[] payloadSizes;				// Sizes to pad the pings to, stepping through each in turn. Empty for no padding.
+	private int pingsPerPayloadSize;		// How many pings to send at each size before stepping to the next
+	private SentPings sentPings;			// Each ping sent is handed over to the results thread, to be closed off at its deadline
+	private final AtomicLong pingsSent = new AtomicLong(0);		// Written by the sending thread only, read by metrics scrapes
+	
+	private static final long jitterReportIntervalNs = 10L * 1000 * 1000 * 1000;	// How often the high-rate sender reports on how well it is keeping to schedule
+	
+	public PingPublisher(Map<String,Object> parameters, Transport transport, SentPings sentPings) {
+
+		this.parameters = parameters;
+		this.transport = transport;	// This class will be created with a reference to an existing valid and connected transport.
+									// This is required in order to share a single connection (e.g. to the message router) across threads.
+		this.payloadSizes = (int[]) parameters.get("payload_sizes");
+		this.pingsPerPayloadSize = (int) parameters.get("payload_sweep_pings");
+		this.sentPings = sentPings;
+	}
+	
+	/**
+	 * Set the size for the ping about to be sent. Sizes are stepped through in order, a run of pings at each, then round again.
+	 * 
+	 * @param pingIndex Counting from 0 for the first ping
+	 */
+	private void setPayloadSize(PingPongMessage pingMessage, long pingIndex) {
+		
+		if (payloadSizes.length > 0)
+		{
+			pingMessage.setPayloadSize(payloadSizes[(int) ((pingIndex / pingsPerPayloadSize) % payloadSizes.length)]);
+		}
+	}
+	
+	@Override
+	public void writeMetrics(MetricsServer.Writer writer) {
+		writer.counter("pings_sent", "Pings sent.", pingsSent.get(), "node", parameters.get("node_name").toString());
+	}
+	
+	@Override
+	public void run() {
+				
+		try {
+			
+			// Now get the topic created for publishing
+			// Whether publish_topic has been specified or not will be checked earlier before getting here
+			final TransportTopic topic = transport.createTopic(parameters.get("publish_topic").toString());
+
+			// The wire format decides how the pings are carried
+			PingPongCodec codec = PingPongCodec.forName(parameters.get("wire_format").toString());
+			TransportSender sender = transport.createSender();
+			
+			// Setup the Ping message that will be refreshed and sent with each send call.
+			// It's constructor wants to know the node name and group for identification. Optional Node Group name will be empty if nothing specified. No null-test needed.
+			PingPongMessage pingMessage = new PingPongMessage(
+					parameters.get("node_name").toString(),
+					parameters.get("node_group").toString());
+			
+			// What is the maximum number of specified pings, unless it has been set to zero for unlimited.
+ 			String pingCount = (int) parameters.get("ping_count") == 0 ? "unlimited" : parameters.get("ping_count").toString();
+			
+			if (payloadSizes.length == 1)
+			{
+				logger.info("Pings will be padded to " + payloadSizes[0] + " bytes.");
+			}
+			else if (payloadSizes.length > 1)
+			{
+				logger.info("Pings will be padded to each of " + java.util.Arrays.toString(payloadSizes) + " bytes in turn, " + pingsPerPayloadSize + " pings at each size.");
+			}
+
+			// In high-rate mode the pings are sent from this thread on a precise schedule, instead of from a Timer
+			if ((int) parameters.get("ping_interval_us") != 0)
+			{
+				logger.info("Publishing " + pingCount + " ping messages every " + parameters.get("ping_interval_us").toString() + " microseconds on topic: " + topic.getName()
+						+ " in " + parameters.get("wire_format").toString() + " format, using the " + parameters.get("wait_strategy").toString() + " wait strategy");
+				this.runHighRate(topic, codec, sender, pingMessage);
+				return;
+			}
+			
+	        // Now we are ready to keep sending the ping messages
+	        // Use a TimerTask to schedule the repetitive sends
+	        
+ 			// Print info message on what the publisher will be doing
+	        logger.info("Publishing " + pingCount + " ping messages every " + parameters.get("ping_interval").toString() + " milliseconds on topic: " + topic.getName()
+	        		+ " in " + parameters.get("wire_format").toString() + " format");
+			
+			
+			Timer pingTimer = new Timer() ;
+			
+			Date firstTime = new Date(System.currentTimeMillis()+1000);	// By default, start after 1 second. May get overridden below...
+			
+			// Is this sending unlimited pings? If so, check how often pings are being sent and delay start time to a nice round time. (Create a "pretty" timestamp each time.)
+			if ( (int) parameters.get("ping_count") == 0 )
+			{
+				int pingIntervalMs = (int) parameters.get("ping_interval");
+				// Will delay till the nearest 5 seconds, 30 seconds, or 60. Only if the interval is a multiple of 5, or is the value 30 or 60.
+				// Wont truncate the milliseconds to 0, no point moving all executions of this program to be at the same time. 
+				if (pingIntervalMs >= 5000 && pingIntervalMs <= 60000)
+				{
+					if ((pingIntervalMs % 5000) == 0)
+					{
+						Calendar calendarStartTime = Calendar.getInstance();
+						calendarStartTime.setTime(firstTime);
+						switch (pingIntervalMs) {
+							case 60000:
+								// Zero the seconds and schedule for the next full minute
+								calendarStartTime.set(Calendar.SECOND, 0);
+								calendarStartTime.add(Calendar.MINUTE, 1);
+								break;
+							case 30000:
+								// Just schedule to the next full 30 seconds
+								if (calendarStartTime.get(Calendar.SECOND) <= 30) 
+								{
+									calendarStartTime.set(Calendar.SECOND, 30);
+								}
+								else
+								{
+									calendarStartTime.set(Calendar.SECOND, 0);
+									calendarStartTime.add(Calendar.MINUTE, 1);
+								}
+								break;
+							default:
+								// Just schedule to the next nearest full 5 seconds (round up)
+								int unroundedSeconds = calendarStartTime.get(Calendar.SECOND);
+								int roundedSeconds = (int) Math.ceil(unroundedSeconds / 5) * 5;
+								calendarStartTime.set(Calendar.SECOND, roundedSeconds);
+						}
+					
+						firstTime = calendarStartTime.getTime();
+						logger.info("Ping sending being delayed until: " + firstTime.toString());
+					}
+				}
+				
+			}
+
+			
+						
+//			pingTimer.schedule(new TimerTask() {
+			pingTimer.scheduleAtFixedRate(new TimerTask() {
+
+				private long sendCounter = 0;
+				private int maxPingCount = (int) parameters.get("ping_count");
+				
+				@Override
+				public void run() {
+					
+					try {
+						// Start at zero and increment to 1 on the very first iteration
+						sendCounter++;
+						
+						// Keep refreshing and re-using the existing PingPongMessage object for each send....
+						// The Timer may have run this late, so let the ping carry when it was actually due.
+						long lateByMs = Math.max(System.currentTimeMillis() - this.scheduledExecutionTime(), 0);
+						pingMessage.setNextIntendedSendNs(System.nanoTime() - lateByMs * 1000000L);
+						setPayloadSize(pingMessage, sendCounter - 1);
+						codec.sendPing(pingMessage, sender, topic);	// The timestamps are refreshed on each call to this method.
+						sentPings.sent(pingMessage.getSequence(), pingMessage.getSendNs(), pingMessage.getSendMs());
+						pingsSent.lazySet(pingsSent.get() + 1);
+						hotPathLog.log(HotPathLog.Event.PING_SENT, pingMessage.getSequence(), pingMessage.getPayloadSize());
+					} catch (Exception e) {
+						handleSendException(e);
+					}					
+					
+					// How many times have I run?
+					// If it was zero for unlimited, then this test will never see a zero for it to be true, so stays running forever
+					if (sendCounter == maxPingCount) {
+						// Have executed the maximum number of times, time to close the producer and cancel this thread.
+						// Cancel means this particular run executes to the end, so needs to be cancelled after the message send.
+						// Also cancel the original Timer, not the TimerTask if using this.cancel() which just cancels this run;
+						logger.debug("Sent " + sendCounter + " ping messages, will cancel timer.");
+						pingTimer.cancel();
+					}
+				}
+			}, firstTime, Long.parseLong(parameters.get("ping_interval").toString())); // Start TimerTask at 'firstTime' and then repeat at given interval.
+
+
+		} catch (Exception e) {
+			if (e instanceof TransportException){
+				logger.error("A TransportException occurred. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+			}
+			else if (e instanceof NullPointerException){
+				// Shouldn't really trigger unless something has been coded wrong...
+				logger.error("A NullPointerException occurred.");
+				logger.debug("Stack Trace: ",e);
+			}
+			else {
+				logger.error("An exception occurred. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+
+			}
+		}
+	}
+	
+	/**
+	 * Send pings back-to-back on a fixed schedule from this thread, for intervals too short for a Timer.
+	 * 
+	 * Each send is scheduled from the start time rather than from the previous send, so a late send doesn't push back all the following ones.
+	 * How late each send actually starts, and how long the send call takes, are reported periodically so it is clear when the sender itself can't keep up.
+	 */
+	private void runHighRate(TransportTopic topic, PingPongCodec codec, TransportSender sender, PingPongMessage pingMessage) {
+		
+		final long intervalNs = (int) parameters.get("ping_interval_us") * 1000L;
+		final long maxPingCount = (int) parameters.get("ping_count");
+		final WaitStrategy waitStrategy = WaitStrategy.forName(parameters.get("wait_strategy").toString());
+		
+		LatencyHistogram scheduleLateness = new LatencyHistogram();	// Actual send start minus the scheduled time
+		LatencyHistogram sendDuration = new LatencyHistogram();		// Time spent in the send call
+		long reportDeadlineNs = System.nanoTime() + jitterReportIntervalNs;
+		long reportStartNs = System.nanoTime();
+		
+		long sendCounter = 0;
+		long nextSendNs = System.nanoTime() + intervalNs;
+		
+		while (maxPingCount == 0 || sendCounter < maxPingCount)
+		{
+			waitStrategy.waitUntil(nextSendNs);
+			
+			long sendStartNs = System.nanoTime();
+			try {
+				pingMessage.setNextIntendedSendNs(nextSendNs);	// So the results can be measured from the schedule, not from when the send happened
+				setPayloadSize(pingMessage, sendCounter);
+				codec.sendPing(pingMessage, sender, topic);	// The timestamps are refreshed on each call to this method.
+				sentPings.sent(pingMessage.getSequence(), pingMessage.getSendNs(), pingMessage.getSendMs());
+				pingsSent.lazySet(pingsSent.get() + 1);
+			} catch (Exception e) {
+				handleSendException(e);
+			}
+			long sendEndNs = System.nanoTime();
+			
+			sendCounter++;
+			scheduleLateness.record(sendStartNs - nextSendNs);
+			sendDuration.record(sendEndNs - sendStartNs);
+			nextSendNs += intervalNs;
+			
+			if (sendEndNs - reportDeadlineNs >= 0)
+			{
+				reportJitter(scheduleLateness, sendDuration, sendEndNs - reportStartNs);
+				scheduleLateness.reset();
+				sendDuration.reset();
+				reportStartNs = sendEndNs;
+				reportDeadlineNs = sendEndNs + jitterReportIntervalNs;
+			}
+		}
+		
+		reportJitter(scheduleLateness, sendDuration, System.nanoTime() - reportStartNs);
+		logger.debug("Sent " + sendCounter + " ping messages, high-rate sender finished.");
+	}
+	
+	private void reportJitter(LatencyHistogram scheduleLateness, LatencyHistogram sendDuration, long elapsedNs) {
+		
+		if (scheduleLateness.getTotalCount() == 0)
+		{
+			return;
+		}
+		
+		logger.info(String.format(java.util.Locale.US,
+				"Ping sender: %d pings in %.1f seconds (%.0f/s). Schedule lateness us p50=%.1f p99=%.1f p99.9=%.1f max=%.1f. Send call us p50=%.1f p99=%.1f max=%.1f",
+				scheduleLateness.getTotalCount(), elapsedNs / 1e9, scheduleLateness.getTotalCount() / (elapsedNs / 1e9),
+				scheduleLateness.getValueAtPercentile(50) / 1e3, scheduleLateness.getValueAtPercentile(99) / 1e3,
+				scheduleLateness.getValueAtPercentile(99.9) / 1e3, scheduleLateness.getMaxValue() / 1e3,
+				sendDuration.getValueAtPercentile(50) / 1e3, sendDuration.getValueAtPercentile(99) / 1e3, sendDuration.getMaxValue() / 1e3));
+	}
+	
+	private void handleSendException(Exception e) {
+		
+		if (e instanceof TransportException && ((TransportException) e).isConnectionLost()){
+			// This one is quite serious, means there was an issue on the underlying connection.
+			logger.error("A TransportException occurred with the connection lost. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+
+			// May as well terminate and start again
+			logger.error("*** Program will terminate now. ***");
+			System.exit(-1);
+		}
+		else if (e instanceof TransportException)
+		{
+			logger.error("A TransportException occurred on message send. Exception message ->" + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+		else
+		{
+			logger.error("An Exception occurred during message send. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+	}
+}
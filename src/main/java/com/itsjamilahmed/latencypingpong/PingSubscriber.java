@@ -0,0 +1,348 @@
+/**
+ * 
+ */
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class will create a Ping Message Subscriber, which reflects pings back to their sender and hands the returning pongs to the results thread
+ * 
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PingSubscriber implements Runnable, MetricsServer.MetricsSource {
+
+	private Logger logger = Logger.getLogger(PingSubscriber.class);	// A log4j logger to handle all output
+	private final HotPathLog hotPathLog = new HotPathLog(logger);	// For the callback thread, which must not wait on the appenders
+	private Transport transport;
+	private Map<String,Object> parameters;
+	private ResultsRing resultsRing;
+	private volatile ReflectLane[] reflectLanes;					// If reflecting is split over several threads and connections, otherwise null
+	private long[] reflectedAtLastReport;
+	private final long laneReportIntervalMs = 10000;				// How often to log how the lanes are doing
+	
+	// Written by the callback thread only, read by metrics scrapes
+	private final AtomicLong messagesReceived = new AtomicLong(0);
+	private final AtomicLong pongsReflected = new AtomicLong(0);	// By the callback thread itself. The lanes count their own
+	private final AtomicLong messagesDiscarded = new AtomicLong(0);	// Neither reflected nor passed on for results: pongs to other pingers, or not understood
+	
+	public PingSubscriber(Map<String,Object> parameters, Transport transport, ResultsRing resultsRing) {
+
+		this.parameters = parameters;
+		this.transport = transport;		// This class will be created with a reference to an existing valid and connected transport, shared by all threads.
+		this.resultsRing = resultsRing;	// The ring of final messages to calculate latency from. This class is its only producer.
+	}
+	
+	
+	@Override
+	public void run() {
+				
+		try {
+			
+			// The inner class will need to know this information to create the PingPongMessage objects
+	        final String myNodeName = parameters.get("node_name").toString();
+	        final String myNodeGroupName = parameters.get("node_group").toString();		// This will be empty string if never set. Don't need to test for null.
+	        
+			final CountDownLatch latch = new CountDownLatch(1); // Use a latch to keep this subscriber thread running until countDown() is called somewhere else.
+            
+			// (1) First setup the sender that will be used to reflect messages back
+			final TransportTopic reflectTopic = transport.createTopic(parameters.get("reflect_topic").toString());
+			final TransportSender sender = transport.createSender();
+			logger.info("Publishing reflected pong messages on topic: " + reflectTopic.getName());
+			
+			// Pings can arrive in any of the wire formats, regardless of what this node sends its own pings in. Reflect them back in the same format.
+			final JsonPingPongCodec jsonCodec = new JsonPingPongCodec();
+			final BinaryPingPongCodec binaryCodec = new BinaryPingPongCodec();
+			
+			// In fast reflect mode binary pings are turned around without being decoded, by appending this fixed trailer.
+			final boolean fastReflect = (boolean) parameters.get("fast_reflect");
+			final byte[] reflectTrailer = BinaryPingPongCodec.createTrailer(myNodeName, myNodeGroupName);
+			if (fastReflect) {
+				logger.info("Fast reflect mode enabled for binary format ping messages.");
+			}
+			
+			// Used to decode into when the results ring is full, so pings can still be reflected
+			final PingPongMessage overflowMessage = new PingPongMessage(myNodeName, myNodeGroupName);
+			
+			// Split reflecting over several lanes, each a thread with a connection of its own?
+			final int lanes = (int) parameters.get("reflect_lanes");
+			if (lanes > 1)
+			{
+				this.startReflectLanes(lanes, myNodeName, myNodeGroupName, fastReflect);
+			}
+			
+			
+			// The listener is called for each message received, one at a time. Create an anonymous inner class for it.
+			
+			final TransportListener listener = new TransportListener() {
+	            @Override
+	            public void onText(String text) {
+	            	
+	            	messagesReceived.lazySet(messagesReceived.get() + 1);
+	            	long receiveNs = WallClock.nowNs();			// Before anything else, for the ping's forward leg to end as close to its arrival as possible
+	            	
+	            	if (lanes > 1) {
+	            		int nameStart = JsonPingPongCodec.findPingSenderName(text);
+	            		if (nameStart >= 0) {
+	            			int nameEnd = text.indexOf('"', nameStart);
+	            			offerToLane(reflectLanes[ReflectLane.laneFor(text, nameStart, nameEnd < 0 ? nameStart : nameEnd, lanes)].offer(text, receiveNs));
+	            			return;
+	            		}
+	            		// Otherwise carry on as normal. It is not a ping.
+	            	}
+	            	
+                	hotPathLog.log(HotPathLog.Event.MESSAGE_RECEIVED, text);
+                	
+                	PingPongMessage receivedMessage = claimMessage();
+                	processMessage(receivedMessage, jsonCodec.read(text, receivedMessage), jsonCodec, receiveNs);
+	            }
+	            
+	            @Override
+	            public void onBytes(byte[] data, int length) {
+	            	
+	            	long receiveNs = WallClock.nowNs();
+	            	messagesReceived.lazySet(messagesReceived.get() + 1);
+	            	
+	            	if (lanes > 1 && BinaryPingPongCodec.isPing(data, length)) {
+	            		offerToLane(reflectLanes[ReflectLane.laneFor(data, BinaryPingPongCodec.OFFSET_NODE, lanes)].offer(data, length, receiveNs));
+	            		return;
+	            	}
+	            	
+	            	if (fastReflect) {
+	            		byte[] pong = binaryCodec.fastReflect(data, length, reflectTrailer, receiveNs);
+	            		if (pong != null) {
+	            			sendReflect(sender, pong, reflectTopic);
+	            			return;
+	            		}
+	            		// Otherwise carry on as normal. It is not a binary ping.
+	            	}
+	            	
+                	PingPongMessage receivedMessage = claimMessage();
+                	boolean reflectRequired = binaryCodec.read(data, length, receivedMessage);
+                	
+                	// Logged once decoded, so the log writer has the names from it rather than needing a copy of the message
+                	hotPathLog.log(HotPathLog.Event.BINARY_MESSAGE_RECEIVED, length, receivedMessage.getSequence(),
+                			receivedMessage.getSenderNodeGroupId(), receivedMessage.getSenderNodeId(),
+                			receivedMessage.getReflectNodeGroupId(), receivedMessage.getReflectNodeId(), null);
+                	
+                	processMessage(receivedMessage, reflectRequired, binaryCodec, receiveNs);
+	            }
+	            
+	            private void offerToLane(boolean offered) {
+	            	
+	            	if (!offered) {
+	            		hotPathLog.log(HotPathLog.Event.REFLECT_LANE_FULL);
+	            	}
+	            }
+	            
+	            private PingPongMessage claimMessage() {
+	            	
+                	// Decode straight into the next free slot of the results ring. If it turns out not to be a result it just isn't published.
+                	PingPongMessage receivedMessage = resultsRing.claim();
+                	if (receivedMessage == null) {
+                		receivedMessage = overflowMessage;
+                		receivedMessage.reset();
+                	}
+                	return receivedMessage;
+	            }
+	            
+	            private void processMessage(PingPongMessage receivedMessage, boolean reflectRequired, PingPongCodec codec, long receiveNs) {
+	            	
+                	// Message will return true for isReflectRequired if the message is needing to be reflected.
+                	if (reflectRequired) {
+                		
+                		// Reflect it back in the same format using the sender, with when it arrived so the pinger can work out each leg's latency
+                		receivedMessage.stampReflectReceive(receiveNs);
+                		sendReflect(sender, receivedMessage, codec, reflectTopic);
+						
+						hotPathLog.log(HotPathLog.Event.REFLECT_SENT, receivedMessage.getSequence(),
+								receivedMessage.getSenderNodeGroupId(), receivedMessage.getSenderNodeId());
+						
+                	} 
+                	else 
+                	{
+                		if (!receivedMessage.isDiscard()) {
+                			// The message is not needing to be reflected back, nor has it been marked for discard due to corruption
+                			
+	                		// Hand it over if the ring had room, otherwise it is dropped and counted. Never blocks.
+                			if (receivedMessage != overflowMessage) {
+                				resultsRing.publish();
+                				hotPathLog.log(HotPathLog.Event.RESULT_QUEUED, resultsRing.size(), 0);
+                			}
+                			else {
+                				resultsRing.drop();
+                			}
+                		}
+                		else {
+                			messagesDiscarded.lazySet(messagesDiscarded.get() + 1);
+                		}
+                	}
+	            }
+	        };
+			
+			// What topic is this subscriber interested in? 
+			
+			for (String topicString: parameters.get("subscribe_topic").toString().split(","))
+			{
+				transport.subscribe(topicString);
+			}
+			
+	        // Now we are ready to receive messages...
+ 			// Print info message on what the subscriber will be doing
+	        logger.info("Subscribing for ping messages on topics: " + parameters.get("subscribe_topic").toString());
+			transport.start(listener);
+			
+	        try {
+	        	if (reflectLanes == null) {
+	        		latch.await(); // block here until message received, and latch will flip
+	        	}
+	        	else {
+	        		// Nothing else for this thread to do, so have it keep an eye on the lanes
+	        		while (!latch.await(laneReportIntervalMs, TimeUnit.MILLISECONDS)) {
+	        			this.reportReflectLanes();
+	        		}
+	        	}
+	        } catch (InterruptedException e) {
+	        	// When will this get triggered?
+	            logger.info("Subscriber thread was awoken.");
+	        }
+
+		} catch (Exception e) {
+			if (e instanceof TransportException){
+				logger.error("A TransportException occurred. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+
+			}
+			else {
+				logger.error("An exception occurred. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+
+			}
+		}
+	}
+	
+	/**
+	 * Start the lanes, connecting each one's own transport. A lane that can't be connected shares this subscriber's instead.
+	 */
+	private void startReflectLanes(int lanes, String myNodeName, String myNodeGroupName, boolean fastReflect) {
+		
+		ReflectLane[] reflectLanes = new ReflectLane[lanes];		// Only made visible once they are all there, for metrics scrapes
+		reflectedAtLastReport = new long[lanes];
+		WaitStrategy waitStrategy = WaitStrategy.forName(parameters.get("results_wait_strategy").toString());
+		
+		for (int lane = 0; lane < lanes; lane++)
+		{
+			Transport laneTransport = transport.createConnection();
+			if (laneTransport != transport && !laneTransport.connect())
+			{
+				logger.warn("Reflect lane " + lane + " could not connect a " + transport.getName() + " transport of its own, so will share the main one.");
+				laneTransport = transport;
+			}
+			reflectLanes[lane] = new ReflectLane(lane, laneTransport, parameters.get("reflect_topic").toString(), myNodeName, myNodeGroupName, fastReflect, waitStrategy);
+			Thread laneThread = new Thread(reflectLanes[lane], "ReflectLane-" + lane);
+			laneThread.setDaemon(true);
+			laneThread.start();
+		}
+		this.reflectLanes = reflectLanes;
+		logger.info("Reflecting pings over " + lanes + " lanes, split by pinger name.");
+	}
+	
+	/**
+	 * Log how each lane is doing: its share of the pings, how backed up it has got, anything dropped, and how long pings waited for it.
+	 */
+	private void reportReflectLanes() {
+		
+		long[] reflectedSinceLastReport = new long[reflectLanes.length];
+		long totalReflected = 0;
+		for (int lane = 0; lane < reflectLanes.length; lane++)
+		{
+			long reflected = reflectLanes[lane].getReflected();
+			reflectedSinceLastReport[lane] = reflected - reflectedAtLastReport[lane];
+			reflectedAtLastReport[lane] = reflected;
+			totalReflected += reflectedSinceLastReport[lane];
+		}
+		
+		for (ReflectLane lane : reflectLanes)
+		{
+			LatencyHistogram queueDelay = lane.getIntervalQueueDelay();
+			long reflected = reflectedSinceLastReport[lane.getLaneIndex()];
+			logger.info("Reflect lane " + lane.getLaneIndex() + ": reflected " + reflected
+					+ (totalReflected > 0 ? " (" + (reflected * 100 / totalReflected) + "%)" : "")
+					+ ", depth " + lane.size() + ", high water mark " + lane.getHighWaterMark() + ", dropped " + lane.getDrops()
+					+ ". Queueing delay (us) p50: " + queueDelay.getValueAtPercentile(50) / 1000 + ", p99: " + queueDelay.getValueAtPercentile(99) / 1000
+					+ ", max: " + queueDelay.getMaxValue() / 1000);
+		}
+	}
+	
+	@Override
+	public void writeMetrics(MetricsServer.Writer writer) {
+		
+		String node = parameters.get("node_name").toString();
+		writer.counter("messages_received", "Messages received by the subscriber, pings and pongs.", messagesReceived.get(), "node", node);
+		writer.counter("messages_discarded", "Messages received that were neither reflected nor used for results: pongs to other pingers, or not understood.", messagesDiscarded.get(), "node", node);
+		
+		long reflected = pongsReflected.get();
+		ReflectLane[] lanes = reflectLanes;
+		if (lanes != null)
+		{
+			for (ReflectLane lane : lanes)
+			{
+				String laneIndex = Integer.toString(lane.getLaneIndex());
+				reflected += lane.getReflected();
+				writer.counter("reflect_lane_drops", "Pings dropped as their reflect lane was full.", lane.getDrops(), "node", node, "lane", laneIndex);
+				writer.gauge("reflect_lane_depth", "Pings waiting for their reflect lane.", lane.size(), "node", node, "lane", laneIndex);
+			}
+		}
+		writer.counter("pongs_reflected", "Pings reflected back to their pinger.", reflected, "node", node);
+	}
+	
+	private void sendReflect(TransportSender sender, PingPongMessage reflectMessage, PingPongCodec codec, TransportTopic reflectTopic) {
+		
+		try {
+			codec.sendPong(reflectMessage, sender, reflectTopic);
+			pongsReflected.lazySet(pongsReflected.get() + 1);
+		} catch (Exception e) {
+			handleReflectException(logger, e);
+		}
+	}
+	
+	private void sendReflect(TransportSender sender, byte[] pong, TransportTopic reflectTopic) {
+		
+		try {
+			sender.sendBytes(reflectTopic, pong, pong.length);
+			pongsReflected.lazySet(pongsReflected.get() + 1);
+		} catch (Exception e) {
+			handleReflectException(logger, e);
+		}
+	}
+	
+	static void handleReflectException(Logger logger, Exception e) {
+		
+		if (e instanceof TransportException && ((TransportException) e).isConnectionLost()){
+			// This one is quite serious, means there was an issue on the underlying connection.
+			logger.error("A TransportException occurred with the connection lost. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+
+			// May as well terminate and start again
+			logger.error("*** Program will terminate now. ***");
+			System.exit(-1);
+		}
+		else if (e instanceof TransportException)
+		{
+			logger.error("A TransportException occurred on reflect message send. Exception message ->" + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+
+		}
+		else
+		{
+			logger.error("An Exception occurred during reflect message send. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+	}
+}
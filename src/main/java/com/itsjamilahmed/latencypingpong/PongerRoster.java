@@ -0,0 +1,182 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.json.simple.JSONObject;
+
+/**
+ * The pongers this node expects answers from, so a summary can say who didn't answer rather than just leaving them out.
+ *
+ * Pongers are learned from their first pong. Others can be listed up front as expected, in which case they are
+ * reported as missing even if they have never answered. A learned ponger that hasn't answered for longer than the TTL
+ * is taken off the roster, along with its per-pair results state, so that state stays bounded as nodes come and go.
+ * Expected pongers are never taken off.
+ *
+ * Keyed by the same NodePair key as the per-pair results. Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class PongerRoster {
+
+	private static class RosterEntry {
+
+		private final long pairKey;
+		private final String nodeName;
+		private final String nodeGroupName;
+		private final boolean expected;			// Listed up front, never evicted
+		private long lastSeenNs = -1;
+		private long lastSeenMs = -1;
+		private long consecutiveMisses = 0;
+
+		RosterEntry(long pairKey, boolean expected) {
+
+			this.pairKey = pairKey;
+			this.nodeName = NodeNameInterner.onlyInstance().getName(NodePair.pongerNodeId(pairKey));
+			this.nodeGroupName = NodeNameInterner.onlyInstance().getName(NodePair.pongerNodeGroupId(pairKey));
+			this.expected = expected;
+		}
+	}
+
+	private Logger logger = Logger.getLogger(PongerRoster.class);	// A log4j logger to handle all output
+
+	private final int myNodeId;
+	private final long ttlNs;											// 0 to never evict
+	private final LongHashMap<RosterEntry> entries = new LongHashMap<RosterEntry>();
+	private final DateFormat dateFormatShort = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+
+	/**
+	 * @param expectedPongers Comma separated list of group:node names expected to answer, or null for none
+	 * @param ttlNs How long a learned ponger can stay silent before being evicted. 0 to never evict.
+	 */
+	public PongerRoster(int myNodeId, String expectedPongers, long ttlNs) {
+
+		this.myNodeId = myNodeId;
+		this.ttlNs = ttlNs;
+
+		if (expectedPongers == null) {
+			return;
+		}
+		for (String ponger : expectedPongers.split(",")) {
+			ponger = ponger.trim();
+			if (ponger.isEmpty()) {
+				continue;
+			}
+			int separator = ponger.indexOf(':');
+			if (separator <= 0 || separator == ponger.length() - 1) {
+				logger.warn("Ignoring expected ponger '" + ponger + "'. It should be in the form <node-group>:<node-name>.");
+				continue;
+			}
+			int groupId = NodeNameInterner.onlyInstance().intern(ponger.substring(0, separator));
+			int nodeId = NodeNameInterner.onlyInstance().intern(ponger.substring(separator + 1));
+			long pairKey = NodePair.key(myNodeId, groupId, nodeId);
+			entries.put(pairKey, new RosterEntry(pairKey, true));
+		}
+		logger.info("Expecting pongs from " + entries.size() + " listed nodes.");
+	}
+
+	/**
+	 * Note that a ponger has answered, adding it to the roster if this is the first time.
+	 */
+	public void seen(int pongerNodeGroupId, int pongerNodeId, long nowNs, long nowMs) {
+
+		long pairKey = NodePair.key(myNodeId, pongerNodeGroupId, pongerNodeId);
+		RosterEntry entry = entries.get(pairKey);
+		if (entry == null) {
+			entry = new RosterEntry(pairKey, false);
+			entries.put(pairKey, entry);
+			logger.info("Ponger " + entry.nodeGroupName + ":" + entry.nodeName + " added to the roster.");
+		}
+		entry.lastSeenNs = nowNs;
+		entry.lastSeenMs = nowMs;
+	}
+
+	/**
+	 * Count who on the roster didn't answer a ping that has just been closed.
+	 *
+	 * @param ping Who did answer, in its rankings
+	 */
+	public void pingClosed(InFlightPings.InFlightPing ping) {
+
+		for (int i = 0; i < entries.capacity(); i++) {
+			RosterEntry entry = entries.valueAt(i);
+			if (entry == null) {
+				continue;
+			}
+
+			GroupRanking ranking = ping.getRanking(NodePair.pongerNodeGroupId(entry.pairKey));
+			if (ranking != null && ranking.contains(NodePair.pongerNodeId(entry.pairKey))) {
+				entry.consecutiveMisses = 0;
+			} else {
+				entry.consecutiveMisses++;
+			}
+		}
+	}
+
+	/**
+	 * Who on the roster didn't answer the latest ping closed, for a summary.
+	 *
+	 * @return a map of group name to a JSONObject of each missing node name to its consecutive misses and when it was last seen
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, JSONObject> summariseMissing() {
+
+		Map<String, JSONObject> missingPerNodeGroup = new HashMap<String, JSONObject>();
+
+		for (int i = 0; i < entries.capacity(); i++) {
+			RosterEntry entry = entries.valueAt(i);
+			if (entry == null || entry.consecutiveMisses == 0) {
+				continue;
+			}
+
+			JSONObject missingNode = new JSONObject();
+			missingNode.put("consecutiveMisses", entry.consecutiveMisses);
+			missingNode.put("lastSeen", entry.lastSeenMs != -1 ? dateFormatShort.format(new Date(entry.lastSeenMs)) : "");
+
+			JSONObject groupMissing = missingPerNodeGroup.get(entry.nodeGroupName);
+			if (groupMissing == null) {
+				groupMissing = new JSONObject();
+				missingPerNodeGroup.put(entry.nodeGroupName, groupMissing);
+			}
+			groupMissing.put(entry.nodeName, missingNode);
+		}
+		return missingPerNodeGroup;
+	}
+
+	/**
+	 * Take any learned pongers that have been silent for longer than the TTL off the roster, and drop their per-pair results state too.
+	 *
+	 * @return how many were evicted
+	 */
+	public int evictExpired(long nowNs, LongHashMap<PairLatencyStats> pairStats) {
+
+		if (ttlNs == 0) {
+			return 0;
+		}
+
+		int evicted = 0;
+		int i = 0;
+		while (i < entries.capacity()) {
+			RosterEntry entry = entries.valueAt(i);
+			if (entry != null && !entry.expected && nowNs - entry.lastSeenNs > ttlNs) {
+				// Removing shifts a later entry back into this slot, so look at the same slot again
+				entries.remove(entry.pairKey);
+				pairStats.remove(entry.pairKey);
+				logger.info("Ponger " + entry.nodeGroupName + ":" + entry.nodeName + " removed from the roster after " + entry.consecutiveMisses + " missed pings.");
+				evicted++;
+				continue;
+			}
+			i++;
+		}
+		return evicted;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,45 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The round-trip times of each pair as measured straight over sockets, for the main ping-pong to compare its own with.
+ *
+ * Written by the results thread of the baseline ping-pong at each of its summaries, and read by the main results thread at each of its own.
+ * Both ping-pongs run in the one program with the same node names, so the pairs have the same NodePair keys in each.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class RawRttBaseline {
+
+	private final ConcurrentHashMap<Long, AtomicLong> medianRttNs = new ConcurrentHashMap<Long, AtomicLong>();
+
+	/**
+	 * Note the median round-trip time of the pair over the baseline's latest summary interval.
+	 */
+	public void update(long pairKey, long rttNs) {
+
+		AtomicLong median = medianRttNs.get(pairKey);
+		if (median == null)
+		{
+			median = new AtomicLong();
+			AtomicLong existing = medianRttNs.putIfAbsent(pairKey, median);
+			if (existing != null)
+			{
+				median = existing;
+			}
+		}
+		median.lazySet(rttNs);
+	}
+
+	/**
+	 * @return the latest median round-trip time of the pair in nanoseconds, or -1 if the baseline hasn't measured it
+	 */
+	public long getMedianRttNs(long pairKey) {
+
+		AtomicLong median = medianRttNs.get(pairKey);
+		return median != null ? median.get() : -1;
+	}
+}
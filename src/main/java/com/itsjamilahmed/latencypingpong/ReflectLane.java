@@ -0,0 +1,273 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One of the lanes that a ponger's reflect work is split over (see --reflect-lanes), each on its own thread and connection.
+ *
+ * The subscriber's callback thread hands each ping to the lane of its pinger, chosen by a hash of the pinger's name, and goes
+ * straight back for the next message. The lane decodes the ping and sends its pong with a producer of its own. As every ping
+ * of a pinger goes through the same lane in the order it arrived, no pinger's pongs are ever reordered by this.
+ *
+ * The hand-over is a single-producer, single-consumer ring in the manner of the ResultsRing. The ping is copied into a slot
+ * (a text ping just has its String kept) and the lane works on the copy. If the lane is full the ping is dropped and counted:
+ * reflecting it from the callback thread instead would overtake the pings already queued for the lane.
+ *
+ * Keeps count of the pings reflected, drops and the highest depth seen, and the time each ping waited for the lane.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class ReflectLane implements Runnable {
+
+	private Logger logger = Logger.getLogger(ReflectLane.class);	// A log4j logger to handle all output
+
+	private static final int capacity = 4096;						// Pings waiting per lane. A power of two
+	private static final int mask = capacity - 1;
+
+	private final int laneIndex;
+	private final Transport transport;								// The lane's own connection, or the shared one if the transport can only have one
+	private final String reflectTopicName;
+	private final boolean fastReflect;
+	private final WaitStrategy waitStrategy;
+
+	// The decoding and sending, done on the lane's own thread only
+	private final JsonPingPongCodec jsonCodec = new JsonPingPongCodec();
+	private final BinaryPingPongCodec binaryCodec = new BinaryPingPongCodec();
+	private final byte[] reflectTrailer;
+	private final PingPongMessage pingMessage;
+
+	// The slots. Exactly one of text or data is in use in each
+	private final String[] texts = new String[capacity];
+	private final byte[][] data = new byte[capacity][];
+	private final int[] lengths = new int[capacity];
+	private final long[] receiveTimesNs = new long[capacity];		// When the ping arrived, by the WallClock, for its pong
+	private final long[] offerTimesNs = new long[capacity];			// When it was handed to the lane, by System.nanoTime(), for the queueing delay
+
+	// Written by the producer (the subscriber's callback thread) only
+	private final AtomicLong tail = new AtomicLong(0);
+	private long producerIndex = 0;
+	private long cachedHead = 0;
+	private final AtomicLong drops = new AtomicLong(0);
+	private volatile int highWaterMark = 0;
+
+	// Written by the consumer (the lane's thread) only
+	private final AtomicLong head = new AtomicLong(0);
+	private long consumerIndex = 0;
+	private long cachedTail = 0;
+	private final AtomicLong reflected = new AtomicLong(0);
+	private final LatencyRecorder queueDelayRecorder = new LatencyRecorder();
+
+	public ReflectLane(int laneIndex, Transport transport, String reflectTopicName, String nodeName, String nodeGroupName,
+			boolean fastReflect, WaitStrategy waitStrategy) {
+
+		this.laneIndex = laneIndex;
+		this.transport = transport;
+		this.reflectTopicName = reflectTopicName;
+		this.fastReflect = fastReflect;
+		this.waitStrategy = waitStrategy;
+		this.reflectTrailer = BinaryPingPongCodec.createTrailer(nodeName, nodeGroupName);
+		this.pingMessage = new PingPongMessage(nodeName, nodeGroupName);
+	}
+
+	/**
+	 * The lane for a pinger, from a hash of its name that is the same on every node and every run.
+	 * Names are hashed a character at a time here, and a byte at a time from a binary ping, which agree for ASCII names.
+	 */
+	public static int laneFor(CharSequence pingerName, int start, int end, int lanes) {
+
+		int hash = 0x811C9DC5;								// FNV-1a
+		for (int i = start; i < end; i++)
+		{
+			hash = (hash ^ pingerName.charAt(i)) * 0x01000193;
+		}
+		return (hash & Integer.MAX_VALUE) % lanes;
+	}
+
+	/**
+	 * As above, for a name in a NodeNameInterner slot.
+	 */
+	public static int laneFor(byte[] slot, int offset, int lanes) {
+
+		int hash = 0x811C9DC5;
+		int length = Math.min(slot[offset] & 0xFF, NodeNameInterner.MAX_NAME_BYTES);
+		for (int i = offset + 1; i <= offset + length; i++)
+		{
+			hash = (hash ^ (slot[i] & 0xFF)) * 0x01000193;
+		}
+		return (hash & Integer.MAX_VALUE) % lanes;
+	}
+
+	/**
+	 * Producer: queue a text ping for reflecting.
+	 *
+	 * @return false if the lane was full, so it was dropped
+	 */
+	public boolean offer(String text, long receiveNs) {
+
+		int index = this.claim();
+		if (index < 0)
+		{
+			return false;
+		}
+		texts[index] = text;
+		return this.publish(index, receiveNs);
+	}
+
+	/**
+	 * Producer: queue a binary ping for reflecting. It is copied, so the array can be reused as soon as this returns.
+	 *
+	 * @return false if the lane was full, so it was dropped
+	 */
+	public boolean offer(byte[] ping, int length, long receiveNs) {
+
+		int index = this.claim();
+		if (index < 0)
+		{
+			return false;
+		}
+		if (data[index] == null || data[index].length < length)
+		{
+			data[index] = new byte[Math.max(length, BinaryPingPongCodec.BODY_LENGTH)];		// Once per slot, unless larger pings start arriving
+		}
+		System.arraycopy(ping, 0, data[index], 0, length);
+		lengths[index] = length;
+		return this.publish(index, receiveNs);
+	}
+
+	private int claim() {
+
+		if (producerIndex - cachedHead >= capacity)
+		{
+			cachedHead = head.get();
+			if (producerIndex - cachedHead >= capacity)
+			{
+				drops.lazySet(drops.get() + 1);
+				return -1;
+			}
+		}
+		return (int) producerIndex & mask;
+	}
+
+	private boolean publish(int index, long receiveNs) {
+
+		receiveTimesNs[index] = receiveNs;
+		offerTimesNs[index] = System.nanoTime();
+		producerIndex++;
+		tail.lazySet(producerIndex);
+
+		int depth = (int) (producerIndex - head.get());		// Not the cached head, which is only brought up to date when the lane looks full
+		if (depth > highWaterMark)
+		{
+			highWaterMark = depth;
+		}
+		return true;
+	}
+
+	@Override
+	public void run() {
+
+		TransportSender sender;
+		TransportTopic reflectTopic;
+		try {
+			sender = transport.createSender();
+			reflectTopic = transport.createTopic(reflectTopicName);
+		} catch (TransportException e) {
+			logger.error("Reflect lane " + laneIndex + " could not create a sender, so its pings won't be reflected. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+			return;
+		}
+
+		while (true)
+		{
+			while (consumerIndex >= cachedTail)
+			{
+				cachedTail = tail.get();
+				if (consumerIndex >= cachedTail)
+				{
+					waitStrategy.idle();
+				}
+			}
+
+			int index = (int) consumerIndex & mask;
+			queueDelayRecorder.record(System.nanoTime() - offerTimesNs[index]);
+			try {
+				this.reflect(index, sender, reflectTopic);
+			} catch (Exception e) {
+				PingSubscriber.handleReflectException(logger, e);
+			}
+
+			texts[index] = null;
+			consumerIndex++;
+			head.lazySet(consumerIndex);
+		}
+	}
+
+	private void reflect(int index, TransportSender sender, TransportTopic reflectTopic) throws TransportException {
+
+		long receiveNs = receiveTimesNs[index];
+
+		if (texts[index] != null)
+		{
+			pingMessage.reset();
+			if (jsonCodec.read(texts[index], pingMessage))
+			{
+				pingMessage.stampReflectReceive(receiveNs);
+				jsonCodec.sendPong(pingMessage, sender, reflectTopic);
+				reflected.lazySet(reflected.get() + 1);
+			}
+			return;
+		}
+
+		if (fastReflect)
+		{
+			byte[] pong = binaryCodec.fastReflect(data[index], lengths[index], reflectTrailer, receiveNs);
+			if (pong != null)
+			{
+				sender.sendBytes(reflectTopic, pong, pong.length);
+				reflected.lazySet(reflected.get() + 1);
+				return;
+			}
+		}
+
+		pingMessage.reset();
+		if (binaryCodec.read(data[index], lengths[index], pingMessage))
+		{
+			pingMessage.stampReflectReceive(receiveNs);
+			binaryCodec.sendPong(pingMessage, sender, reflectTopic);
+			reflected.lazySet(reflected.get() + 1);
+		}
+	}
+
+	public int getLaneIndex() {
+		return laneIndex;
+	}
+
+	/**
+	 * Approximate number of pings waiting to be reflected.
+	 */
+	public int size() {
+		return (int) Math.max(tail.get() - head.get(), 0);
+	}
+
+	public long getReflected() {
+		return reflected.get();
+	}
+
+	public long getDrops() {
+		return drops.get();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * How long pings waited for the lane, in nanoseconds, since the previous call. Valid until the next call.
+	 */
+	public LatencyHistogram getIntervalQueueDelay() {
+		return queueDelayRecorder.getIntervalHistogram();
+	}
+}
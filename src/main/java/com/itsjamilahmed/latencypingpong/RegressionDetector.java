@@ -0,0 +1,213 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Spots when the round-trip time or loss of one pair gets worse than it has been, and when it recovers, for the alerts (see --alerts).
+ *
+ * The first pings of the pair are taken as its baseline: the mean and deviation of its round-trip time, and its loss rate.
+ * After that, each pong is checked with a one-sided CUSUM test (Page's cumulative sum): how far each round-trip time is
+ * above the baseline, less an allowance of one deviation, is added up, and the sum is floored at zero. Ordinary noise keeps
+ * it near zero, while a lasting rise builds it up until it crosses the threshold, however small the rise. (A single outlier, such as a pause
+ * for garbage collection, is not enough.) Once raised, a
+ * second sum of how far the round-trip times are back below that line decides when it has cleared. Loss works the same way,
+ * with each ping counted as 1 if lost (or its pong too late) and 0 if not.
+ *
+ * The baseline goes on following slow drift, but only while no alert is raised, so a regression is not learned as normal.
+ *
+ * A handful of numbers per pair, and the same few sums for every pong, so there can be as many pairs as needed.
+ * Only ever used from the results thread.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class RegressionDetector {
+
+	// What recordRtt() and recordDelivery() can return
+	public static final int NONE = 0;
+	public static final int RTT_RAISED = 1;
+	public static final int RTT_CLEARED = 2;
+	public static final int LOSS_RAISED = 3;
+	public static final int LOSS_CLEARED = 4;
+
+	private static final int learningPings = 100;						// How many pings the first baseline is taken from
+	private static final double baselineWeight = 1.0 / 1024;			// Of each new ping in the baseline, once learned
+	private static final double recentWeight = 1.0 / 16;				// Of each new ping in the recent values reported in alerts
+	private static final double rttAllowance = 1.0;					// In deviations, how far above the baseline is still normal
+	private static final double lossThreshold = 5;						// Pings lost beyond the allowance to raise (or clear) a loss alert
+	private static final double minDeviationFraction = 0.05;			// The deviation is taken as at least this much of the mean,
+	private static final double minDeviationNs = 10000;					// and at least this, so a very steady path doesn't alert on the slightest change
+
+	private final double rttThreshold;									// In deviations
+	private final double lossAllowance;									// Of the loss rate above the baseline, half the rise to alert on
+
+	private long rttSamples = 0;
+	private double baselineRttNs = 0;
+	private double baselineRttVariance = 0;
+	private double recentRttNs = 0;
+	private double rttRaisingSum = 0;
+	private double rttClearingSum = 0;
+	private boolean rttRaised = false;
+
+	private long lossSamples = 0;
+	private double baselineLoss = 0;
+	private double recentLoss = 0;
+	private double lossRaisingSum = 0;
+	private double lossClearingSum = 0;
+	private boolean lossRaised = false;
+
+	/**
+	 * @param rttThreshold How many deviations the round-trip times must add up to above the allowance to raise an alert
+	 * @param lossRisePercent How much the loss must rise above the baseline, in percent, to raise an alert
+	 */
+	public RegressionDetector(double rttThreshold, double lossRisePercent) {
+
+		this.rttThreshold = rttThreshold;
+		this.lossAllowance = lossRisePercent / 100.0 / 2;
+	}
+
+	/**
+	 * @return NONE, RTT_RAISED or RTT_CLEARED
+	 */
+	public int recordRtt(long rttNs) {
+
+		rttSamples++;
+		if (rttSamples <= learningPings)
+		{
+			// Still learning, the running mean and variance of everything so far
+			double delta = rttNs - baselineRttNs;
+			baselineRttNs += delta / rttSamples;
+			baselineRttVariance += (delta * (rttNs - baselineRttNs) - baselineRttVariance) / rttSamples;
+			recentRttNs = baselineRttNs;
+			return NONE;
+		}
+
+		recentRttNs += (rttNs - recentRttNs) * recentWeight;
+		double deviation = this.getBaselineRttDeviationNs();
+		double normalRttNs = baselineRttNs + rttAllowance * deviation;
+
+		if (!rttRaised)
+		{
+			// Each pong counts for no more than a third of the threshold, so one outlier on its own can't raise an alert,
+			// or throw out the baseline
+			double clippedRttNs = Math.min(rttNs, normalRttNs + rttThreshold * deviation / 3);
+			rttRaisingSum = Math.max(0, rttRaisingSum + clippedRttNs - normalRttNs);
+			if (rttRaisingSum > rttThreshold * deviation)
+			{
+				rttRaised = true;
+				rttRaisingSum = 0;
+				return RTT_RAISED;
+			}
+
+			double delta = clippedRttNs - baselineRttNs;
+			baselineRttNs += delta * baselineWeight;
+			baselineRttVariance += (delta * delta - baselineRttVariance) * baselineWeight;
+		}
+		else
+		{
+			rttClearingSum = Math.max(0, rttClearingSum + normalRttNs - rttNs);
+			if (rttClearingSum > rttThreshold * deviation)
+			{
+				rttRaised = false;
+				rttClearingSum = 0;
+				return RTT_CLEARED;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Note the pings decided on since the last call: how many were lost, and then whether the latest arrived in time.
+	 *
+	 * @return NONE, LOSS_RAISED or LOSS_CLEARED
+	 */
+	public int recordDelivery(long lost, boolean received) {
+
+		int result = NONE;
+		if (lost > 0)
+		{
+			result = this.recordLoss(lost, 1);
+		}
+		if (received)
+		{
+			int receivedResult = this.recordLoss(1, 0);
+			if (result == NONE)
+			{
+				result = receivedResult;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The same outcome for a number of pings at once. All add to the sums the same way, so it is the same as one at a time.
+	 */
+	private int recordLoss(long pings, int outcome) {
+
+		if (lossSamples < learningPings)
+		{
+			long learned = Math.min(pings, learningPings - lossSamples);
+			lossSamples += learned;
+			baselineLoss += (outcome - baselineLoss) * learned / lossSamples;
+			recentLoss = baselineLoss;
+			pings -= learned;
+			if (pings == 0)
+			{
+				return NONE;
+			}
+		}
+		lossSamples += pings;
+
+		recentLoss += (outcome - recentLoss) * (1 - Math.pow(1 - recentWeight, pings));
+		double normalLoss = baselineLoss + lossAllowance;
+
+		if (!lossRaised)
+		{
+			lossRaisingSum = Math.max(0, lossRaisingSum + pings * (outcome - normalLoss));
+			if (lossRaisingSum > lossThreshold)
+			{
+				lossRaised = true;
+				lossRaisingSum = 0;
+				return LOSS_RAISED;
+			}
+			baselineLoss += (outcome - baselineLoss) * (1 - Math.pow(1 - baselineWeight, pings));
+		}
+		else
+		{
+			lossClearingSum = Math.max(0, lossClearingSum + pings * (normalLoss - outcome));
+			if (lossClearingSum > lossThreshold)
+			{
+				lossRaised = false;
+				lossClearingSum = 0;
+				return LOSS_CLEARED;
+			}
+		}
+		return NONE;
+	}
+
+	private double getBaselineRttDeviationNs() {
+		return Math.max(Math.sqrt(baselineRttVariance), Math.max(baselineRttNs * minDeviationFraction, minDeviationNs));
+	}
+
+	public long getBaselineRttNs() {
+		return (long) baselineRttNs;
+	}
+
+	public long getRecentRttNs() {
+		return (long) recentRttNs;
+	}
+
+	public double getBaselineLossPercent() {
+		return baselineLoss * 100;
+	}
+
+	public double getRecentLossPercent() {
+		return recentLoss * 100;
+	}
+
+	public boolean isRttRaised() {
+		return rttRaised;
+	}
+
+	public boolean isLossRaised() {
+		return lossRaised;
+	}
+}
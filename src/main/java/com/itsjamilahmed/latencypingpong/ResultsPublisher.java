@@ -0,0 +1,1121 @@
+/**
+ * 
+ */
+package com.itsjamilahmed.latencypingpong;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * This class will create a Results Publisher
+ * 
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class ResultsPublisher implements Runnable, MetricsServer.MetricsSource {
+
+	private Logger logger = Logger.getLogger(ResultsPublisher.class);	// A log4j logger to handle all output
+	private final HotPathLog hotPathLog = new HotPathLog(logger);		// For the results thread, which must not wait on the appenders
+
+	private Map<String,Object> parameters;
+	private Transport transport;
+	private TransportSender sender;
+	private ResultsRing resultsRing;									// The ring of final messages to calculate latency from
+	private SentPings sentPings;										// Each ping as it is sent, to open it whether anyone answers or not
+	private final long ringReportIntervalNs = 10L * 1000 * 1000 * 1000;	// How often to log how the hand-over from the subscriber is doing
+	private LongHashMap<PairLatencyStats> pairStats = new LongHashMap<PairLatencyStats>();	// Latency histograms etc. per (pinger, group, ponger), keyed by NodePair
+	private InFlightPings inFlightPings;								// Pings still collecting pongs, each closed off and summarised at its deadline
+	private long pingTimeoutNs;											// How long after sending a ping its pongs are accepted
+	private long pingsClosedEarly = 0;									// Because too many were in flight at once
+	private long summaryIntervalNs;										// How often to publish a summary of the pings closed since the last. 0 for one per ping
+	private long periodNs;												// How often to publish the percentiles etc. recorded since the last. The summary interval, else the ping interval
+	private long periodStartMs;											// When the current period started, by the wall clock
+	private InFlightPings.InFlightPing lastClosedPing = null;			// The latest ping closed since the last summary, for its rankings
+	private long pingsClosedSinceSummary = 0;
+	private PongerRoster roster;										// Who is expected to answer, to report who didn't
+	private RawRttBaseline rawRttBaseline;								// Round-trip times straight over sockets, if running with a baseline
+	private boolean recordsRawRttBaseline;								// This is the baseline ping-pong, so records to it rather than publishing
+	private SessionScaling sessionScaling;								// Latency across all sessions, if this is one of several (see --sessions)
+	private int sessionIndex;
+	private SampleJournal journal;										// Every pong, to disk, if running with --journal
+	private final DateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z");	// Of rollups, alerts and route changes
+	private final DateFormat summaryTimestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");	// Of summaries, when their ping was sent
+	private boolean rollupsEnabled;										// Keeping each pair's rolling windows, to publish rollups of (see --rollups)
+	private long rollupStep = 0;										// How many times the windows have advanced
+	private boolean alertsEnabled;										// Watching each pair for its round-trip time or loss getting worse (see --alerts)
+	private boolean routesEnabled;										// Recommending the best ponger of each group to route to (see --routes)
+	private LongHashMap<RouteSelector> routeSelectors = new LongHashMap<RouteSelector>();	// Per group, keyed by its interned id
+	private int routePercentile;										// Of each ponger's round-trip times over the last minute, to compare them by
+	private double routeMargin;
+	private long routeMinDwellNs;
+	private boolean meshEnabled;										// Sending this node's row of the full mesh matrix every step (see --mesh)
+	private byte[] meshRow = new byte[MeshMatrix.rowLength(8)];			// Encoded into, grown as pongers are added
+	
+	// For metrics scrapes. Written by the results thread only
+	private final CopyOnWriteArrayList<PairLatencyStats> metricsPairs = new CopyOnWriteArrayList<PairLatencyStats>();	// The same pairs as pairStats
+	private final AtomicLong pongsReceived = new AtomicLong(0);
+	private final AtomicLong duplicatePongs = new AtomicLong(0);
+	private final AtomicLong timedOutPongs = new AtomicLong(0);
+	private final AtomicLong inFlightPingCount = new AtomicLong(0);
+	
+	private TransportTopic resultsTopic;
+	private TransportTopic summaryTopic;
+	private TransportTopic[] rollupTopics;								// One per window, in the order of PairRollups.WINDOW_NAMES
+	private TransportTopic alertTopic;
+	private TransportTopic routeTopic;
+	private TransportTopic meshRowTopic;
+	private int myNodeId;
+	
+	private static final double[] summaryPercentiles = { 50, 90, 99, 99.9 };
+	private static final String[] summaryPercentileNames = { "p50", "p90", "p99", "p99.9" };
+	
+	
+	public ResultsPublisher(Map<String,Object> parameters, Transport transport, ResultsRing resultsRing, SentPings sentPings) {
+
+		this.parameters = parameters;
+		this.transport = transport;	// This class will be created with a reference to an existing connected transport
+									// since that is shared by all publishing threads.
+
+		this.resultsRing = resultsRing;		// The ring to get messages for latency calculations and summarising. This class is its only consumer.
+		this.sentPings = sentPings;			// And of this one, of the pings sent
+		this.inFlightPings = new InFlightPings((int) parameters.get("max_in_flight_pings"));
+		this.pingTimeoutNs = (int) parameters.get("ping_timeout") * 1000000L;
+		this.summaryIntervalNs = (int) parameters.get("summary_interval") * 1000000L;
+		this.periodNs = summaryIntervalNs != 0 ? summaryIntervalNs : (int) parameters.get("ping_interval") * 1000000L;
+		Object expectedPongers = parameters.get("expected_pongers");
+		this.roster = new PongerRoster(NodeNameInterner.onlyInstance().intern(parameters.get("node_name").toString()),
+				expectedPongers != null ? expectedPongers.toString() : null, (int) parameters.get("ponger_ttl") * 1000000000L);
+		this.rawRttBaseline = (RawRttBaseline) parameters.get("raw_rtt_baseline");
+		this.recordsRawRttBaseline = Boolean.TRUE.equals(parameters.get("records_raw_rtt_baseline"));
+		if (parameters.get("journal") != null && !recordsRawRttBaseline)
+		{
+			try {
+				this.journal = new SampleJournal(parameters.get("journal").toString(), parameters.get("node_name").toString(),
+						(int) parameters.get("journal_segment_size") * 1024L * 1024L, (int) parameters.get("journal_segments"));
+			} catch (IOException e) {
+				logger.error("Could not start the sample journal in " + parameters.get("journal") + ", so will run without it. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+			}
+		}
+		this.rollupsEnabled = Boolean.TRUE.equals(parameters.get("rollups")) && !recordsRawRttBaseline;
+		this.alertsEnabled = Boolean.TRUE.equals(parameters.get("alerts")) && !recordsRawRttBaseline;
+		this.routesEnabled = Boolean.TRUE.equals(parameters.get("routes")) && !recordsRawRttBaseline;
+		this.meshEnabled = Boolean.TRUE.equals(parameters.get("mesh")) && !recordsRawRttBaseline;
+		if (routesEnabled)
+		{
+			this.routePercentile = (int) parameters.get("route_percentile");
+			this.routeMargin = (int) parameters.get("route_margin") / 100.0;
+			this.routeMinDwellNs = (int) parameters.get("route_min_dwell") * 1000000000L;
+		}
+		this.sessionScaling = (SessionScaling) parameters.get("session_scaling");
+		if (sessionScaling != null)
+		{
+			this.sessionIndex = (int) parameters.get("session_index");
+		}
+
+	}
+	
+	private PairLatencyStats getPairStats(int pingerNodeId, PingPongMessage message) {
+		
+		long pairKey = NodePair.key(pingerNodeId, message.getReflectNodeGroupId(), message.getReflectNodeId());
+		PairLatencyStats stats = pairStats.get(pairKey);
+		if (stats == null)
+		{
+			stats = new PairLatencyStats(pairKey);
+			if (rollupsEnabled)
+			{
+				stats.enableRollups();
+			}
+			if (routesEnabled)
+			{
+				stats.enableRouteWindow();
+			}
+			if (meshEnabled)
+			{
+				stats.enableMeshWindow();
+			}
+			if (alertsEnabled)
+			{
+				stats.enableRegressionDetector((int) parameters.get("alert_rtt_threshold"), (int) parameters.get("alert_loss_percent"));
+			}
+			pairStats.put(pairKey, stats);
+			metricsPairs.add(stats);
+		}
+		return stats;
+	}
+	
+	/**
+	 * Build the percentiles of every pair's round-trip times since the last period, in a map of group name to a JSONObject of node name to percentiles.
+	 * 
+	 * @param distribution Which of the pair's distributions, one of the PairLatencyStats constants
+	 * @param overRawRttPerNodeGroup If not null, also filled in with how each pair's median compares to the raw socket baseline.
+	 * The baseline ping-pong itself records its medians instead.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, JSONObject> summarisePercentiles(int distribution, Map<String, JSONObject> overRawRttPerNodeGroup) {
+		
+		Map<String, JSONObject> percentilesPerNodeGroup = new HashMap<String, JSONObject>();
+		
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null)
+			{
+				continue;
+			}
+			
+			LatencyHistogram intervalRtt = stats.getIntervalHistogram(distribution);
+			if (intervalRtt.getTotalCount() == 0)
+			{
+				continue;
+			}
+			
+			JSONObject groupPercentiles = percentilesPerNodeGroup.get(stats.getPongerNodeGroupName());
+			if (groupPercentiles == null)
+			{
+				groupPercentiles = new JSONObject();
+				percentilesPerNodeGroup.put(stats.getPongerNodeGroupName(), groupPercentiles);
+			}
+			groupPercentiles.put(stats.getPongerNodeName(), percentilesToJson(intervalRtt));
+			
+			if (overRawRttPerNodeGroup != null && rawRttBaseline != null)
+			{
+				this.compareToRawRttBaseline(stats, intervalRtt.getValueAtPercentile(50), overRawRttPerNodeGroup);
+			}
+		}
+		return percentilesPerNodeGroup;
+	}
+	
+	/**
+	 * Build the percentiles of the round-trip times of padded pings since the last period, split by the size they were padded to.
+	 * In a map of group name to a JSONObject of node name to a JSONObject of size in bytes to percentiles.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, JSONObject> summarisePercentilesBySize() {
+		
+		Map<String, JSONObject> percentilesBySizePerNodeGroup = new HashMap<String, JSONObject>();
+		
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null || stats.getPayloadSizeCount() == 0)
+			{
+				continue;
+			}
+			
+			JSONObject nodePercentilesBySize = new JSONObject();
+			for (int size = 0; size < stats.getPayloadSizeCount(); size++)
+			{
+				LatencyHistogram intervalRtt = stats.getIntervalRttForPayloadSize(size);
+				if (intervalRtt.getTotalCount() != 0)
+				{
+					nodePercentilesBySize.put(String.valueOf(stats.getPayloadSize(size)), percentilesToJson(intervalRtt));
+				}
+			}
+			if (nodePercentilesBySize.isEmpty())
+			{
+				continue;
+			}
+			
+			JSONObject groupPercentilesBySize = percentilesBySizePerNodeGroup.get(stats.getPongerNodeGroupName());
+			if (groupPercentilesBySize == null)
+			{
+				groupPercentilesBySize = new JSONObject();
+				percentilesBySizePerNodeGroup.put(stats.getPongerNodeGroupName(), groupPercentilesBySize);
+			}
+			groupPercentilesBySize.put(stats.getPongerNodeName(), nodePercentilesBySize);
+		}
+		return percentilesBySizePerNodeGroup;
+	}
+	
+	/**
+	 * Build the loss, reordering and duplicate counts of every pair since the last period, in a map of group name to a JSONObject of node name to counts.
+	 * The counts are reset ready for the next period.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, JSONObject> summariseDelivery() {
+		
+		Map<String, JSONObject> deliveryPerNodeGroup = new HashMap<String, JSONObject>();
+		
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null)
+			{
+				continue;
+			}
+			
+			SequenceTracker tracker = stats.getSequenceTracker();
+			if (tracker.getReceived() + tracker.getLost() + tracker.getDuplicates() + tracker.getLate() + tracker.getTimeouts() == 0)
+			{
+				continue;
+			}
+			
+			JSONObject nodeDelivery = new JSONObject();
+			nodeDelivery.put("received", tracker.getReceived());
+			nodeDelivery.put("lost", tracker.getLost());
+			nodeDelivery.put("lossPercent", Float.valueOf(String.format(java.util.Locale.US, "%.3f", tracker.getLossPercent())));
+			nodeDelivery.put("reordered", tracker.getReordered());
+			nodeDelivery.put("duplicates", tracker.getDuplicates());
+			nodeDelivery.put("late", tracker.getLate());
+			nodeDelivery.put("timeouts", tracker.getTimeouts());
+			tracker.resetCounts();
+			
+			JSONObject groupDelivery = deliveryPerNodeGroup.get(stats.getPongerNodeGroupName());
+			if (groupDelivery == null)
+			{
+				groupDelivery = new JSONObject();
+				deliveryPerNodeGroup.put(stats.getPongerNodeGroupName(), groupDelivery);
+			}
+			groupDelivery.put(stats.getPongerNodeName(), nodeDelivery);
+		}
+		return deliveryPerNodeGroup;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void compareToRawRttBaseline(PairLatencyStats stats, long medianRttNs, Map<String, JSONObject> overRawRttPerNodeGroup) {
+		
+		if (recordsRawRttBaseline)
+		{
+			rawRttBaseline.update(stats.getPairKey(), medianRttNs);
+			return;
+		}
+		
+		long rawMedianRttNs = rawRttBaseline.getMedianRttNs(stats.getPairKey());
+		if (rawMedianRttNs == -1)
+		{
+			return;			// Not measured over the sockets (yet)
+		}
+		
+		JSONObject overRawRtt = new JSONObject();
+		overRawRtt.put("rawP50", nanosToMillis(rawMedianRttNs));
+		overRawRtt.put("p50OverRaw", nanosToMillis(medianRttNs - rawMedianRttNs));
+		
+		JSONObject groupOverRawRtt = overRawRttPerNodeGroup.get(stats.getPongerNodeGroupName());
+		if (groupOverRawRtt == null)
+		{
+			groupOverRawRtt = new JSONObject();
+			overRawRttPerNodeGroup.put(stats.getPongerNodeGroupName(), groupOverRawRtt);
+		}
+		groupOverRawRtt.put(stats.getPongerNodeName(), overRawRtt);
+	}
+	
+	@SuppressWarnings("unchecked")
+	static JSONObject percentilesToJson(LatencyHistogram histogram) {
+		
+		JSONObject percentiles = new JSONObject();
+		for (int p = 0; p < summaryPercentiles.length; p++)
+		{
+			percentiles.put(summaryPercentileNames[p], nanosToMillis(histogram.getValueAtPercentile(summaryPercentiles[p])));
+		}
+		percentiles.put("max", nanosToMillis(histogram.getMaxValue()));
+		percentiles.put("count", histogram.getTotalCount());
+		return percentiles;
+	}
+	
+	/**
+	 * Log how the hand-over of messages from the subscriber is doing: how full the ring has got, anything dropped, and how long messages waited in it.
+	 */
+	private void reportRing() {
+		
+		LatencyHistogram handOff = resultsRing.getIntervalHandOffLatency();
+		logger.info("Results queue: capacity " + resultsRing.getCapacity() + ", depth " + resultsRing.size() + ", high water mark " + resultsRing.getHighWaterMark()
+				+ ", dropped " + resultsRing.getDrops() + ". Hand-off latency (us) p50: " + handOff.getValueAtPercentile(50) / 1000
+				+ ", p99: " + handOff.getValueAtPercentile(99) / 1000 + ", max: " + handOff.getMaxValue() / 1000 + ", count: " + handOff.getTotalCount());
+		logger.info("In-flight pings: " + inFlightPings.size() + " open, " + pingsClosedEarly + " closed before their deadline to make room, "
+				+ sentPings.getDrops() + " not handed over by the sender.");
+	}
+	
+	@Override
+	public void writeMetrics(MetricsServer.Writer writer) {
+		
+		String node = parameters.get("node_name").toString();
+		writer.counter("pongs_received", "Pongs received back from the pongers, including duplicates and late ones.", pongsReceived.get(), "node", node);
+		writer.counter("pongs_duplicate", "Pongs ignored as duplicates.", duplicatePongs.get(), "node", node);
+		writer.counter("pongs_timed_out", "Pongs that arrived after their ping had timed out.", timedOutPongs.get(), "node", node);
+		writer.gauge("pings_in_flight", "Pings still collecting pongs.", inFlightPingCount.get(), "node", node);
+		
+		writer.gauge("results_queue_depth", "Pongs waiting for the results thread.", resultsRing.size(), "node", node);
+		writer.gauge("results_queue_capacity", "Size of the queue of pongs for the results thread.", resultsRing.getCapacity(), "node", node);
+		writer.gauge("results_queue_high_water_mark", "Most pongs seen waiting for the results thread at once.", resultsRing.getHighWaterMark(), "node", node);
+		writer.counter("results_queue_drops", "Pongs dropped as the queue for the results thread was full.", resultsRing.getDrops(), "node", node);
+		
+		NodeNameInterner interner = NodeNameInterner.onlyInstance();
+		for (PairLatencyStats stats : metricsPairs)
+		{
+			writer.histogram("rtt_seconds", "Round-trip times of pings to each ponger.", stats.getRttMetrics(),
+					"pinger", interner.getName(NodePair.pingerNodeId(stats.getPairKey())),
+					"ponger_group", stats.getPongerNodeGroupName(), "ponger", stats.getPongerNodeName());
+		}
+	}
+	
+	static Float nanosToMillis(long nanos) {
+		
+		// Same 3 decimal places as the individual rtt results
+		return Float.valueOf(String.format(java.util.Locale.US, "%.3f", nanos / 1000000.0));
+	}
+	
+	@Override
+	public void run() {
+				
+
+			// (1) Get the topics created for publishing the results and summaries 
+			resultsTopic = transport.createTopic(parameters.get("results_topic").toString());
+			summaryTopic = transport.createTopic(parameters.get("summary_topic").toString());
+			
+			
+ 			// (2) Print info message on what the publisher will be doing
+	        logger.info("Publishing results on topic: " + resultsTopic.getName() + " and summaries on topic: " + summaryTopic.getName());
+	        if (rollupsEnabled)
+	        {
+	        	rollupTopics = new TransportTopic[PairRollups.WINDOW_NAMES.length];
+	        	for (int window = 0; window < rollupTopics.length; window++)
+	        	{
+	        		rollupTopics[window] = transport.createTopic(parameters.get("rollup_topic").toString() + "/" + PairRollups.WINDOW_NAMES[window]);
+	        	}
+	        	logger.info("Publishing rollups on topics: " + parameters.get("rollup_topic") + "/{" + String.join(",", PairRollups.WINDOW_NAMES) + "}");
+	        }
+	        if (alertsEnabled)
+	        {
+	        	alertTopic = transport.createTopic(parameters.get("alert_topic").toString());
+	        	logger.info("Publishing alerts on topic: " + alertTopic.getName());
+	        }
+	        if (routesEnabled)
+	        {
+	        	routeTopic = transport.createTopic(parameters.get("route_topic").toString());
+	        	logger.info("Publishing route changes on topic: " + routeTopic.getName());
+	        }
+	        if (meshEnabled)
+	        {
+	        	meshRowTopic = transport.createTopic(parameters.get("mesh_topic").toString() + "/Rows/" + parameters.get("node_group") + "/" + parameters.get("node_name"));
+	        	logger.info("Publishing this node's row of the mesh on topic: " + meshRowTopic.getName());
+	        }
+	        
+	        			
+	        // (3) Create the sender that will be used to send with
+			try 
+			{
+				sender = transport.createSender();
+			}
+			catch (TransportException e)
+			{
+				this.handleException(e);
+				return;
+			}
+			
+			// (4) Get ready to start processing the ring and save the calculated latencies against the ping they belong to
+			PingPongMessage messageToProcess;
+			myNodeId = NodeNameInterner.onlyInstance().intern(parameters.get("node_name").toString());
+
+			long nextRingReportNs = System.nanoTime() + ringReportIntervalNs;
+			long nextWindowStepNs = (rollupsEnabled || routesEnabled || meshEnabled) ? System.nanoTime() + PairRollups.STEP_NS : Long.MAX_VALUE;
+			long nextPeriodNs = System.nanoTime() + periodNs;
+			periodStartMs = System.currentTimeMillis();
+			
+			// Keep looping to check the input ring for messages and process them
+			while (true) 
+			{
+				// (5) Get the message from the ring, but don't wait beyond when the next ping is due to be closed off.
+				// Nor for longer than the ping timeout, so a ping sent meanwhile is opened in time to close at its own deadline.
+				// It must be released again once finished with, whatever happens.
+				long waitUntilNs = Math.min(Math.min(Math.min(inFlightPings.nextDeadlineNs(), nextRingReportNs), nextWindowStepNs), nextPeriodNs);
+				messageToProcess = resultsRing.poll(Math.min(waitUntilNs, System.nanoTime() + pingTimeoutNs));
+				this.openSentPings();		// Before the pong, which may answer one of them
+				if (messageToProcess != null)
+				{
+					try 
+					{
+						this.processMessage(messageToProcess);
+					}
+					catch (Exception e) 
+					{
+						this.handleException(e);
+					}
+					finally
+					{
+						resultsRing.release();
+					}
+				}
+				
+				// (8) Close off any pings that have reached their deadline, summarising each one or keeping the latest for the next period
+				long now = System.nanoTime();
+				InFlightPings.InFlightPing expiredPing;
+				while ((expiredPing = inFlightPings.closeExpired(now)) != null)
+				{
+					this.closePing(expiredPing);
+				}
+				inFlightPingCount.lazySet(inFlightPings.size());
+				
+				if (now - nextPeriodNs >= 0)
+				{
+					this.publishPeriod();
+					nextPeriodNs += periodNs;
+					if (now - nextPeriodNs >= 0)
+					{
+						nextPeriodNs = now + periodNs;		// Fell behind by a whole period, so don't try to catch up
+					}
+				}
+				
+				// Roll the windows on, and publish the rollups of those that have moved and any change of route
+				if (now - nextWindowStepNs >= 0)
+				{
+					if (rollupsEnabled)
+					{
+						this.publishRollups();
+					}
+					if (routesEnabled)
+					{
+						this.chooseRoutes(now);
+					}
+					if (meshEnabled)
+					{
+						this.publishMeshRow();
+					}
+					nextWindowStepNs += PairRollups.STEP_NS;
+					if (now - nextWindowStepNs >= 0)
+					{
+						nextWindowStepNs = now + PairRollups.STEP_NS;	// Fell behind by a whole step, so don't try to catch up
+					}
+				}
+				
+				if (now - nextRingReportNs >= 0)
+				{
+					this.reportRing();
+					nextRingReportNs = now + ringReportIntervalNs;
+					
+					// Also the time to forget any pongers that haven't been heard from in a long while
+					if (roster.evictExpired(now, pairStats) > 0)
+					{
+						for (PairLatencyStats stats : metricsPairs)
+						{
+							if (pairStats.get(stats.getPairKey()) != stats)
+							{
+								metricsPairs.remove(stats);
+							}
+						}
+					}
+				}
+			}			
+	}
+	
+	private void processMessage(PingPongMessage messageToProcess) throws TransportException {
+		
+		long pingSequence = messageToProcess.getSequence();
+		
+		// Check the sequence number against what this ponger has already sent back. Duplicates are counted but go no further.
+		PairLatencyStats stats = this.getPairStats(myNodeId, messageToProcess);
+		pongsReceived.lazySet(pongsReceived.get() + 1);
+		long lostBefore = stats.getSequenceTracker().getLost();
+		int sequenceResult = stats.recordSequence(pingSequence);
+		if (sequenceResult == SequenceTracker.DUPLICATE)
+		{
+			duplicatePongs.lazySet(duplicatePongs.get() + 1);
+			this.journalSample(stats, messageToProcess, SampleJournal.FLAG_DUPLICATE);
+			hotPathLog.log(HotPathLog.Event.DUPLICATE_PONG, pingSequence, messageToProcess.getReflectNodeGroupId(), messageToProcess.getReflectNodeId());
+			return;
+		}
+		roster.seen(messageToProcess.getReflectNodeGroupId(), messageToProcess.getReflectNodeId(), messageToProcess.getReceiveNs(), System.currentTimeMillis());
+		long lost = stats.getSequenceTracker().getLost() - lostBefore;	// Pings this pong has shown to be lost
+		
+		// Too late? The ping's deadline has passed so it has been (or is about to be) summarised without this one.
+		long deadlineNs = messageToProcess.getSendNs() + pingTimeoutNs;
+		int journalFlags = sequenceResult == SequenceTracker.REORDERED ? SampleJournal.FLAG_REORDERED
+				: sequenceResult == SequenceTracker.LATE ? SampleJournal.FLAG_LATE : 0;
+		if (System.nanoTime() - deadlineNs >= 0)
+		{
+			this.journalSample(stats, messageToProcess, journalFlags | SampleJournal.FLAG_TIMED_OUT);
+			stats.getSequenceTracker().timedOut();
+			timedOutPongs.lazySet(timedOutPongs.get() + 1);
+			if (stats.getRegressionDetector() != null)
+			{
+				this.checkForRegression(stats, stats.getRegressionDetector().recordDelivery(lost + 1, false));	// Too late counts as lost
+			}
+			hotPathLog.log(HotPathLog.Event.TIMED_OUT_PONG, pingSequence, messageToProcess.getReflectNodeGroupId(), messageToProcess.getReflectNodeId());
+			return;
+		}
+		
+		this.journalSample(stats, messageToProcess, journalFlags);
+		if (stats.getRegressionDetector() != null)
+		{
+			this.checkForRegression(stats, stats.getRegressionDetector().recordDelivery(lost, true));
+		}
+		
+		// (6) Which ping is this a response to? It was opened as it was sent, unless the sender couldn't hand it over,
+		// in which case this first pong for it starts collecting its results.
+		InFlightPings.InFlightPing ping = inFlightPings.get(pingSequence);
+		if (ping == null)
+		{
+			ping = this.openPing(pingSequence, deadlineNs, messageToProcess.getSendMs());
+		}
+		// (7) Which group is this response relating to? Its ranking for the ping is kept in order as each response arrives.
+		GroupRanking ranking = ping.rankingFor(messageToProcess.getReflectNodeGroupId(), messageToProcess.getReflectNodeGroup());
+
+		// Check if maybe there are multiple reflectors configured with the same node name and group.
+		// No use in knocking out the latency results of an earlier one with a later arrival if that's the case
+		
+		if (ranking.add(messageToProcess.getReflectNodeId(), messageToProcess.getReflectNodeName(), messageToProcess.getRttNs()))
+		{
+			// And into the histogram for the pair, for the percentiles
+			stats.recordRtt(messageToProcess.getRttNs(), messageToProcess.getPayloadSize());
+			if (sessionScaling != null)
+			{
+				sessionScaling.record(sessionIndex, messageToProcess.getRttNs());
+			}
+			stats.recordCorrectedRtt(messageToProcess.getIntendedSendNs(), messageToProcess.getReceiveNs());
+			if (messageToProcess.getDwellNs() != -1)
+			{
+				stats.recordDwell(messageToProcess.getDwellNs(), messageToProcess.getRttNs());
+			}
+			this.estimateOneWayLatencies(stats, messageToProcess);
+			if (stats.getRegressionDetector() != null)
+			{
+				this.checkForRegression(stats, stats.getRegressionDetector().recordRtt(messageToProcess.getRttNs()));
+			}
+
+			// Publish the results for this node too. (The baseline ping-pong only feeds the main one's summaries.)
+			if (recordsRawRttBaseline)
+			{
+				if (hotPathLog.isEnabled(HotPathLog.Event.BASELINE_RESULT))
+				{
+					hotPathLog.log(HotPathLog.Event.BASELINE_RESULT, messageToProcess.getLatencyResultsMessage());
+				}
+			}
+			else
+			{
+				String resultsMessage = messageToProcess.getLatencyResultsMessage();
+				sender.sendText(resultsTopic, resultsMessage);
+				hotPathLog.log(HotPathLog.Event.RESULT, resultsMessage);
+			}
+
+		}
+		else
+		{
+			// Will ignore this later message even though it arrived.
+			// Use case could be multiple nodes running with the same name in competition or for resiliency?
+		}
+	}
+	
+	/**
+	 * Open every ping the sender has handed over since the last call, to be closed off and summarised at its deadline
+	 * whether anyone answers it or not.
+	 */
+	private void openSentPings() {
+		
+		while (sentPings.poll())
+		{
+			if (inFlightPings.get(sentPings.getSequence()) == null)		// Its first pong may have got here first
+			{
+				this.openPing(sentPings.getSequence(), sentPings.getSendNs() + pingTimeoutNs, sentPings.getSendMs());
+			}
+		}
+	}
+	
+	private InFlightPings.InFlightPing openPing(long sequence, long deadlineNs, long sendMs) {
+		
+		if (inFlightPings.isFull())
+		{
+			// Too many pings awaiting pongs at once. Summarise the oldest now rather than grow without bound.
+			pingsClosedEarly++;
+			this.closePing(inFlightPings.closeOldest());
+		}
+		return inFlightPings.open(sequence, deadlineNs, sendMs);
+	}
+	
+	private void journalSample(PairLatencyStats stats, PingPongMessage message, int flags) {
+		
+		if (journal != null)
+		{
+			journal.append(message.getSequence(), myNodeId, message.getReflectNodeGroupId(), message.getReflectNodeId(),
+					WallClock.toEpochNs(message.getSendNs()), WallClock.toEpochNs(message.getReceiveNs()),
+					message.getRttNs(), message.getDwellNs(), message.getPayloadSize(), flags);
+		}
+	}
+	
+	/**
+	 * If the ponger stamped when the ping arrived and the pong left, use them to split the round trip into its forward and reverse legs.
+	 * (Pongers from before it did so, and pongs from a transport that doesn't carry them, just get the round trip.)
+	 */
+	private void estimateOneWayLatencies(PairLatencyStats stats, PingPongMessage message) {
+		
+		if (message.getReflectReceiveNs() == -1 || message.getReflectSendNs() == -1)
+		{
+			return;
+		}
+		
+		// T1 and T4 are by this node's clock, T2 and T3 by the ponger's
+		long t1 = WallClock.toEpochNs(message.getSendNs());
+		long t2 = message.getReflectReceiveNs();
+		long t3 = message.getReflectSendNs();
+		long t4 = WallClock.toEpochNs(message.getReceiveNs());
+		
+		ClockOffsetEstimator clockOffset = stats.getClockOffset();
+		clockOffset.sample(t1, t2, t3, t4);
+		if (clockOffset.hasEstimate())
+		{
+			long offsetNs = clockOffset.getOffsetNs(t1);
+			message.setOneWayLatencies((t2 - offsetNs) - t1, t4 - (t3 - offsetNs), clockOffset.getErrorNs());
+		}
+	}
+	
+	/**
+	 * Build each ponger's clock offset, skew and the most the offset could be out by, in a map of group name to a JSONObject of node name to those.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, JSONObject> summariseClocks() {
+		
+		Map<String, JSONObject> clockPerNodeGroup = new HashMap<String, JSONObject>();
+		
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null || !stats.getClockOffset().hasEstimate())
+			{
+				continue;
+			}
+			
+			ClockOffsetEstimator clockOffset = stats.getClockOffset();
+			JSONObject nodeClock = new JSONObject();
+			nodeClock.put("offset", nanosToMillis(clockOffset.getOffsetNs(WallClock.nowNs())));
+			nodeClock.put("skewPpm", Float.valueOf(String.format(java.util.Locale.US, "%.3f", clockOffset.getSkewPpm())));
+			nodeClock.put("error", nanosToMillis(clockOffset.getErrorNs()));
+			
+			JSONObject groupClock = clockPerNodeGroup.get(stats.getPongerNodeGroupName());
+			if (groupClock == null)
+			{
+				groupClock = new JSONObject();
+				clockPerNodeGroup.put(stats.getPongerNodeGroupName(), groupClock);
+			}
+			groupClock.put(stats.getPongerNodeName(), nodeClock);
+		}
+		return clockPerNodeGroup;
+	}
+	
+	/**
+	 * Note who answered a ping that has been closed off. Then either summarise it straight away and recycle it, or keep
+	 * it for the next summary, in place of the one closed before it, if summaries are published every summaryIntervalNs.
+	 */
+	@SuppressWarnings("unchecked")
+	private void closePing(InFlightPings.InFlightPing ping) {
+		
+		hotPathLog.log(HotPathLog.Event.PING_CLOSED, ping.getSequence(), ping.getRankingCount());
+		roster.pingClosed(ping);
+		
+		if (summaryIntervalNs == 0)
+		{
+			JSONObject allGroupsSummary = new JSONObject();
+			this.addPingSummary(allGroupsSummary, ping);
+			allGroupsSummary.put("timestamp", summaryTimestampFormat.format(new Date(ping.getSendMs())));
+			this.publishSummary(allGroupsSummary);
+			inFlightPings.recycle(ping);
+			return;
+		}
+		
+		pingsClosedSinceSummary++;
+		if (lastClosedPing != null)
+		{
+			inFlightPings.recycle(lastClosedPing);
+		}
+		lastClosedPing = ping;
+	}
+	
+	/**
+	 * Publish the percentiles, delivery counts and clock offsets recorded since the last period, between the bounds of the period.
+	 * If summaries are published every summaryIntervalNs, this is that summary, so also has the rankings of the latest ping
+	 * closed over the period. Otherwise each ping has had a summary of its own, and a period with nothing recorded is skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	private void publishPeriod() {
+		
+		JSONObject allGroupsSummary = new JSONObject();
+		long periodEndMs = System.currentTimeMillis();
+		boolean recorded = this.addPeriodSummary(allGroupsSummary);
+		
+		if (summaryIntervalNs != 0 && lastClosedPing != null)
+		{
+			this.addPingSummary(allGroupsSummary, lastClosedPing);
+			allGroupsSummary.put("timestamp", summaryTimestampFormat.format(new Date(lastClosedPing.getSendMs())));
+			inFlightPings.recycle(lastClosedPing);
+			lastClosedPing = null;
+		}
+		else if (!recorded)
+		{
+			periodStartMs = periodEndMs;
+			return;
+		}
+		if (summaryIntervalNs != 0)
+		{
+			allGroupsSummary.put("pings", pingsClosedSinceSummary);		// The rankings are of the latest, the rest covers the period
+			pingsClosedSinceSummary = 0;
+		}
+		allGroupsSummary.put("periodStart", timestampFormat.format(new Date(periodStartMs)));
+		allGroupsSummary.put("periodEnd", timestampFormat.format(new Date(periodEndMs)));
+		periodStartMs = periodEndMs;
+		this.publishSummary(allGroupsSummary);
+	}
+	
+	/**
+	 * Add the group winners of a ping that has been closed off, and who on the roster didn't answer it.
+	 * A group where nobody answered still gets its (empty) ranking, as does a ping nobody answered at all.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addPingSummary(JSONObject allGroupsSummary, InFlightPings.InFlightPing ping) {
+		
+		Map<String, JSONObject> missingPerNodeGroup = roster.summariseMissing();
+		Set<String> groups = new LinkedHashSet<String>();
+		for (int i = 0; i < ping.getRankingCount(); i++)
+		{
+			groups.add(ping.getRankingAt(i).getNodeGroupName());
+		}
+		groups.addAll(missingPerNodeGroup.keySet());
+		
+		// Iterate through each available ping-and-node-group available, and take the results inside in the order they have been ranked
+		for (String group : groups)
+		{
+			JSONObject groupSummary = groupSummary(allGroupsSummary, group);
+			GroupRanking ranking = ping.getRanking(NodeNameInterner.onlyInstance().intern(group));
+			
+			JSONArray rankedNodes = new JSONArray();
+
+			for (int rank = 0; ranking != null && rank < ranking.size(); rank++)	// Lowest latency first
+			{
+				rankedNodes.add(ranking.getNodeName(rank));	// Create an array of just the node names in order of latency
+				groupSummary.put(ranking.getNodeName(rank), ranking.getRttMs(rank));	// Add the individual latency result too
+			}
+			groupSummary.put("ranking", rankedNodes);		// Insert the final ranked list
+		}
+		addPerNodeGroup(allGroupsSummary, "missing", missingPerNodeGroup);
+	}
+	
+	/**
+	 * Add everything recorded for each pair since the last period, resetting it ready for the next.
+	 * 
+	 * @return false if nothing was recorded over the period
+	 */
+	private boolean addPeriodSummary(JSONObject allGroupsSummary) {
+		
+		// Latency percentiles per node, both as measured, and corrected for coordinated omission.
+		// And how much more the median is than straight over the sockets, if running with a baseline.
+		Map<String, JSONObject> overRawRttPerNodeGroup = new HashMap<String, JSONObject>();
+		boolean recorded = addPerNodeGroup(allGroupsSummary, "percentiles", this.summarisePercentiles(PairLatencyStats.RTT, overRawRttPerNodeGroup));
+		addPerNodeGroup(allGroupsSummary, "correctedPercentiles", this.summarisePercentiles(PairLatencyStats.CORRECTED_RTT, null));
+		// And with the time each ponger held the pings taken off, and that time itself. (Empty for pongers that don't say.)
+		addPerNodeGroup(allGroupsSummary, "networkPercentiles", this.summarisePercentiles(PairLatencyStats.NETWORK_RTT, null));
+		addPerNodeGroup(allGroupsSummary, "dwellPercentiles", this.summarisePercentiles(PairLatencyStats.DWELL, null));
+		addPerNodeGroup(allGroupsSummary, "percentilesBySize", this.summarisePercentilesBySize());
+		addPerNodeGroup(allGroupsSummary, "overRawRtt", overRawRttPerNodeGroup);
+		recorded |= addPerNodeGroup(allGroupsSummary, "delivery", this.summariseDelivery());	// Timeouts and loss, even with no round trips
+		if (recorded)
+		{
+			addPerNodeGroup(allGroupsSummary, "clock", this.summariseClocks());		// Not recorded as such, just the latest estimates
+		}
+		return recorded;
+	}
+	
+	/**
+	 * Add a map of group name to a JSONObject of node name to something, under that name in the summary of each group.
+	 * 
+	 * @return false if there was nothing to add
+	 */
+	@SuppressWarnings("unchecked")
+	private static boolean addPerNodeGroup(JSONObject allGroupsSummary, String name, Map<String, JSONObject> perNodeGroup) {
+		
+		for (Map.Entry<String, JSONObject> group : perNodeGroup.entrySet())
+		{
+			groupSummary(allGroupsSummary, group.getKey()).put(name, group.getValue());
+		}
+		return !perNodeGroup.isEmpty();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static JSONObject groupSummary(JSONObject allGroupsSummary, String group) {
+		
+		JSONObject groupSummary = (JSONObject) allGroupsSummary.get(group);		// Details of an individual group
+		if (groupSummary == null)
+		{
+			groupSummary = new JSONObject();
+			allGroupsSummary.put(group, groupSummary);
+		}
+		return groupSummary;
+	}
+	
+	private void publishSummary(JSONObject allGroupsSummary) {
+		
+		try 
+		{
+			if (recordsRawRttBaseline)
+			{
+				if (hotPathLog.isEnabled(HotPathLog.Event.BASELINE_SUMMARY))
+				{
+					hotPathLog.log(HotPathLog.Event.BASELINE_SUMMARY, allGroupsSummary.toString());
+				}
+			}
+			else
+			{
+				String summaryMessage = allGroupsSummary.toString();
+				sender.sendText(summaryTopic, summaryMessage);
+				hotPathLog.log(HotPathLog.Event.SUMMARY, summaryMessage);
+			}
+		}
+		catch (Exception e)
+		{
+			this.handleException(e);
+		}
+	}
+	
+	/**
+	 * Publish an alert if the pair's round-trip time or loss has just got worse, or recovered.
+	 *
+	 * @param change What the pair's RegressionDetector returned
+	 */
+	@SuppressWarnings("unchecked")
+	private void checkForRegression(PairLatencyStats stats, int change) throws TransportException {
+		
+		if (change == RegressionDetector.NONE)
+		{
+			return;
+		}
+		
+		RegressionDetector detector = stats.getRegressionDetector();
+		JSONObject alert = new JSONObject();
+		alert.put("group", stats.getPongerNodeGroupName());
+		alert.put("node", stats.getPongerNodeName());
+		if (change == RegressionDetector.RTT_RAISED || change == RegressionDetector.RTT_CLEARED)
+		{
+			alert.put("alert", "rtt");
+			alert.put("state", change == RegressionDetector.RTT_RAISED ? "raised" : "cleared");
+			alert.put("baseline", nanosToMillis(detector.getBaselineRttNs()));
+			alert.put("recent", nanosToMillis(detector.getRecentRttNs()));
+		}
+		else
+		{
+			alert.put("alert", "loss");
+			alert.put("state", change == RegressionDetector.LOSS_RAISED ? "raised" : "cleared");
+			alert.put("baseline", Float.valueOf(String.format(java.util.Locale.US, "%.3f", detector.getBaselineLossPercent())));
+			alert.put("recent", Float.valueOf(String.format(java.util.Locale.US, "%.3f", detector.getRecentLossPercent())));
+		}
+		alert.put("timestamp", timestampFormat.format(new Date()));
+		
+		String alertMessage = alert.toString();
+		sender.sendText(alertTopic, alertMessage);
+		hotPathLog.log(HotPathLog.Event.ALERT, alertMessage);
+	}
+	
+	/**
+	 * Advance every pair's rolling windows a step, then publish the rollup of each window that has moved on:
+	 * the percentiles of each pair over the window, with the smoothed round-trip time and jitter so far.
+	 */
+	@SuppressWarnings("unchecked")
+	private void publishRollups() {
+		
+		rollupStep++;
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats != null && stats.getRollups() != null)
+			{
+				stats.getRollups().advance(rollupStep);
+			}
+		}
+		
+		String timestamp = timestampFormat.format(new Date());
+		for (int window = 0; window < PairRollups.WINDOW_NAMES.length; window++)
+		{
+			if (!PairRollups.isDue(window, rollupStep))
+			{
+				continue;
+			}
+			
+			JSONObject rollup = new JSONObject();
+			for (int i = 0; i < pairStats.capacity(); i++)
+			{
+				PairLatencyStats stats = pairStats.valueAt(i);
+				if (stats == null || stats.getRollups() == null)
+				{
+					continue;
+				}
+				
+				PairRollups rollups = stats.getRollups();
+				RollingWindow rollingWindow = rollups.getWindow(window);
+				if (rollingWindow.getHistogram().getTotalCount() == 0)
+				{
+					continue;
+				}
+				
+				JSONObject nodeRollup = percentilesToJson(rollingWindow.getHistogram());
+				nodeRollup.put("max", nanosToMillis(rollingWindow.getMaxValue()));
+				nodeRollup.put("ewmaRtt", nanosToMillis(rollups.getSmoothedRttNs()));
+				nodeRollup.put("ewmaJitter", nanosToMillis(rollups.getJitterNs()));
+				
+				JSONObject groupRollup = (JSONObject) rollup.get(stats.getPongerNodeGroupName());
+				if (groupRollup == null)
+				{
+					groupRollup = new JSONObject();
+					rollup.put(stats.getPongerNodeGroupName(), groupRollup);
+				}
+				groupRollup.put(stats.getPongerNodeName(), nodeRollup);
+			}
+			if (rollup.isEmpty())
+			{
+				continue;
+			}
+			
+			rollup.put("window", PairRollups.WINDOW_NAMES[window]);
+			rollup.put("timestamp", timestamp);
+			try
+			{
+				String rollupMessage = rollup.toString();
+				sender.sendText(rollupTopics[window], rollupMessage);
+				hotPathLog.log(HotPathLog.Event.ROLLUP, rollupMessage);
+			}
+			catch (Exception e)
+			{
+				this.handleException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Advance every pair's route window a step, then offer each ponger to its group's RouteSelector by the percentile of its
+	 * round-trip times over the window, and publish a route change for each group whose choice has changed.
+	 */
+	@SuppressWarnings("unchecked")
+	private void chooseRoutes(long nowNs) {
+		
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null || stats.getRouteWindow() == null)
+			{
+				continue;
+			}
+			
+			RollingWindow routeWindow = stats.getRouteWindow();
+			routeWindow.advance();
+			if (routeWindow.getHistogram().getTotalCount() == 0)
+			{
+				continue;
+			}
+			
+			int nodeGroupId = NodePair.pongerNodeGroupId(stats.getPairKey());
+			RouteSelector selector = routeSelectors.get(nodeGroupId);
+			if (selector == null)
+			{
+				selector = new RouteSelector(stats.getPongerNodeGroupName());
+				routeSelectors.put(nodeGroupId, selector);
+			}
+			selector.offer(NodePair.pongerNodeId(stats.getPairKey()), stats.getPongerNodeName(),
+					Math.min(routeWindow.getHistogram().getValueAtPercentile(routePercentile), routeWindow.getMaxValue()));
+		}
+		
+		String timestamp = null;
+		for (int i = 0; i < routeSelectors.capacity(); i++)
+		{
+			RouteSelector selector = routeSelectors.valueAt(i);
+			if (selector == null || !selector.decide(nowNs, routeMargin, routeMinDwellNs))
+			{
+				continue;
+			}
+			
+			if (timestamp == null)
+			{
+				timestamp = timestampFormat.format(new Date());
+			}
+			JSONObject routeChange = new JSONObject();
+			routeChange.put("group", selector.getNodeGroupName());
+			routeChange.put("node", selector.getChosenNodeName());
+			routeChange.put("rtt", nanosToMillis(selector.getChosenRttNs()));
+			routeChange.put("previous", selector.getPreviousNodeName());
+			if (selector.getPreviousRttNs() != -1)
+			{
+				routeChange.put("previousRtt", nanosToMillis(selector.getPreviousRttNs()));
+			}
+			routeChange.put("percentile", routePercentile);
+			routeChange.put("timestamp", timestamp);
+			try
+			{
+				String routeChangeMessage = routeChange.toString();
+				sender.sendText(routeTopic, routeChangeMessage);
+				hotPathLog.log(HotPathLog.Event.ROUTE_CHANGE, routeChangeMessage);
+			}
+			catch (Exception e)
+			{
+				this.handleException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Advance every pair's mesh window a step, and send this node's row of the matrix: the p50 and p99 of the round-trip
+	 * times to each ponger that answered over the step. Encoded straight into a reused buffer.
+	 */
+	private void publishMeshRow() {
+		
+		int cells = 0;
+		for (int i = 0; i < pairStats.capacity(); i++)
+		{
+			PairLatencyStats stats = pairStats.valueAt(i);
+			if (stats == null || stats.getMeshWindow() == null)
+			{
+				continue;
+			}
+			
+			RollingWindow meshWindow = stats.getMeshWindow();
+			meshWindow.advance();
+			LatencyHistogram step = meshWindow.getHistogram();
+			if (step.getTotalCount() == 0)
+			{
+				continue;
+			}
+			
+			if (MeshMatrix.rowLength(cells + 1) > meshRow.length)
+			{
+				meshRow = Arrays.copyOf(meshRow, MeshMatrix.rowLength((cells + 1) * 2));
+			}
+			MeshMatrix.putCell(meshRow, cells++, NodePair.pongerNodeGroupId(stats.getPairKey()), NodePair.pongerNodeId(stats.getPairKey()),
+					step.getValueAtPercentile(50), step.getValueAtPercentile(99), step.getTotalCount());
+		}
+		
+		MeshMatrix.putRowHeader(meshRow, NodeNameInterner.onlyInstance().intern(parameters.get("node_group").toString()), myNodeId, cells);
+		try
+		{
+			sender.sendBytes(meshRowTopic, meshRow, MeshMatrix.rowLength(cells));
+		}
+		catch (Exception e)
+		{
+			this.handleException(e);
+		}
+	}
+	
+	private void handleException(Exception e) {
+		
+		if (e instanceof TransportException)
+		{
+			logger.error("A TransportException occurred. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+		else if (e instanceof NullPointerException){
+			// Shouldn't really be triggering this in normal operation...
+			logger.error("A NullPointerException occurred.");
+			logger.debug("Stack Trace: ",e);
+		}
+		else 
+		{
+			logger.error("An exception occurred. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}	
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single-producer, single-consumer ring of pre-allocated PingPongMessage slots, used to hand pongs
+ * from the subscriber's callback thread to the results processing thread.
+ *
+ * The producer decodes straight into a claimed slot and then publishes it, the consumer takes it, processes it
+ * and then releases it back. No locks are taken and nothing is allocated per message. If the ring is full the
+ * producer is told straight away, so the callback thread is never held up by a slow consumer; those drops are counted.
+ *
+ * Also keeps count of drops, the highest depth seen, and the time from publish to take (the hand-off latency).
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class ResultsRing {
+
+	private final PingPongMessage[] slots;
+	private final long[] publishTimesNs;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+
+	// Written by the producer only
+	private final AtomicLong tail = new AtomicLong(0);			// Next slot to publish
+	private long producerIndex = 0;
+	private long cachedHead = 0;								// Producer's last view of the consumer position
+	private final AtomicLong drops = new AtomicLong(0);
+	private volatile int highWaterMark = 0;
+
+	// Written by the consumer only
+	private final AtomicLong head = new AtomicLong(0);			// Next slot to take
+	private long consumerIndex = 0;
+	private long cachedTail = 0;								// Consumer's last view of the producer position
+	private final LatencyRecorder handOffRecorder = new LatencyRecorder();
+
+	/**
+	 * @param requestedCapacity Rounded up to a power of two
+	 * @param waitStrategy How the consumer waits when the ring is empty
+	 */
+	public ResultsRing(int requestedCapacity, WaitStrategy waitStrategy, String nodeName, String nodeGroupName) {
+
+		int capacity = Integer.highestOneBit(Math.max(requestedCapacity, 2) - 1) << 1;
+		this.slots = new PingPongMessage[capacity];
+		this.publishTimesNs = new long[capacity];
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new PingPongMessage(nodeName, nodeGroupName);
+		}
+	}
+
+	/**
+	 * Producer: get the next free slot to decode into, reset and ready for use.
+	 * Nothing is visible to the consumer until publish() is called, so if the slot isn't needed after all just don't publish it.
+	 *
+	 * @return the slot, or null if the ring is full
+	 */
+	public PingPongMessage claim() {
+
+		if (producerIndex - cachedHead >= slots.length) {
+			cachedHead = head.get();
+			if (producerIndex - cachedHead >= slots.length) {
+				return null;
+			}
+		}
+
+		PingPongMessage slot = slots[(int) producerIndex & mask];
+		slot.reset();
+		return slot;
+	}
+
+	/**
+	 * Producer: make the slot returned by the last claim() available to the consumer.
+	 */
+	public void publish() {
+
+		publishTimesNs[(int) producerIndex & mask] = System.nanoTime();
+		producerIndex++;
+		tail.lazySet(producerIndex);
+
+		int depth = (int) (producerIndex - head.get());		// Not the cached head, which is only brought up to date when the ring looks full
+		if (depth > highWaterMark) {
+			highWaterMark = depth;
+		}
+	}
+
+	/**
+	 * Producer: count a message that couldn't be handed over because the ring was full.
+	 */
+	public void drop() {
+		drops.lazySet(drops.get() + 1);
+	}
+
+	/**
+	 * Consumer: wait for and return the next published slot. Call release() when done with it.
+	 */
+	public PingPongMessage take() {
+
+		while (consumerIndex >= cachedTail) {
+			cachedTail = tail.get();
+			if (consumerIndex >= cachedTail) {
+				waitStrategy.idle();
+			}
+		}
+
+		return takeAvailable();
+	}
+
+	/**
+	 * Consumer: as take(), but give up and return null once System.nanoTime() reaches the deadline.
+	 */
+	public PingPongMessage poll(long deadlineNs) {
+
+		while (consumerIndex >= cachedTail) {
+			cachedTail = tail.get();
+			if (consumerIndex >= cachedTail) {
+				if (System.nanoTime() - deadlineNs >= 0) {
+					return null;
+				}
+				waitStrategy.idle();
+			}
+		}
+
+		return takeAvailable();
+	}
+
+	private PingPongMessage takeAvailable() {
+
+		int index = (int) consumerIndex & mask;
+		handOffRecorder.record(System.nanoTime() - publishTimesNs[index]);
+		return slots[index];
+	}
+
+	/**
+	 * Consumer: hand the slot returned by the last take() or poll() back to the producer.
+	 */
+	public void release() {
+
+		consumerIndex++;
+		head.lazySet(consumerIndex);
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Approximate number of messages waiting to be taken.
+	 */
+	public int size() {
+		return (int) Math.max(tail.get() - head.get(), 0);
+	}
+
+	public long getDrops() {
+		return drops.get();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * Hand-off latencies in nanoseconds since the previous call. Valid until the next call.
+	 */
+	public LatencyHistogram getIntervalHandOffLatency() {
+		return handOffRecorder.getIntervalHistogram();
+	}
+}
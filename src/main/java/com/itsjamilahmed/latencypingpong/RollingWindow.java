@@ -0,0 +1,91 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * A latency distribution over a window of time that rolls forward, such as the last 5 minutes, made of a ring of slices.
+ *
+ * Values are added to the current slice. When the window advances, the slice falling off the back is taken away from a
+ * running total of the whole window, the current slice goes into the ring in its place and is added to the total, and
+ * that old slice is emptied to become the new current one. So advancing costs the same however many slices there are,
+ * the total is always ready to read without merging the ring, and memory is fixed when the window is made.
+ *
+ * The max of the total can't be wound back as slices fall off (see LatencyHistogram.subtract()), so getMaxValue()
+ * works it out from the slices instead.
+ *
+ * Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class RollingWindow {
+
+	// Coarser than the default (about 3% rather than 1%), as a pair keeps a good few of these
+	static final long HIGHEST_TRACKABLE_NS = LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_NS;
+	static final int SUB_BUCKET_BITS = 6;
+
+	private final LatencyHistogram[] slices;						// The completed slices, oldest at nextSlice
+	private LatencyHistogram current;
+	private final LatencyHistogram total;							// Of all the completed slices
+	private int nextSlice = 0;
+
+	/**
+	 * @param sliceCount How many slices the window is made of
+	 */
+	public RollingWindow(int sliceCount) {
+
+		this.slices = new LatencyHistogram[sliceCount];
+		for (int i = 0; i < sliceCount; i++) {
+			slices[i] = new LatencyHistogram(HIGHEST_TRACKABLE_NS, SUB_BUCKET_BITS);
+		}
+		this.current = new LatencyHistogram(HIGHEST_TRACKABLE_NS, SUB_BUCKET_BITS);
+		this.total = new LatencyHistogram(HIGHEST_TRACKABLE_NS, SUB_BUCKET_BITS);
+	}
+
+	public void record(long valueNs) {
+		current.record(valueNs);
+	}
+
+	/**
+	 * Add a histogram of the same precision to the current slice, e.g. the finished slice of a shorter window.
+	 */
+	public void add(LatencyHistogram histogram) {
+		current.add(histogram);
+	}
+
+	/**
+	 * Close off the current slice into the window, dropping the oldest, and start a new one.
+	 */
+	public void advance() {
+
+		LatencyHistogram oldest = slices[nextSlice];
+		total.subtract(oldest);
+		total.add(current);
+		slices[nextSlice] = current;
+		nextSlice = (nextSlice + 1) % slices.length;
+
+		oldest.reset();
+		current = oldest;
+	}
+
+	/**
+	 * Everything in the window's completed slices. Not including the current one.
+	 */
+	public LatencyHistogram getHistogram() {
+		return total;
+	}
+
+	/**
+	 * The most recently completed slice, valid until the next advance().
+	 */
+	public LatencyHistogram getLatestSlice() {
+		return slices[(nextSlice + slices.length - 1) % slices.length];
+	}
+
+	public long getMaxValue() {
+
+		long max = 0;
+		for (LatencyHistogram slice : slices) {
+			max = Math.max(max, slice.getMaxValue());
+		}
+		return max;
+	}
+}
@@ -0,0 +1,131 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * The ponger of one group recommended as the best to route to (see --routes), kept steady against noise in the rankings.
+ *
+ * Every step, each ponger of the group that answered is offered with a percentile of its round-trip times over the last
+ * minute. The choice only moves to another ponger when that is better than the current one by more than the margin, and
+ * the current one has been the choice for at least the minimum dwell time. If the current one stops answering altogether
+ * the best of the rest takes over straight away.
+ *
+ * Only ever used from the results thread.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class RouteSelector {
+
+	private final String nodeGroupName;
+
+	// The choice
+	private int chosenNodeId = -1;
+	private String chosenNodeName = null;
+	private long chosenRttNs = -1;
+	private long chosenAtNs = 0;
+
+	// The one it replaced, for the route change
+	private String previousNodeName = null;
+	private long previousRttNs = -1;
+
+	// What has been offered this step
+	private int bestNodeId = -1;
+	private String bestNodeName = null;
+	private long bestRttNs = -1;
+	private long chosenOfferedRttNs = -1;
+
+	public RouteSelector(String nodeGroupName) {
+		this.nodeGroupName = nodeGroupName;
+	}
+
+	/**
+	 * Offer a ponger of the group that has answered in the window.
+	 */
+	public void offer(int nodeId, String nodeName, long rttNs) {
+
+		if (nodeId == chosenNodeId)
+		{
+			chosenOfferedRttNs = rttNs;
+		}
+		if (bestNodeId == -1 || rttNs < bestRttNs)
+		{
+			bestNodeId = nodeId;
+			bestNodeName = nodeName;
+			bestRttNs = rttNs;
+		}
+	}
+
+	/**
+	 * Decide on the pongers offered since the last call, and be ready for the next step.
+	 *
+	 * @param margin How much better another ponger must be to take over, as a fraction of the current one's round-trip time
+	 * @param minDwellNs How long the current one must have been the choice before another can take over
+	 * @return true if the choice changed
+	 */
+	public boolean decide(long nowNs, double margin, long minDwellNs) {
+
+		try
+		{
+			if (bestNodeId == -1)
+			{
+				return false;			// Nobody answered, so nothing better to go on than the current choice
+			}
+
+			boolean change;
+			if (chosenNodeId == -1 || chosenOfferedRttNs == -1)
+			{
+				change = true;			// No choice yet, or the current one has gone quiet
+			}
+			else
+			{
+				change = bestNodeId != chosenNodeId && bestRttNs < chosenOfferedRttNs * (1 - margin) && nowNs - chosenAtNs >= minDwellNs;
+			}
+
+			if (!change)
+			{
+				chosenRttNs = chosenOfferedRttNs;
+				return false;
+			}
+
+			previousNodeName = chosenNodeName;
+			previousRttNs = chosenOfferedRttNs;
+			chosenNodeId = bestNodeId;
+			chosenNodeName = bestNodeName;
+			chosenRttNs = bestRttNs;
+			chosenAtNs = nowNs;
+			return true;
+		}
+		finally
+		{
+			bestNodeId = -1;
+			bestNodeName = null;
+			bestRttNs = -1;
+			chosenOfferedRttNs = -1;
+		}
+	}
+
+	public String getNodeGroupName() {
+		return nodeGroupName;
+	}
+
+	public String getChosenNodeName() {
+		return chosenNodeName;
+	}
+
+	public long getChosenRttNs() {
+		return chosenRttNs;
+	}
+
+	/**
+	 * @return null if there was no choice before the latest change
+	 */
+	public String getPreviousNodeName() {
+		return previousNodeName;
+	}
+
+	/**
+	 * @return -1 if there was no choice before the latest change, or it had gone quiet
+	 */
+	public long getPreviousRttNs() {
+		return previousRttNs;
+	}
+}
@@ -0,0 +1,220 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An append-only journal of every pong the results thread sees, in memory-mapped files of fixed-length binary records (see --journal).
+ *
+ * The journal is a series of segment files of a fixed size, named after the node and when each was started so they sort into
+ * the order they were written. Every record is RECORD_LENGTH bytes, its first byte saying what it is:
+ *
+ *   Header: the first record of each segment. Magic number, version, record length, and the wall clock time it was started.
+ *   Name:   a node id and its name (in the NodeNameInterner slot form), written before the id is first used in the segment.
+ *           So each segment can be read on its own, even though ids are only ever valid for the one run that wrote them.
+ *   Sample: one pong. The ping's sequence number, the pinger, ponger group and ponger ids, send and receive wall clock
+ *           nanoseconds, the RTT, the ponger's dwell time (or -1), the payload size and flags for anything unusual about it.
+ *
+ * A zero type byte is where writing stopped. The type is written last, so a reader never sees half a record.
+ *
+ * Writes go straight into the mapped file, so the operating system gets them to disk in its own time and they are kept even if
+ * this program dies. Nothing is allocated to write a record, only on rolling over to the next segment.
+ *
+ * Only the results thread writes to it. Read the segments back with SampleJournalReader.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SampleJournal {
+
+	private Logger logger = Logger.getLogger(SampleJournal.class);	// A log4j logger to handle all output
+
+	static final int RECORD_LENGTH = 64;
+	static final String FILE_SUFFIX = ".journal";
+
+	// The type byte at the start of every record
+	static final byte TYPE_END = 0;
+	static final byte TYPE_HEADER = 1;
+	static final byte TYPE_NAME = 2;
+	static final byte TYPE_SAMPLE = 3;
+
+	static final int MAGIC = 0x4C50504A;			// "LPPJ"
+	static final int VERSION = 1;
+
+	// Header record
+	static final int HEADER_OFFSET_MAGIC = 4;
+	static final int HEADER_OFFSET_VERSION = 8;
+	static final int HEADER_OFFSET_RECORD_LENGTH = 12;
+	static final int HEADER_OFFSET_START_MS = 16;
+
+	// Name record
+	static final int NAME_OFFSET_ID = 4;
+	static final int NAME_OFFSET_SLOT = 8;
+
+	// Sample record
+	static final int SAMPLE_OFFSET_FLAGS = 1;
+	static final int SAMPLE_OFFSET_PAYLOAD_SIZE = 4;
+	static final int SAMPLE_OFFSET_SEQUENCE = 8;
+	static final int SAMPLE_OFFSET_PINGER = 16;
+	static final int SAMPLE_OFFSET_PONGER_GROUP = 20;
+	static final int SAMPLE_OFFSET_PONGER = 24;
+	static final int SAMPLE_OFFSET_SEND_NS = 32;
+	static final int SAMPLE_OFFSET_RECEIVE_NS = 40;
+	static final int SAMPLE_OFFSET_RTT_NS = 48;
+	static final int SAMPLE_OFFSET_DWELL_NS = 56;
+
+	// Sample flags
+	static final int FLAG_REORDERED = 0x01;			// Arrived after a later ping's pong
+	static final int FLAG_DUPLICATE = 0x02;			// Already seen, so ignored
+	static final int FLAG_LATE = 0x04;				// Too far behind the latest to be tracked for loss
+	static final int FLAG_TIMED_OUT = 0x08;			// Arrived after its ping's deadline, so not in the results
+
+	private final File directory;
+	private final String filePrefix;
+	private final int segmentLength;
+	private final int segmentsKept;
+	private final ArrayDeque<File> segmentFiles = new ArrayDeque<File>();	// Oldest first, for deleting beyond segmentsKept
+
+	private MappedByteBuffer segment;				// Null if the journal has given up after an error
+	private int position;
+	private long[] namesWritten = new long[64];		// Bit per node id named in the current segment
+	private long segmentsStarted = 0;
+
+	/**
+	 * @param directory Where to put the segments. Created if it doesn't exist
+	 * @param filePrefix Start of the segment file names, to tell apart the journals of different nodes in the same directory
+	 * @param segmentBytes Size of each segment. Rounded down to a whole number of records
+	 * @param segmentsKept Delete the oldest segments written by this journal beyond this many, or 0 to keep them all
+	 */
+	public SampleJournal(String directory, String filePrefix, long segmentBytes, int segmentsKept) throws IOException {
+
+		this.directory = new File(directory);
+		this.filePrefix = filePrefix.replaceAll("[^A-Za-z0-9._-]", "_");
+		this.segmentLength = (int) (Math.max(RECORD_LENGTH * 16, Math.min(segmentBytes, Integer.MAX_VALUE)) / RECORD_LENGTH * RECORD_LENGTH);
+		this.segmentsKept = segmentsKept;
+
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+		{
+			throw new IOException("Could not create the journal directory " + directory);
+		}
+		this.roll();
+	}
+
+	/**
+	 * Append a sample.
+	 *
+	 * @param sendNs When the ping was sent, by the WallClock
+	 * @param receiveNs When the pong arrived, by the WallClock
+	 * @param dwellNs How long the ponger held the ping, or -1 if it didn't say
+	 * @param flags Any of the FLAG_ values
+	 */
+	public void append(long sequence, int pingerNodeId, int pongerNodeGroupId, int pongerNodeId, long sendNs, long receiveNs,
+			long rttNs, long dwellNs, int payloadSize, int flags) {
+
+		if (segment == null)
+		{
+			return;
+		}
+
+		// Room for the sample and any names it needs, all in the one segment?
+		if (position + RECORD_LENGTH * 4 > segmentLength)
+		{
+			try {
+				this.roll();
+			} catch (IOException e) {
+				logger.error("Could not start a new journal segment in " + directory + ", so nothing more will be journalled. Exception message -> " + e.getMessage());
+				logger.debug("Stack Trace: ",e);
+				segment = null;
+				return;
+			}
+		}
+
+		this.nameIfNeeded(pingerNodeId);
+		this.nameIfNeeded(pongerNodeGroupId);
+		this.nameIfNeeded(pongerNodeId);
+
+		segment.put(position + SAMPLE_OFFSET_FLAGS, (byte) flags);
+		segment.putInt(position + SAMPLE_OFFSET_PAYLOAD_SIZE, payloadSize);
+		segment.putLong(position + SAMPLE_OFFSET_SEQUENCE, sequence);
+		segment.putInt(position + SAMPLE_OFFSET_PINGER, pingerNodeId);
+		segment.putInt(position + SAMPLE_OFFSET_PONGER_GROUP, pongerNodeGroupId);
+		segment.putInt(position + SAMPLE_OFFSET_PONGER, pongerNodeId);
+		segment.putLong(position + SAMPLE_OFFSET_SEND_NS, sendNs);
+		segment.putLong(position + SAMPLE_OFFSET_RECEIVE_NS, receiveNs);
+		segment.putLong(position + SAMPLE_OFFSET_RTT_NS, rttNs);
+		segment.putLong(position + SAMPLE_OFFSET_DWELL_NS, dwellNs);
+		segment.put(position, TYPE_SAMPLE);
+		position += RECORD_LENGTH;
+	}
+
+	private void nameIfNeeded(int nodeId) {
+
+		if (nodeId < 0)
+		{
+			return;
+		}
+		int word = nodeId >>> 6;
+		if (word >= namesWritten.length)
+		{
+			namesWritten = Arrays.copyOf(namesWritten, Math.max(word + 1, namesWritten.length * 2));	// Only as more nodes are seen
+		}
+		if ((namesWritten[word] & (1L << nodeId)) != 0)
+		{
+			return;
+		}
+
+		byte[] slot = NodeNameInterner.onlyInstance().getSlot(nodeId);
+		segment.putInt(position + NAME_OFFSET_ID, nodeId);
+		for (int i = 0; i < NodeNameInterner.SLOT_LENGTH; i++)
+		{
+			segment.put(position + NAME_OFFSET_SLOT + i, slot[i]);
+		}
+		segment.put(position, TYPE_NAME);
+		position += RECORD_LENGTH;
+		namesWritten[word] |= 1L << nodeId;
+	}
+
+	/**
+	 * Start the next segment, and delete the oldest if there are now more than are to be kept.
+	 */
+	private void roll() throws IOException {
+
+		long startMs = System.currentTimeMillis();
+		File file = new File(directory, filePrefix + "-" + String.format("%013d-%04d", startMs, segmentsStarted++ % 10000) + FILE_SUFFIX);
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(segmentLength);
+			segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentLength);
+		} finally {
+			randomAccessFile.close();			// The mapping stays valid without it
+		}
+
+		segment.putInt(HEADER_OFFSET_MAGIC, MAGIC);
+		segment.putInt(HEADER_OFFSET_VERSION, VERSION);
+		segment.putInt(HEADER_OFFSET_RECORD_LENGTH, RECORD_LENGTH);
+		segment.putLong(HEADER_OFFSET_START_MS, startMs);
+		segment.put(0, TYPE_HEADER);
+		position = RECORD_LENGTH;
+		Arrays.fill(namesWritten, 0);
+
+		segmentFiles.addLast(file);
+		logger.info("Journalling samples to " + file.getPath());
+
+		while (segmentsKept > 0 && segmentFiles.size() > segmentsKept)
+		{
+			File oldest = segmentFiles.removeFirst();
+			if (!oldest.delete())
+			{
+				logger.warn("Could not delete old journal segment " + oldest.getPath());
+			}
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads back the segments written by a SampleJournal, in order, one record after the next straight out of the mapped files.
+ *
+ * Run it on its own to summarise a journal, or to turn it into CSV:
+ *
+ *   java -cp LatencyPingPong.jar com.itsjamilahmed.latencypingpong.SampleJournalReader [--csv] journal-directory [node-name]
+ *
+ * The summary has the RTT percentiles of each (pinger, ponger group, ponger) pair over the whole journal, and how fast it was read.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SampleJournalReader {
+
+	/**
+	 * Called for each sample in turn. The names are the same String objects every time for the same node within a segment.
+	 */
+	public interface SampleVisitor {
+
+		void sample(long sequence, String pingerNodeName, String pongerNodeGroupName, String pongerNodeName,
+				long sendNs, long receiveNs, long rttNs, long dwellNs, int payloadSize, int flags);
+	}
+
+	/**
+	 * The segments in a directory, oldest first.
+	 *
+	 * @param filePrefix Only those of one node, or null for all of them
+	 */
+	public static File[] listSegments(File directory, final String filePrefix) {
+
+		File[] segments = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SampleJournal.FILE_SUFFIX)
+						&& (filePrefix == null || file.getName().startsWith(filePrefix + "-"));
+			}
+		});
+		if (segments == null)
+		{
+			return new File[0];
+		}
+
+		// Named <prefix>-<start ms>-<count>, so sort on what follows the prefix, not the whole name, to interleave several nodes' by time
+		Arrays.sort(segments, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return startOf(a.getName()).compareTo(startOf(b.getName()));
+			}
+
+			private String startOf(String name) {
+				int end = name.length() - SampleJournal.FILE_SUFFIX.length();
+				return name.substring(Math.max(0, end - 18), end) + name;		// The time and count, then the whole name if those are the same
+			}
+		});
+		return segments;
+	}
+
+	/**
+	 * Read every sample of every segment, in the order they were written.
+	 *
+	 * @return the number of bytes read
+	 */
+	public static long scan(File[] segments, SampleVisitor visitor) throws IOException {
+
+		long bytesRead = 0;
+		for (File segment : segments)
+		{
+			bytesRead += scanSegment(segment, visitor);
+		}
+		return bytesRead;
+	}
+
+	/**
+	 * Read every sample of one segment. It may still be being written to, in which case this reads as far as it has got.
+	 *
+	 * @return the number of bytes read
+	 */
+	public static long scanSegment(File segment, SampleVisitor visitor) throws IOException {
+
+		MappedByteBuffer buffer;
+		RandomAccessFile randomAccessFile = new RandomAccessFile(segment, "r");
+		try {
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		} finally {
+			randomAccessFile.close();
+		}
+
+		if (buffer.limit() < SampleJournal.RECORD_LENGTH || buffer.get(0) != SampleJournal.TYPE_HEADER
+				|| buffer.getInt(SampleJournal.HEADER_OFFSET_MAGIC) != SampleJournal.MAGIC)
+		{
+			throw new IOException(segment.getPath() + " is not a sample journal segment.");
+		}
+		if (buffer.getInt(SampleJournal.HEADER_OFFSET_VERSION) != SampleJournal.VERSION
+				|| buffer.getInt(SampleJournal.HEADER_OFFSET_RECORD_LENGTH) != SampleJournal.RECORD_LENGTH)
+		{
+			throw new IOException(segment.getPath() + " is from an incompatible version of the sample journal.");
+		}
+
+		String[] names = new String[64];		// By node id, as named in this segment
+		int position = SampleJournal.RECORD_LENGTH;
+		for (; position + SampleJournal.RECORD_LENGTH <= buffer.limit(); position += SampleJournal.RECORD_LENGTH)
+		{
+			byte type = buffer.get(position);
+			if (type == SampleJournal.TYPE_SAMPLE)
+			{
+				visitor.sample(buffer.getLong(position + SampleJournal.SAMPLE_OFFSET_SEQUENCE),
+						nameOf(names, buffer.getInt(position + SampleJournal.SAMPLE_OFFSET_PINGER)),
+						nameOf(names, buffer.getInt(position + SampleJournal.SAMPLE_OFFSET_PONGER_GROUP)),
+						nameOf(names, buffer.getInt(position + SampleJournal.SAMPLE_OFFSET_PONGER)),
+						buffer.getLong(position + SampleJournal.SAMPLE_OFFSET_SEND_NS),
+						buffer.getLong(position + SampleJournal.SAMPLE_OFFSET_RECEIVE_NS),
+						buffer.getLong(position + SampleJournal.SAMPLE_OFFSET_RTT_NS),
+						buffer.getLong(position + SampleJournal.SAMPLE_OFFSET_DWELL_NS),
+						buffer.getInt(position + SampleJournal.SAMPLE_OFFSET_PAYLOAD_SIZE),
+						buffer.get(position + SampleJournal.SAMPLE_OFFSET_FLAGS) & 0xFF);
+			}
+			else if (type == SampleJournal.TYPE_NAME)
+			{
+				int id = buffer.getInt(position + SampleJournal.NAME_OFFSET_ID);
+				if (id >= names.length)
+				{
+					names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+				}
+				names[id] = readName(buffer, position);
+			}
+			else
+			{
+				break;			// The end of what has been written
+			}
+		}
+		return position;
+	}
+
+	private static String nameOf(String[] names, int id) {
+		return (id >= 0 && id < names.length && names[id] != null) ? names[id] : "";
+	}
+
+	private static String readName(MappedByteBuffer buffer, int position) {
+
+		int length = Math.min(buffer.get(position + SampleJournal.NAME_OFFSET_SLOT) & 0xFF, NodeNameInterner.MAX_NAME_BYTES);
+		byte[] name = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			name[i] = buffer.get(position + SampleJournal.NAME_OFFSET_SLOT + 1 + i);
+		}
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		boolean csv = args.length > 0 && args[0].equals("--csv");
+		int firstArg = csv ? 1 : 0;
+		if (args.length <= firstArg)
+		{
+			System.out.println("Usage: " + SampleJournalReader.class.getName() + " [--csv] <journal-directory> [<node-name>]");
+			System.exit(0);
+		}
+
+		File[] segments = listSegments(new File(args[firstArg]), args.length > firstArg + 1 ? args[firstArg + 1] : null);
+		if (segments.length == 0)
+		{
+			System.out.println("No journal segments found in " + args[firstArg]);
+			System.exit(0);
+		}
+
+		if (csv)
+		{
+			System.out.println("sequence,pinger,pongerGroup,ponger,sendNs,receiveNs,rttNs,dwellNs,payloadSize,flags");
+			final StringBuilder line = new StringBuilder(128);
+			scan(segments, new SampleVisitor() {
+				@Override
+				public void sample(long sequence, String pingerNodeName, String pongerNodeGroupName, String pongerNodeName,
+						long sendNs, long receiveNs, long rttNs, long dwellNs, int payloadSize, int flags) {
+
+					line.setLength(0);
+					line.append(sequence).append(',').append(pingerNodeName).append(',').append(pongerNodeGroupName).append(',')
+							.append(pongerNodeName).append(',').append(sendNs).append(',').append(receiveNs).append(',')
+							.append(rttNs).append(',').append(dwellNs).append(',').append(payloadSize).append(',').append(flags);
+					System.out.println(line);
+				}
+			});
+			return;
+		}
+
+		// Otherwise summarise each pair
+		final Map<String, LatencyHistogram> rttPerPair = new TreeMap<String, LatencyHistogram>();
+		final long[] flagged = new long[1];
+		long startNs = System.nanoTime();
+		long bytesRead = scan(segments, new SampleVisitor() {
+			private String lastPinger, lastPongerGroup, lastPonger;		// Saves building the key again for a run of the same pair
+			private LatencyHistogram lastRtt;
+
+			@Override
+			public void sample(long sequence, String pingerNodeName, String pongerNodeGroupName, String pongerNodeName,
+					long sendNs, long receiveNs, long rttNs, long dwellNs, int payloadSize, int flags) {
+
+				if ((flags & (SampleJournal.FLAG_DUPLICATE | SampleJournal.FLAG_TIMED_OUT)) != 0)
+				{
+					flagged[0]++;
+					return;			// Not in the results when they arrived either
+				}
+				if (pingerNodeName != lastPinger || pongerNodeGroupName != lastPongerGroup || pongerNodeName != lastPonger)
+				{
+					String pair = pingerNodeName + " -> " + pongerNodeGroupName + ":" + pongerNodeName;
+					lastRtt = rttPerPair.get(pair);
+					if (lastRtt == null)
+					{
+						lastRtt = new LatencyHistogram();
+						rttPerPair.put(pair, lastRtt);
+					}
+					lastPinger = pingerNodeName;
+					lastPongerGroup = pongerNodeGroupName;
+					lastPonger = pongerNodeName;
+				}
+				lastRtt.record(rttNs);
+			}
+		});
+		double seconds = (System.nanoTime() - startNs) / 1e9;
+
+		long samples = 0;
+		for (Map.Entry<String, LatencyHistogram> pair : rttPerPair.entrySet())
+		{
+			System.out.println(pair.getKey() + ": " + ResultsPublisher.percentilesToJson(pair.getValue()));
+			samples += pair.getValue().getTotalCount();
+		}
+		System.out.println(String.format(java.util.Locale.US, "%d samples (and %d duplicate or timed out) from %d segments. Read %.1f MB in %.3f s, %.1f MB/s.",
+				samples, flagged[0], segments.length, bytesRead / 1e6, seconds, bytesRead / 1e6 / seconds));
+	}
+}
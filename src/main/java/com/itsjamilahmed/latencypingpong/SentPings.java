@@ -0,0 +1,111 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single-producer, single-consumer ring of the pings this node has sent, handed from the sending thread to the results
+ * thread so that every ping is opened as it is sent. A ping nobody answers is then still closed off at its deadline and
+ * summarised, with everyone on the roster missing, rather than never being seen at all.
+ *
+ * Only the sequence number and send times are handed over, into pre-allocated arrays, so nothing is allocated per ping.
+ * If the ring is full the sender is not held up; the ping is counted as dropped, and is opened by its first pong instead.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SentPings {
+
+	private final long[] sequences;
+	private final long[] sendTimesNs;
+	private final long[] sendTimesMs;
+	private final int mask;
+
+	// Written by the producer only
+	private final AtomicLong tail = new AtomicLong(0);			// Next slot to publish
+	private long producerIndex = 0;
+	private long cachedHead = 0;								// Producer's last view of the consumer position
+	private final AtomicLong drops = new AtomicLong(0);
+
+	// Written by the consumer only
+	private final AtomicLong head = new AtomicLong(0);			// Next slot to take
+	private long consumerIndex = 0;
+	private long cachedTail = 0;								// Consumer's last view of the producer position
+	private long sequence;										// Of the ping taken by the last poll()
+	private long sendNs;
+	private long sendMs;
+
+	/**
+	 * @param requestedCapacity Rounded up to a power of two
+	 */
+	public SentPings(int requestedCapacity) {
+
+		int capacity = Integer.highestOneBit(Math.max(requestedCapacity, 2) - 1) << 1;
+		this.sequences = new long[capacity];
+		this.sendTimesNs = new long[capacity];
+		this.sendTimesMs = new long[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Producer: hand over a ping that has just been sent.
+	 *
+	 * @return false if the ring was full, and the ping was counted as dropped
+	 */
+	public boolean sent(long sequence, long sendNs, long sendMs) {
+
+		if (producerIndex - cachedHead >= sequences.length) {
+			cachedHead = head.get();
+			if (producerIndex - cachedHead >= sequences.length) {
+				drops.lazySet(drops.get() + 1);
+				return false;
+			}
+		}
+
+		int index = (int) producerIndex & mask;
+		sequences[index] = sequence;
+		sendTimesNs[index] = sendNs;
+		sendTimesMs[index] = sendMs;
+		producerIndex++;
+		tail.lazySet(producerIndex);
+		return true;
+	}
+
+	/**
+	 * Consumer: take the next ping handed over, without waiting. Its details are then in getSequence() etc. until the next call.
+	 *
+	 * @return false if there are none waiting
+	 */
+	public boolean poll() {
+
+		if (consumerIndex >= cachedTail) {
+			cachedTail = tail.get();
+			if (consumerIndex >= cachedTail) {
+				return false;
+			}
+		}
+
+		int index = (int) consumerIndex & mask;
+		sequence = sequences[index];
+		sendNs = sendTimesNs[index];
+		sendMs = sendTimesMs[index];
+		consumerIndex++;
+		head.lazySet(consumerIndex);
+		return true;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getSendNs() {
+		return sendNs;
+	}
+
+	public long getSendMs() {
+		return sendMs;
+	}
+
+	public long getDrops() {
+		return drops.get();
+	}
+}
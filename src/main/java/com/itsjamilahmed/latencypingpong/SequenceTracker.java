@@ -0,0 +1,182 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the ping sequence numbers coming back from one ponger, to tell loss, reordering and duplicates apart.
+ *
+ * A sliding bitmap remembers which of the most recent WINDOW_SIZE sequence numbers have arrived.
+ * A missing sequence number is only declared lost once REORDER_THRESHOLD later ones have arrived (like a TCP
+ * duplicate-ack threshold), so a pong that is merely overtaken counts as reordered rather than lost.
+ * If a pong turns up after it was declared lost it is counted as a late arrival.
+ *
+ * Every sequence number is checked for loss exactly once, so the cost per pong is constant. Not thread-safe.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SequenceTracker {
+
+	public static final int WINDOW_SIZE = 1024;				// Must be a power of two
+	public static final int REORDER_THRESHOLD = 3;			// Must be less than WINDOW_SIZE
+
+	public static final int RECEIVED = 0;					// What received() can return
+	public static final int REORDERED = 1;
+	public static final int DUPLICATE = 2;
+	public static final int LATE = 3;
+
+	private final long[] window = new long[WINDOW_SIZE / 64];
+	private long highestSequence = -1;						// -1 until the first pong is seen, nothing before that counts as lost
+	private long lossCheckedUpTo = -1;						// Every sequence number up to here has been decided as received or lost
+
+	// Counts for the current period
+	private long received = 0;
+	private long lost = 0;
+	private long reordered = 0;
+	private long duplicates = 0;
+	private long late = 0;
+	private long timeouts = 0;
+
+	/**
+	 * Note the arrival of a sequence number.
+	 *
+	 * @return one of RECEIVED, REORDERED, DUPLICATE or LATE
+	 */
+	public int received(long sequence) {
+
+		if (highestSequence == -1) {
+			highestSequence = sequence;
+			lossCheckedUpTo = sequence;
+			setBit(sequence);
+			received++;
+			return RECEIVED;
+		}
+
+		if (sequence > highestSequence) {
+			advanceTo(sequence);
+			received++;
+			return RECEIVED;
+		}
+
+		// Older than the highest seen. Duplicate, overtaken, or too late?
+		if (highestSequence - sequence >= WINDOW_SIZE) {
+			late++;						// Too old to tell whether it is also a duplicate
+			return LATE;
+		}
+		if (isBitSet(sequence)) {
+			duplicates++;
+			return DUPLICATE;
+		}
+
+		setBit(sequence);
+		if (sequence <= lossCheckedUpTo) {
+			late++;						// Already counted as lost
+			return LATE;
+		}
+		received++;
+		reordered++;
+		return REORDERED;
+	}
+
+	/**
+	 * Note a pong that was received, but after its ping had already been closed off and summarised.
+	 */
+	public void timedOut() {
+		timeouts++;
+	}
+
+	private void advanceTo(long sequence) {
+
+		long previousHighest = highestSequence;
+
+		// Decide on everything that is now far enough behind. Anything above the previous highest can't have arrived.
+		long decideUpTo = sequence - REORDER_THRESHOLD;
+		if (decideUpTo > lossCheckedUpTo) {
+			long checkFrom = lossCheckedUpTo + 1;
+			long lastKnown = Math.min(decideUpTo, previousHighest);
+			for (long s = checkFrom; s <= lastKnown; s++) {
+				if (!isBitSet(s)) {
+					lost++;
+				}
+			}
+			if (decideUpTo > previousHighest) {
+				lost += decideUpTo - Math.max(previousHighest, lossCheckedUpTo);
+			}
+			lossCheckedUpTo = decideUpTo;
+		}
+
+		// Clear the bits for the slots being moved into, which still hold sequence numbers from a window ago
+		if (sequence - previousHighest >= WINDOW_SIZE) {
+			Arrays.fill(window, 0);
+		} else {
+			for (long s = previousHighest + 1; s < sequence; s++) {
+				clearBit(s);
+			}
+		}
+
+		highestSequence = sequence;
+		setBit(sequence);
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public long getLost() {
+		return lost;
+	}
+
+	public long getReordered() {
+		return reordered;
+	}
+
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	public long getLate() {
+		return late;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Lost as a percentage of all the pings decided on in this period.
+	 */
+	public double getLossPercent() {
+		return (received + lost) == 0 ? 0.0 : (100.0 * lost) / (received + lost);
+	}
+
+	/**
+	 * Start counting a new period. The window itself carries on.
+	 */
+	public void resetCounts() {
+
+		received = 0;
+		lost = 0;
+		reordered = 0;
+		duplicates = 0;
+		late = 0;
+		timeouts = 0;
+	}
+
+	private boolean isBitSet(long sequence) {
+
+		int slot = (int) (sequence & (WINDOW_SIZE - 1));
+		return (window[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void setBit(long sequence) {
+
+		int slot = (int) (sequence & (WINDOW_SIZE - 1));
+		window[slot >>> 6] |= (1L << slot);
+	}
+
+	private void clearBit(long sequence) {
+
+		int slot = (int) (sequence & (WINDOW_SIZE - 1));
+		window[slot >>> 6] &= ~(1L << slot);
+	}
+}
@@ -0,0 +1,99 @@
+package com.itsjamilahmed.latencypingpong;
+
+import org.apache.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * How latency changes as more sessions are connected to the broker at once (see --sessions).
+ *
+ * The sessions are started one at a time. Each session's results thread records its round-trip times here, and at the
+ * end of each step (just before the next session starts) the times of all the sessions so far are put together into the
+ * percentiles for that number of sessions. After the last step, the table of them all is logged as one report.
+ *
+ * Each session's recorder has that session's results thread as its only writer, and the ramp thread as its only reader.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SessionScaling {
+
+	private static final Logger logger = Logger.getLogger(SessionScaling.class);
+
+	private final String[] sessionNames;
+	private final LatencyRecorder[] sessionRttRecorders;
+	private final LatencyHistogram stepRtt = new LatencyHistogram();	// All the sessions' times of one step, put together
+	private final JSONArray steps = new JSONArray();					// The report of every step so far
+
+	public SessionScaling(String[] sessionNames) {
+
+		this.sessionNames = sessionNames;
+		this.sessionRttRecorders = new LatencyRecorder[sessionNames.length];
+		for (int i = 0; i < sessionNames.length; i++)
+		{
+			sessionRttRecorders[i] = new LatencyRecorder();
+		}
+	}
+
+	/**
+	 * Record a round-trip time seen by the results thread of a session.
+	 *
+	 * @param session Index of the session, from 0
+	 */
+	public void record(int session, long rttNs) {
+		sessionRttRecorders[session].record(rttNs);
+	}
+
+	/**
+	 * Close off a step, summarising the round-trip times recorded since the previous one across the sessions running during it.
+	 *
+	 * @param activeSessions How many sessions were running in the step
+	 * @return the step's report
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized JSONObject stepComplete(int activeSessions) {
+
+		stepRtt.reset();
+		JSONObject sessionPercentiles = new JSONObject();
+		for (int i = 0; i < activeSessions; i++)
+		{
+			LatencyHistogram intervalRtt = sessionRttRecorders[i].getIntervalHistogram();
+			if (intervalRtt.getTotalCount() != 0)
+			{
+				sessionPercentiles.put(sessionNames[i], ResultsPublisher.percentilesToJson(intervalRtt));
+				stepRtt.add(intervalRtt);
+			}
+		}
+
+		JSONObject step = new JSONObject();
+		step.put("sessions", activeSessions);
+		step.put("percentiles", ResultsPublisher.percentilesToJson(stepRtt));
+		step.put("sessionPercentiles", sessionPercentiles);
+		steps.add(step);
+
+		logger.info("Session scaling: " + activeSessions + " session(s), p99 RTT " + ResultsPublisher.nanosToMillis(stepRtt.getValueAtPercentile(99))
+				+ "ms over " + stepRtt.getTotalCount() + " pongs. " + step.toString());
+		return step;
+	}
+
+	/**
+	 * Log how the p99 went as sessions were added, one line per step, and the whole report.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void logReport() {
+
+		StringBuilder table = new StringBuilder("Session scaling report. Sessions: p50 / p99 / p99.9 RTT (ms)");
+		for (Object stepObject : steps)
+		{
+			JSONObject step = (JSONObject) stepObject;
+			JSONObject percentiles = (JSONObject) step.get("percentiles");
+			table.append("\n\t").append(step.get("sessions")).append(": ")
+					.append(percentiles.get("p50")).append(" / ").append(percentiles.get("p99")).append(" / ").append(percentiles.get("p99.9"));
+		}
+		logger.info(table.toString());
+
+		JSONObject report = new JSONObject();
+		report.put("steps", steps);
+		logger.info("Session scaling report: " + report.toString());
+	}
+}
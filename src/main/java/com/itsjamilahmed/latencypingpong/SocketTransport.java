@@ -0,0 +1,678 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Ping-pong straight over TCP or UDP sockets between the nodes, with no broker in the path.
+ * Run alongside another transport (see --baseline) it shows how much of that one's round-trip time is the messaging rather than the network.
+ *
+ * Every node listens on one address and sends every message to all of its peers, and each keeps only what matches its own subscriptions.
+ * A peer can be this node itself, to answer its own pings as it would over a broker.
+ * Over TCP each node connects out to each peer to send, with Nagle's algorithm off, and reads from the connections its peers make to it.
+ * Over UDP a single datagram socket does both. Either way every message is one frame:
+ *
+ *   int length of the rest | byte type | short topic length | topic (UTF-8) | payload
+ *
+ * The sockets are all non-blocking and served by one selector thread, which is also the thread the listener is called on.
+ * Frames are built and read in direct buffers, so the only copying is of the payload to and from the listener's byte array.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SocketTransport implements Transport {
+
+	public static final String TCP = "tcp";
+	public static final String UDP = "udp";
+
+	static final int MAX_FRAME_LENGTH = 65507;						// The most a UDP datagram can carry, and kept the same for TCP
+	private static final int HEADER_LENGTH = 7;						// Length, type and topic length
+	private static final byte TYPE_TEXT = 1;
+	private static final byte TYPE_BYTES = 2;
+	private static final int PENDING_LENGTH = 1024 * 1024;			// Room per TCP peer for what its socket can't take yet. A peer that lets this fill is dropped.
+	private static final long RECONNECT_INTERVAL_NS = 1000000000L;
+	private static final long SELECT_TIMEOUT_MS = 100;				// So reconnects and close() are noticed between messages
+	private static final int TOPIC_CACHE_SIZE = 16;					// Received topics already matched against the subscriptions
+
+	private Logger logger = Logger.getLogger(SocketTransport.class);	// A log4j logger to handle all output
+	private final String name;
+	private final boolean tcp;
+	private final InetSocketAddress listenAddress;
+	private final InetSocketAddress[] peerAddresses;
+	private final Peer[] peers;										// TCP only
+
+	private Selector selector;
+	private ServerSocketChannel serverChannel;						// TCP only
+	private DatagramChannel datagramChannel;						// UDP only
+	private volatile boolean running = false;
+
+	private final CopyOnWriteArrayList<String> subscriptions = new CopyOnWriteArrayList<String>();
+	private volatile int subscriptionsVersion = 0;
+	private volatile TransportListener listener;
+
+	// Only used by the selector thread
+	private final byte[][] cachedTopics = new byte[TOPIC_CACHE_SIZE][];
+	private final boolean[] cachedTopicMatches = new boolean[TOPIC_CACHE_SIZE];
+	private int cachedTopicsVersion = -1;
+	private int nextCachedTopic = 0;
+	private final byte[] receiveBuffer = new byte[MAX_FRAME_LENGTH];	// What the listener is given
+	private ByteBuffer datagramBuffer;
+
+	/**
+	 * @param name Either TCP or UDP
+	 */
+	public SocketTransport(String name, Map<String,Object> parameters) {
+
+		this.name = name;
+		this.tcp = TCP.equals(name);
+		this.listenAddress = parseAddress(parameters.get("socket_listen").toString());
+
+		String[] peerList = parameters.get("socket_peers").toString().split(",");
+		int peerCount = 0;
+		InetSocketAddress[] addresses = new InetSocketAddress[peerList.length];
+		for (String peer : peerList)
+		{
+			if (!peer.trim().isEmpty())
+			{
+				addresses[peerCount++] = parseAddress(peer.trim());
+			}
+		}
+		this.peerAddresses = Arrays.copyOf(addresses, peerCount);
+
+		this.peers = new Peer[tcp ? peerCount : 0];
+		for (int i = 0; i < peers.length; i++)
+		{
+			peers[i] = new Peer(peerAddresses[i]);
+		}
+	}
+
+	/**
+	 * Parse a host:port, or [host]:port for an IPv6 address.
+	 *
+	 * @return the address, or null if it isn't in that form
+	 */
+	static InetSocketAddress parseAddress(String address) {
+
+		int colon = address.lastIndexOf(':');
+		if (colon <= 0 || colon == address.length() - 1)
+		{
+			return null;
+		}
+		String host = address.substring(0, colon);
+		if (host.startsWith("[") && host.endsWith("]"))
+		{
+			host = host.substring(1, host.length() - 1);
+		}
+		try {
+			int port = Integer.parseInt(address.substring(colon + 1));
+			return (port < 0 || port > 65535) ? null : new InetSocketAddress(host, port);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean connect() {
+
+		if (running)
+		{
+			return true;
+		}
+
+		try {
+			selector = Selector.open();
+			if (tcp)
+			{
+				serverChannel = ServerSocketChannel.open();
+				serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+				serverChannel.bind(listenAddress);
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+			}
+			else
+			{
+				datagramChannel = DatagramChannel.open();
+				datagramChannel.bind(listenAddress);
+				datagramChannel.configureBlocking(false);
+				datagramChannel.register(selector, SelectionKey.OP_READ);
+				datagramBuffer = ByteBuffer.allocateDirect(MAX_FRAME_LENGTH);
+			}
+		} catch (IOException e) {
+			logger.error("Could not listen for " + name + " on " + listenAddress + ". Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+			closeChannels();
+			return false;
+		}
+
+		logger.info("Listening for " + name + " on " + listenAddress + ", sending to " + peerAddresses.length + " peers: " + Arrays.toString(peerAddresses));
+		running = true;
+		Thread selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runSelector();
+			}
+		}, "SocketTransport-" + name);
+		selectorThread.start();
+		return true;
+	}
+
+	/**
+	 * Only the one, as it owns the listening port. Its senders are independent of each other anyway.
+	 */
+	@Override
+	public Transport createConnection() {
+		return this;
+	}
+
+	@Override
+	public TransportTopic createTopic(String name) {
+		return new TransportTopic(name, name.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public TransportSender createSender() {
+		return new SocketSender();
+	}
+
+	@Override
+	public void subscribe(String topic) {
+
+		subscriptions.addIfAbsent(topic);
+		subscriptionsVersion++;
+	}
+
+	@Override
+	public void start(TransportListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void close() {
+
+		running = false;
+		listener = null;
+		if (selector != null)
+		{
+			selector.wakeup();
+		}
+	}
+
+	private void runSelector() {
+
+		try {
+			while (running)
+			{
+				long now = System.nanoTime();
+				for (Peer peer : peers)
+				{
+					peer.connectIfDue(now);
+				}
+
+				selector.select(SELECT_TIMEOUT_MS);
+
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext())
+				{
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+					if (!key.isValid())
+					{
+						continue;
+					}
+
+					if (key.isAcceptable())
+					{
+						accept();
+					}
+					else if (key.attachment() instanceof Peer)
+					{
+						Peer peer = (Peer) key.attachment();
+						if (key.isConnectable())
+						{
+							peer.finishConnect();
+						}
+						else if (key.isWritable())
+						{
+							peer.flush();
+						}
+					}
+					else if (key.attachment() instanceof ByteBuffer)
+					{
+						readConnection(key);
+					}
+					else if (key.isReadable())
+					{
+						readDatagrams();
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.error("The " + name + " transport has stopped. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+		finally
+		{
+			closeChannels();
+		}
+	}
+
+	private void accept() throws IOException {
+
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+		{
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		// The connection's read buffer goes with it, holding any part of a frame until the rest arrives
+		channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(MAX_FRAME_LENGTH));
+		logger.info("Accepted a " + name + " connection from " + channel.getRemoteAddress());
+	}
+
+	private void readConnection(SelectionKey key) {
+
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer buffer = (ByteBuffer) key.attachment();
+		try {
+			if (channel.read(buffer) < 0)
+			{
+				logger.info("Connection from " + channel.getRemoteAddress() + " was closed by the peer.");
+				key.cancel();
+				channel.close();
+				return;
+			}
+
+			buffer.flip();
+			while (buffer.remaining() >= 4)
+			{
+				int frameLength = 4 + buffer.getInt(buffer.position());
+				if (frameLength < HEADER_LENGTH || frameLength > MAX_FRAME_LENGTH)
+				{
+					throw new IOException("Received a frame length of " + frameLength + ", which is not valid. The peer is not a " + name + " transport of this program?");
+				}
+				if (buffer.remaining() < frameLength)
+				{
+					break;													// Wait for the rest of it
+				}
+				receiveFrame(buffer, buffer.position(), frameLength);
+				buffer.position(buffer.position() + frameLength);
+			}
+			buffer.compact();
+		} catch (IOException e) {
+			logger.warn("Closing a " + name + " connection after an error. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException closeException) {
+			}
+		}
+	}
+
+	private void readDatagrams() throws IOException {
+
+		while (datagramChannel.receive(datagramBuffer) != null)
+		{
+			datagramBuffer.flip();
+			int frameLength = datagramBuffer.remaining();
+			if (frameLength >= HEADER_LENGTH && 4 + datagramBuffer.getInt(0) == frameLength)
+			{
+				receiveFrame(datagramBuffer, 0, frameLength);
+			}
+			else
+			{
+				logger.debug("Received and ignored a datagram of " + frameLength + " bytes that is not a " + name + " transport frame.");
+			}
+			datagramBuffer.clear();
+		}
+	}
+
+	private void receiveFrame(ByteBuffer buffer, int frameStart, int frameLength) {
+
+		byte type = buffer.get(frameStart + 4);
+		int topicLength = buffer.getShort(frameStart + 5) & 0xFFFF;
+		int topicStart = frameStart + HEADER_LENGTH;
+		int payloadStart = topicStart + topicLength;
+		int payloadLength = frameStart + frameLength - payloadStart;
+
+		TransportListener currentListener = listener;
+		if (currentListener == null || payloadLength < 0 || !isSubscribed(buffer, topicStart, topicLength))
+		{
+			return;
+		}
+
+		// Absolute gets leave the buffer's position where it was
+		for (int i = 0; i < payloadLength; i++)
+		{
+			receiveBuffer[i] = buffer.get(payloadStart + i);
+		}
+
+		try {
+			if (type == TYPE_TEXT)
+			{
+				currentListener.onText(new String(receiveBuffer, 0, payloadLength, StandardCharsets.UTF_8));
+			}
+			else if (type == TYPE_BYTES)
+			{
+				currentListener.onBytes(receiveBuffer, payloadLength);
+			}
+		} catch (RuntimeException e) {
+			// Don't let one bad message stop the selector thread for everything else
+			logger.error("An exception occurred processing a received message. Exception message -> " + e.getMessage());
+			logger.debug("Stack Trace: ",e);
+		}
+	}
+
+	/**
+	 * Does the topic in the buffer match a subscription? The answer for the last few topics seen is kept, so steady traffic needs no String for its topic.
+	 */
+	private boolean isSubscribed(ByteBuffer buffer, int topicStart, int topicLength) {
+
+		int currentVersion = subscriptionsVersion;
+		if (cachedTopicsVersion != currentVersion)
+		{
+			Arrays.fill(cachedTopics, null);
+			cachedTopicsVersion = currentVersion;
+		}
+
+		for (int i = 0; i < TOPIC_CACHE_SIZE; i++)
+		{
+			byte[] cachedTopic = cachedTopics[i];
+			if (cachedTopic != null && cachedTopic.length == topicLength && topicEquals(buffer, topicStart, cachedTopic))
+			{
+				return cachedTopicMatches[i];
+			}
+		}
+
+		byte[] topic = new byte[topicLength];
+		for (int i = 0; i < topicLength; i++)
+		{
+			topic[i] = buffer.get(topicStart + i);
+		}
+		String topicName = new String(topic, StandardCharsets.UTF_8);
+		boolean matches = false;
+		for (String subscription : subscriptions)
+		{
+			if (LoopbackBus.matches(subscription, topicName))
+			{
+				matches = true;
+				break;
+			}
+		}
+
+		cachedTopics[nextCachedTopic] = topic;
+		cachedTopicMatches[nextCachedTopic] = matches;
+		nextCachedTopic = (nextCachedTopic + 1) % TOPIC_CACHE_SIZE;
+		return matches;
+	}
+
+	private static boolean topicEquals(ByteBuffer buffer, int topicStart, byte[] topic) {
+
+		for (int i = 0; i < topic.length; i++)
+		{
+			if (buffer.get(topicStart + i) != topic[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void closeChannels() {
+
+		for (Peer peer : peers)
+		{
+			peer.disconnect();
+		}
+		try {
+			if (serverChannel != null)
+			{
+				serverChannel.close();
+			}
+			if (datagramChannel != null)
+			{
+				datagramChannel.close();
+			}
+			if (selector != null)
+			{
+				for (SelectionKey key : selector.keys())
+				{
+					key.channel().close();
+				}
+				selector.close();
+			}
+		} catch (IOException e) {
+			logger.debug("Stack Trace: ",e);
+		}
+	}
+
+	/**
+	 * An outgoing TCP connection to a peer. Written to by any sending thread, and by the selector thread once the socket has room for a backlog.
+	 */
+	private final class Peer {
+
+		private final InetSocketAddress address;
+		private SocketChannel channel;				// Null until the next connection attempt
+		private SelectionKey key;
+		private boolean connected = false;
+		private boolean everConnected = false;
+		private ByteBuffer pending;					// Frames, or the rest of one, that the socket couldn't take yet
+		private long reconnectAtNs = System.nanoTime();
+		private long unsent = 0;					// Messages not sent while disconnected, reported on reconnecting
+
+		Peer(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		synchronized void connectIfDue(long nowNs) {
+
+			if (channel != null || nowNs - reconnectAtNs < 0)
+			{
+				return;
+			}
+
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				if (channel.connect(address))
+				{
+					key = channel.register(selector, 0, this);
+					connected();
+				}
+				else
+				{
+					key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+				}
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		synchronized void finishConnect() {
+
+			try {
+				if (channel.finishConnect())
+				{
+					key.interestOps(0);
+					connected();
+				}
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void connected() {
+
+			connected = true;
+			everConnected = true;
+			logger.info("Connected over " + name + " to peer " + address + (unsent > 0 ? ". " + unsent + " messages were not sent to it while it was unavailable." : ""));
+			unsent = 0;
+		}
+
+		/**
+		 * Send the frame from its position to its limit, or keep what doesn't fit in the socket for later.
+		 */
+		synchronized void write(ByteBuffer frame) {
+
+			if (!connected)
+			{
+				unsent++;
+				return;
+			}
+
+			try {
+				if (pending == null || pending.position() == 0)
+				{
+					channel.write(frame);
+					if (!frame.hasRemaining())
+					{
+						return;
+					}
+				}
+
+				// Anything already waiting must go first, so this waits behind it
+				if (pending == null)
+				{
+					pending = ByteBuffer.allocateDirect(PENDING_LENGTH);
+				}
+				if (frame.remaining() > pending.remaining())
+				{
+					throw new IOException("Over " + PENDING_LENGTH + " bytes are waiting to be sent to the peer, it is not keeping up");
+				}
+				pending.put(frame);
+				key.interestOps(SelectionKey.OP_WRITE);
+				selector.wakeup();
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		synchronized void flush() {
+
+			if (!connected)
+			{
+				return;
+			}
+
+			try {
+				pending.flip();
+				channel.write(pending);
+				pending.compact();
+				if (pending.position() == 0)
+				{
+					key.interestOps(0);
+				}
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void failed(IOException e) {
+
+			if (connected)
+			{
+				logger.warn("Lost the " + name + " connection to peer " + address + ". Will reconnect. Exception message -> " + e.getMessage());
+			}
+			else if (!everConnected)
+			{
+				logger.debug("Could not connect over " + name + " to peer " + address + " yet. Exception message -> " + e.getMessage());
+			}
+			disconnect();
+			reconnectAtNs = System.nanoTime() + RECONNECT_INTERVAL_NS;
+		}
+
+		synchronized void disconnect() {
+
+			connected = false;
+			if (pending != null)
+			{
+				pending.clear();				// A part sent frame is no use on a new connection
+			}
+			if (channel != null)
+			{
+				try {
+					channel.close();
+				} catch (IOException e) {
+				}
+				channel = null;
+				key = null;
+			}
+		}
+	}
+
+	/**
+	 * Builds each message into a frame in its own direct buffer, then sends it to every peer.
+	 */
+	private class SocketSender implements TransportSender {
+
+		private final ByteBuffer frame = ByteBuffer.allocateDirect(MAX_FRAME_LENGTH);
+
+		@Override
+		public void sendText(TransportTopic topic, String text) throws TransportException {
+
+			byte[] data = text.getBytes(StandardCharsets.UTF_8);
+			send(topic, TYPE_TEXT, data, data.length);
+		}
+
+		@Override
+		public void sendBytes(TransportTopic topic, byte[] data, int length) throws TransportException {
+			send(topic, TYPE_BYTES, data, length);
+		}
+
+		private void send(TransportTopic topic, byte type, byte[] data, int length) throws TransportException {
+
+			byte[] topicBytes = (byte[]) topic.getHandle();
+			int frameLength = HEADER_LENGTH + topicBytes.length + length;
+			if (frameLength > MAX_FRAME_LENGTH)
+			{
+				throw new TransportException("A message of " + length + " bytes to " + topic.getName() + " is too large for the " + name + " transport.", null, false);
+			}
+
+			frame.clear();
+			frame.putInt(frameLength - 4).put(type).putShort((short) topicBytes.length).put(topicBytes).put(data, 0, length);
+			frame.flip();
+
+			if (tcp)
+			{
+				for (Peer peer : peers)
+				{
+					frame.rewind();
+					peer.write(frame);
+				}
+			}
+			else
+			{
+				for (InetSocketAddress peerAddress : peerAddresses)
+				{
+					frame.rewind();
+					try {
+						datagramChannel.send(frame, peerAddress);		// Nothing is sent if the socket buffer is full, as with any lost datagram
+					} catch (IOException e) {
+						throw new TransportException(e.getMessage(), e, !datagramChannel.isOpen());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.InvalidPropertiesException;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPSessionStats;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import com.solacesystems.jcsmp.statistics.StatType;
+
+/**
+ * Solace messaging over the JCSMP API. One session to the message router, with the one producer it allows shared by all the senders.
+ *
+ * Text is carried in a TextMessage and bytes in a BytesMessage, so nodes on earlier versions can still read the JSON pings and pongs.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class SolaceTransport implements Transport, MetricsServer.MetricsSource {
+
+	public static final String NAME = "solace";
+
+	private Logger logger = Logger.getLogger(SolaceTransport.class);	// A log4j logger to handle all output
+	private Map<String,Object> parameters;
+	private JCSMPSession session;						// There will be a shared Solace session per Transport. (1 connection to the message router used.)
+	private XMLMessageProducer producer;				// Only one producer can exist per session, so need to share that too!
+	private XMLMessageConsumer consumer;
+
+	private boolean sessionCreated = false;
+	private volatile boolean sessionConnected = false;		// Also read by metrics scrapes
+
+	public SolaceTransport(Map<String,Object> parameters) {
+		this.parameters = parameters;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Every one of the session's own statistics. JCSMP keeps them up to date as it goes, so they are only read here.
+	 */
+	@Override
+	public void writeMetrics(MetricsServer.Writer writer) {
+
+		JCSMPSession session = this.session;
+		if (session == null || !sessionConnected)
+		{
+			return;
+		}
+
+		String node = parameters.get("node_name").toString();
+		JCSMPSessionStats stats = session.getSessionStats();
+		Enumeration<StatType> statTypes = StatType.elements();		// Not a Java enum, so no values()
+		while (statTypes.hasMoreElements())
+		{
+			StatType statType = statTypes.nextElement();
+			writer.counter("solace_session_stat", "JCSMP session statistics, by their StatType name.", stats.getStat(statType),
+					"node", node, "stat", statType.getLabel().toLowerCase(java.util.Locale.US));
+		}
+	}
+
+	@Override
+	public boolean connect() {
+
+		// This method can be called multiple times until the session is created and successfully connected.
+		// Will return true when all successful.
+
+		if (!sessionCreated)
+		{
+			// No session has been created yet...
+
+			// Setup the session properties
+			// Ref: https://docs.solace.com/API-Developer-Online-Ref-Documentation/java/com/solacesystems/jcsmp/JCSMPProperties.html
+			final JCSMPProperties properties = new JCSMPProperties();
+			properties.setProperty(JCSMPProperties.HOST, this.parameters.get("connection_url").toString());
+			properties.setProperty(JCSMPProperties.USERNAME, this.parameters.get("username").toString());
+			properties.setProperty(JCSMPProperties.PASSWORD, this.parameters.get("password").toString());
+			properties.setProperty(JCSMPProperties.VPN_NAME,  this.parameters.get("vpn").toString());
+			// If the session connection breaks and auto-connects, re-apply the topic subscriptions in case the router has timed them (and the connection) out.
+			// Otherwise can get a situation where the connection is live but router has no subscriptions for it so no messages ever arrive.
+			properties.setProperty(JCSMPProperties.REAPPLY_SUBSCRIPTIONS,  true);
+
+			try {
+				this.session = JCSMPFactory.onlyInstance().createSession(properties);
+				sessionCreated = true;
+				logger.debug("Session successfully created, will call connect()...");
+
+			} catch (Exception e) {
+
+				if(e instanceof InvalidPropertiesException){
+					logger.error("Couldn't create Solace session due to invalid properties. " + e.getMessage());
+//					logger.debug("Contents of properties object: " + properties.toString());
+					// The above is quite a large output and seems more noise than usefulness...
+				}
+				else {
+					logger.error("ERROR: An exception occured while creating the Solace session. Exception message -> " + e.getMessage());
+				}
+			}
+
+		}
+
+
+		// If successful, try and connect it.
+		if (sessionCreated && !sessionConnected) {
+			try {
+
+				this.session.connect();
+				sessionConnected = true;
+				// If successfully connected, get a XMLMessageProducer object too since that is to be shared by all threads
+				// Will need to create an anonymous inner class of 'StreamingPublishEventHandler' for it
+
+				this.producer = this.session.getMessageProducer(new JCSMPStreamingPublishEventHandler() {
+					@Override
+					public void responseReceived(String messageID) {
+						// No responses expected for direct messages but have this ready as a stub for future development...
+						logger.info("Producer received response for msg: " + messageID);
+					}
+					@Override
+					public void handleError(String messageID, JCSMPException e, long timestamp) {
+
+						if (e instanceof JCSMPTransportException){
+							// This one is quite serious, means there was an issue on the underlying TCP connection.
+							logger.error("A JCSMPTransportException occurred. Exception message -> " + e.getMessage());
+							logger.debug("Stack Trace: ",e);
+
+							// May as well terminate and start again
+							logger.error("*** Program will terminate now. ***");
+							System.exit(-1);
+						}
+						else
+						{
+							logger.error("Producer received error for msg: " + messageID + " @ " + timestamp + " - " + e);
+							logger.debug("Stack Trace: ",e);
+
+						}
+					}
+				});
+			}
+			catch (Exception e) {
+				sessionConnected = false;
+				if(e instanceof JCSMPTransportException){
+					logger.error("Could not connect to the Solace Message Router at " + parameters.get("connection_url").toString());
+					logger.debug("Stack Trace: ",e);
+
+				}
+				else if (e instanceof JCSMPException){
+					logger.error("Could not create Message Producer from the Session. Exception message -> " + e.getMessage());
+					logger.debug("Stack Trace: ",e);
+
+				}
+				else {
+					logger.error("An exception occured in the Solace Transport. Exception message -> " + e.getMessage());
+					logger.debug("Stack Trace: ",e);
+
+				}
+			}
+		}
+
+		return sessionConnected;
+	}
+
+	@Override
+	public Transport createConnection() {
+		return new SolaceTransport(parameters);		// A session, and so a producer, of its own
+	}
+
+	@Override
+	public TransportTopic createTopic(String name) {
+		return new TransportTopic(name, JCSMPFactory.onlyInstance().createTopic(name));
+	}
+
+	@Override
+	public TransportSender createSender() {
+		return new SolaceSender();
+	}
+
+	@Override
+	public void subscribe(String topic) throws TransportException {
+
+		try {
+			session.addSubscription(JCSMPFactory.onlyInstance().createTopic(topic));
+		} catch (JCSMPException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void start(final TransportListener listener) throws TransportException {
+
+		// Get a Message Consumer Object from the session
+		// An events listener is required when getting a Message consumer for asynchronous callback. (With an onReceive and onException defined.)
+		// Create an anonymous inner class for that upon requesting it.
+		try {
+			consumer = session.getMessageConsumer(new XMLMessageListener() {
+
+				private byte[] receiveBuffer = new byte[256];		// Will grow if something larger ever arrives
+
+				@Override
+				public void onReceive(BytesXMLMessage msg) {
+
+					if (msg instanceof TextMessage) {
+						listener.onText(((TextMessage) msg).getText());
+					}
+					else if (msg instanceof BytesMessage) {
+						int length = msg.getAttachmentContentLength();
+						if (length > receiveBuffer.length) {
+							receiveBuffer = new byte[length];
+						}
+						length = msg.readAttachmentBytes(receiveBuffer);
+						listener.onBytes(receiveBuffer, length);
+					}
+					else {
+						// Received a message not in the expected format.
+						logger.debug("Received and ignored a message not in any of the expected formats: " + msg.dump());
+					}
+				}
+
+				@Override
+				public void onException(JCSMPException e) {
+					if (e instanceof JCSMPTransportException){
+						// This one is quite serious, means there was an issue on the underlying TCP connection.
+						logger.error("A JCSMPTransportException occurred. Exception message -> " + e.getMessage());
+						logger.debug("Stack Trace: ",e);
+
+						// May as well terminate and start again
+						logger.error("*** Program will terminate now. ***");
+						System.exit(-1);
+					}
+					else
+					{
+						logger.error("Consumer received an exception: " + e);
+						logger.debug("Stack Trace: ",e);
+
+					}
+				}
+			});
+			consumer.start();
+			logger.debug("Consumer object has been started successfully");
+		} catch (JCSMPException e) {
+			throw wrap(e);
+		}
+	}
+
+	@Override
+	public void close() {
+
+		if (consumer != null) {
+			consumer.close();
+		}
+		if (session != null) {
+			session.closeSession();
+		}
+	}
+
+	private static TransportException wrap(JCSMPException e) {
+		return new TransportException(e.getMessage(), e, e instanceof JCSMPTransportException);
+	}
+
+	/**
+	 * Keeps a message object of each type to reuse for every send.
+	 */
+	private class SolaceSender implements TransportSender {
+
+		private final TextMessage textMsg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+		private final BytesMessage bytesMsg = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+
+		@Override
+		public void sendText(TransportTopic topic, String text) throws TransportException {
+
+			textMsg.setText(text);
+			send(textMsg, topic);
+		}
+
+		@Override
+		public void sendBytes(TransportTopic topic, byte[] data, int length) throws TransportException {
+
+			// setData() takes the whole array, so anything shorter has to be copied to one of the right size
+			bytesMsg.setData(length == data.length ? data : Arrays.copyOf(data, length));
+			send(bytesMsg, topic);
+		}
+
+		private void send(XMLMessage msg, TransportTopic topic) throws TransportException {
+
+			try {
+				producer.send(msg, (Topic) topic.getHandle());
+			} catch (JCSMPException e) {
+				throw wrap(e);
+			}
+		}
+	}
+}
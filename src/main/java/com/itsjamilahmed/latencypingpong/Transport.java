@@ -0,0 +1,55 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * The publish/subscribe messaging that the ping, pong and results threads run over.
+ *
+ * One Transport is one connection, shared by all the threads of a node. Each sending thread gets its own
+ * TransportSender from it, and received messages are delivered to a single TransportListener, one at a time.
+ *
+ * Messages are either text (JSON pings and pongs, results and summaries) or bytes (the binary wire format).
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public interface Transport {
+
+	/**
+	 * The name of the transport as given on the command line.
+	 */
+	String getName();
+
+	/**
+	 * Connect, or carry on connecting. Can be called again after a failure until it succeeds.
+	 *
+	 * @return true once connected
+	 */
+	boolean connect();
+
+	/**
+	 * Another transport of the same kind and settings but with a connection of its own, not yet connected. For spreading
+	 * sends over several connections. One that can only have the one connection (it owns a listening port, say) returns itself.
+	 */
+	Transport createConnection();
+
+	/**
+	 * Look up a topic to send to. Do this once up front and keep the result, rather than on every send.
+	 */
+	TransportTopic createTopic(String name);
+
+	/**
+	 * Create a sender for the calling thread. Senders keep reusable message objects so are not thread-safe.
+	 */
+	TransportSender createSender() throws TransportException;
+
+	/**
+	 * Add a topic subscription. Wildcards are as per Solace topics: '*' for all or the rest of one level, '>' for all remaining levels.
+	 */
+	void subscribe(String topic) throws TransportException;
+
+	/**
+	 * Start delivering received messages to the listener. Only one listener is supported.
+	 */
+	void start(TransportListener listener) throws TransportException;
+
+	void close();
+}
@@ -0,0 +1,27 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * A failure reported by a Transport, wrapping whatever the underlying API threw.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public class TransportException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean connectionLost;
+
+	public TransportException(String message, Throwable cause, boolean connectionLost) {
+
+		super(message, cause);
+		this.connectionLost = connectionLost;
+	}
+
+	/**
+	 * Was there an issue with the underlying connection? If so it is quite serious, and there's no point carrying on.
+	 */
+	public boolean isConnectionLost() {
+		return connectionLost;
+	}
+}
@@ -0,0 +1,17 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Receives the messages arriving on a Transport. Calls are never concurrent, or nested within each other.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public interface TransportListener {
+
+	void onText(String text);
+
+	/**
+	 * A bytes message arrived. The first length bytes of data are the message, and are only valid until this returns.
+	 */
+	void onBytes(byte[] data, int length);
+}
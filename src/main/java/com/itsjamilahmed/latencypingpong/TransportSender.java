@@ -0,0 +1,17 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Sends messages on a Transport. Create one per sending thread with Transport.createSender().
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public interface TransportSender {
+
+	void sendText(TransportTopic topic, String text) throws TransportException;
+
+	/**
+	 * Send the first length bytes of data. The array can be reused as soon as this returns.
+	 */
+	void sendBytes(TransportTopic topic, byte[] data, int length) throws TransportException;
+}
@@ -0,0 +1,38 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * A topic to send to, as looked up by a Transport.
+ *
+ * Carries whatever the transport needs to send to it quickly, such as the API's own topic object.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public final class TransportTopic {
+
+	private final String name;
+	private volatile Object handle;			// Belongs to the transport that created this topic
+
+	TransportTopic(String name, Object handle) {
+
+		this.name = name;
+		this.handle = handle;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	Object getHandle() {
+		return handle;
+	}
+
+	void setHandle(Object handle) {
+		this.handle = handle;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,99 @@
+package com.itsjamilahmed.latencypingpong;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a dedicated thread waits, either for its next scheduled deadline or for more work to arrive.
+ *
+ * The trade-off is CPU against precision: parking gives the core back but wakes up late by tens of microseconds,
+ * yielding wakes up sooner, and busy-spinning is the most precise but keeps a whole core busy.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public enum WaitStrategy {
+
+	PARK("park") {
+		@Override
+		public void idle() {
+			LockSupport.parkNanos(PARK_IDLE_NS);
+		}
+
+		@Override
+		public void waitUntil(long deadlineNs) {
+			long remaining;
+			while ((remaining = deadlineNs - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(remaining);
+			}
+		}
+	},
+
+	YIELD("yield") {
+		@Override
+		public void idle() {
+			Thread.yield();
+		}
+
+		@Override
+		public void waitUntil(long deadlineNs) {
+			while (deadlineNs - System.nanoTime() > 0) {
+				Thread.yield();
+			}
+		}
+	},
+
+	SPIN("spin") {
+		@Override
+		public void idle() {
+			// Nothing to do, the caller will just check again straight away
+		}
+
+		@Override
+		public void waitUntil(long deadlineNs) {
+			while (deadlineNs - System.nanoTime() > 0) {
+				// Busy-spin
+			}
+		}
+	};
+
+	private static final long PARK_IDLE_NS = 50000;		// How long to park for when there is nothing to do
+
+	private final String name;
+
+	WaitStrategy(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Back off once because there was no work to do.
+	 */
+	public abstract void idle();
+
+	/**
+	 * Return no earlier than the given System.nanoTime() value.
+	 */
+	public abstract void waitUntil(long deadlineNs);
+
+	public String getName() {
+		return name;
+	}
+
+	public static WaitStrategy forName(String name) {
+
+		for (WaitStrategy strategy : values()) {
+			if (strategy.name.equals(name)) {
+				return strategy;
+			}
+		}
+		return PARK;
+	}
+
+	public static String[] names() {
+
+		String[] names = new String[values().length];
+		for (WaitStrategy strategy : values()) {
+			names[strategy.ordinal()] = strategy.name;
+		}
+		return names;
+	}
+}
@@ -0,0 +1,31 @@
+package com.itsjamilahmed.latencypingpong;
+
+/**
+ * Wall clock time in nanoseconds since the epoch, for comparing times between nodes.
+ *
+ * System.currentTimeMillis() is too coarse for that, so it is read once and System.nanoTime() counts on from there.
+ * The start may be out by a millisecond or so, and the rate by whatever the local oscillator is out by, but those are
+ * exactly what the ClockOffsetEstimator measures between two nodes. What matters is that this never steps or slews while running.
+ *
+ * @author Jamil.Ahmed@Solace.com
+ *
+ */
+public final class WallClock {
+
+	private static final long nanoTimeAtStart = System.nanoTime();
+	private static final long epochNsAtStart = System.currentTimeMillis() * 1000000L;
+
+	private WallClock() {
+	}
+
+	public static long nowNs() {
+		return toEpochNs(System.nanoTime());
+	}
+
+	/**
+	 * Convert a System.nanoTime() value taken in this JVM.
+	 */
+	public static long toEpochNs(long nanoTime) {
+		return epochNsAtStart + (nanoTime - nanoTimeAtStart);
+	}
+}